@@ -25,6 +25,7 @@ import java.util.Set;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.model.atom.AtomManager;
 import org.linqs.psl.model.atom.GroundAtom;
@@ -148,6 +149,11 @@ public class TrainingMap implements AtomManager {
 	public ResultList executeQuery(DatabaseQuery query) {
 		return rvDB.executeQuery(query);
 	}
+
+	@Override
+	public ResultCursor streamQuery(DatabaseQuery query) {
+		return rvDB.streamQuery(query);
+	}
 	
 	@Override
 	public boolean isClosed(StandardPredicate predicate) {
@@ -184,7 +184,7 @@ abstract public class ExpectationMaximization extends VotedPerceptron {
 		trainingMap = new TrainingMap(rvDB, observedDB);
 		
 		reasoner = ((ReasonerFactory) config.getFactory(REASONER_KEY, REASONER_DEFAULT)).getReasoner(config);
-		Grounding.groundAll(model, trainingMap, reasoner);
+		Grounding.groundAll(model, trainingMap, reasoner, config);
 		
 		/* 
 		 * The latentVariableReasoner should be cleaned up in close(), not
@@ -194,7 +194,7 @@ abstract public class ExpectationMaximization extends VotedPerceptron {
 		if (latentVariableReasoner != null)
 			latentVariableReasoner.close();
 		latentVariableReasoner = ((ReasonerFactory) config.getFactory(REASONER_KEY, REASONER_DEFAULT)).getReasoner(config);
-		Grounding.groundAll(model, trainingMap, latentVariableReasoner);
+		Grounding.groundAll(model, trainingMap, latentVariableReasoner, config);
 		for (Map.Entry<RandomVariableAtom, ObservedAtom> e : trainingMap.getTrainingMap().entrySet())
 			latentVariableReasoner.addGroundRule(new GroundValueConstraint(e.getKey(), e.getValue().getValue()));
 	}
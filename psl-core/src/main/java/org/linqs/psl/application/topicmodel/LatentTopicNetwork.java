@@ -378,7 +378,7 @@ public class LatentTopicNetwork implements ModelApplication {
 	
 	protected void initializeForReasoner(Reasoner reasoner, PersistedAtomManager atomManager, Model model, Database db, double[][] expectedCounts, double[][] initialization, Predicate p) {
 		log.info("Grounding out model.");
-		Grounding.groundAll(model, atomManager, reasoner);
+		Grounding.groundAll(model, atomManager, reasoner, config);
 		
 		//Add log loss terms
 		log.info("Adding log loss ground kernels");
@@ -18,7 +18,6 @@
 package org.linqs.psl.application.topicmodel.reasoner.admm;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.linqs.psl.application.topicmodel.reasoner.function.NegativeLogFunction;
@@ -29,6 +28,8 @@ import org.linqs.psl.model.rule.UnweightedGroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.admm.ADMMObjectiveTerm;
 import org.linqs.psl.reasoner.admm.ADMMReasoner;
+import org.linqs.psl.reasoner.admm.ADMMTermStore;
+import org.linqs.psl.reasoner.admm.ObjectTermStore;
 import org.linqs.psl.reasoner.function.ConstraintTerm;
 import org.linqs.psl.reasoner.function.FunctionSum;
 import org.linqs.psl.reasoner.function.FunctionTerm;
@@ -60,12 +61,30 @@ public class LatentTopicNetworkADMMReasoner extends ADMMReasoner {
 	protected void buildGroundModel() {
 		super.buildGroundModel();
 		//TODO only the LDA variables!
-		for (int i = 0; i < lb.size(); i++) {
-			lb.set(i, new Double(lowerBoundEpsilon));
+		for (int i = 0; i < getNumConsensusVariables(); i++) {
+			setLowerBound(i, lowerBoundEpsilon);
 		}
 		initDirichletTerms();
 	}
 	
+	/**
+	 * Always rebuilds the whole model, since the lower bounds and the Dirichlet
+	 * initialization are applied to all variables and terms at once.
+	 */
+	@Override
+	protected void updateGroundModel() {
+		buildGroundModel();
+	}
+	
+	/**
+	 * Always stores terms as objects, since the topic model terms cannot be
+	 * packed into a {@link org.linqs.psl.reasoner.admm.AbstractFlatTermStore}.
+	 */
+	@Override
+	protected ADMMTermStore createTermStore(int numGroundKernels) {
+		return new ObjectTermStore(numGroundKernels, numGroundKernels * 2);
+	}
+
 	@Override
 	protected ADMMObjectiveTerm createTerm(GroundRule groundKernel) {
 		FunctionTerm function;
@@ -111,13 +130,12 @@ public class LatentTopicNetworkADMMReasoner extends ADMMReasoner {
 		System.out.println("Init Dirichlet terms");
 		Map<NegativeLogLossTerm, LtnLinearConstraintTerm> dirichletTerms = new HashMap<NegativeLogLossTerm, LtnLinearConstraintTerm>();
 		//Find NegativeLogLossTerm and LinearConstraintTerm pairs, and store them in a HashMap.
-		for (int i = 0; i < varLocations.size(); i++) {
-			List<VariableLocation> vlList = varLocations.get(i);
+		ObjectTermStore store = (ObjectTermStore) termStore;
+		for (int i = 0; i < getNumConsensusVariables(); i++) {
 			NegativeLogLossTerm NLLterm = null;
 			LtnLinearConstraintTerm linearConstraintTerm = null;
-			for (int j = 0; j < vlList.size(); j++) {
-				VariableLocation vl = vlList.get(j);
-				ADMMObjectiveTerm term = vl.getTerm();
+			for (int j = store.getConsensusStart(i); j < store.getConsensusEnd(i); j++) {
+				ADMMObjectiveTerm term = store.getLocalVariableTerm(store.getLocalVariable(j));
 				if (term instanceof NegativeLogLossTerm) {
 					assert (NLLterm == null); //this code currently assumes only one of these per var
 					NLLterm = (NegativeLogLossTerm)term;
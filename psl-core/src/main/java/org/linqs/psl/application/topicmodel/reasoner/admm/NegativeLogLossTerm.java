@@ -48,7 +48,7 @@ public class NegativeLogLossTerm extends ADMMObjectiveTerm implements WeightedOb
 		double a, b, c, sol1, sol2;
 		for (int i = 0; i < x.length; i++) {
 			//the updated value is the positive value of the two solutions to a quadratic equation
-			a = reasoner.stepSize;
+			a = reasoner.getStepSize();
 			b = (y[i] - a * reasoner.getConsensusVariableValue(zIndices[i]));
 			c = -coeffs[i] * weight;
 			sol1 = (-b + Math.sqrt(b*b - 4 * a * c)) / 2 * a;
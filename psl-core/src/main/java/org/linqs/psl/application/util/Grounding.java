@@ -17,16 +17,62 @@
  */
 package org.linqs.psl.application.util;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.linqs.psl.application.groundrulestore.GroundRuleStore;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
 import org.linqs.psl.model.Model;
+import org.linqs.psl.model.atom.AtomEventFramework;
 import org.linqs.psl.model.atom.AtomManager;
+import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.UnweightedGroundRule;
+import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.reasoner.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
 
 /**
  * Static utilities for common {@link Model}-grounding tasks.
  */
 public class Grounding {
 
+	private static final Logger log = LoggerFactory.getLogger(Grounding.class);
+
+	/**
+	 * Prefix of property keys used by this class.
+	 * 
+	 * @see ConfigManager
+	 */
+	public static final String CONFIG_PREFIX = "grounding";
+
+	/**
+	 * Key for boolean property for whether to ground several rules at once.
+	 */
+	public static final String PARALLEL_KEY = CONFIG_PREFIX + ".parallel";
+	/** Default value for PARALLEL_KEY property */
+	public static final boolean PARALLEL_DEFAULT = false;
+
+	/**
+	 * Key for positive int property for the maximum number of threads that
+	 * ground rules at once, each one rule at a time. Each thread runs one
+	 * query on the database at a time.
+	 */
+	public static final String MAX_THREADS_KEY = CONFIG_PREFIX + ".maxthreads";
+	/** Default value for MAX_THREADS_KEY property */
+	public static final int MAX_THREADS_DEFAULT = 4;
+
 	private final static com.google.common.base.Predicate<Rule> all = new com.google.common.base.Predicate<Rule>(){
 		@Override
 		public boolean apply(Rule el) {	return true; }
@@ -61,4 +107,256 @@ public class Grounding {
 		}
 	}
 	
+	/**
+	 * Grounds each Kernel in a Model, in parallel if configured by
+	 * {@link #PARALLEL_KEY}, on the pool given by
+	 * {@link ThreadPool#getPool(ConfigBundle)}.
+	 * 
+	 * @param m  the Model with the Kernels to ground
+	 * @param atomManager  AtomManager to use for grounding
+	 * @param gks  GroundKernelStore to use for grounding
+	 * @param config  configuration of the grounding
+	 * @see #groundAllParallel(Model, AtomManager, GroundRuleStore, com.google.common.base.Predicate, int, ThreadPool)
+	 */
+	public static void groundAll(Model m, AtomManager atomManager, GroundRuleStore gks, ConfigBundle config) {
+		groundAll(m, atomManager, gks, all, config);
+	}
+	
+	/**
+	 * Grounds each Kernel in a Model which passes a filter, in parallel if
+	 * configured by {@link #PARALLEL_KEY}, on the pool given by
+	 * {@link ThreadPool#getPool(ConfigBundle)}.
+	 * 
+	 * @param m  the Model with the Kernels to ground
+	 * @param atomManager  AtomManager to use for grounding
+	 * @param gks  GroundKernelStore to use for grounding
+	 * @param filter  filter for Kernels to ground
+	 * @param config  configuration of the grounding
+	 */
+	public static void groundAll(Model m, AtomManager atomManager, GroundRuleStore gks,
+			com.google.common.base.Predicate<Rule> filter, ConfigBundle config) {
+		if (!config.getBoolean(PARALLEL_KEY, PARALLEL_DEFAULT)) {
+			groundAll(m, atomManager, gks, filter);
+			return;
+		}
+		
+		int maxThreads = config.getInt(MAX_THREADS_KEY, MAX_THREADS_DEFAULT);
+		if (maxThreads <= 0)
+			throw new IllegalArgumentException("Property " + MAX_THREADS_KEY + " must be positive.");
+		groundAllParallel(m, atomManager, gks, filter, maxThreads, ThreadPool.getPool(config));
+	}
+	
+	/**
+	 * Grounds several Kernels in a Model which pass a filter at once, on a
+	 * {@link ThreadPool}.
+	 * <p>
+	 * Each Kernel is grounded into a buffer of its own, and each buffer is
+	 * added to gks as soon as it and the buffers of all earlier Kernels are
+	 * grounded, so only buffers grounded out of order are held. gks receives
+	 * the same GroundKernels in the same order as from
+	 * {@link #groundAll(Model, AtomManager, GroundRuleStore, com.google.common.base.Predicate)},
+	 * one buffer at a time, and does not need to accept concurrent additions.
+	 * If a Kernel fails, gks holds the GroundKernels of the Kernels before it.
+	 * The AtomManager and its Database, however, are used by multiple threads
+	 * at once.
+	 * <p>
+	 * An {@link AtomEventFramework} reacts to each Atom it returns, so Kernels
+	 * are grounded one at a time with it.
+	 * 
+	 * @param m  the Model with the Kernels to ground
+	 * @param atomManager  AtomManager to use for grounding
+	 * @param gks  GroundKernelStore to use for grounding
+	 * @param filter  filter for Kernels to ground
+	 * @param maxThreads  the maximum number of threads grounding Kernels at once
+	 * @param pool  the pool whose threads ground the Kernels
+	 */
+	public static void groundAllParallel(Model m, final AtomManager atomManager, GroundRuleStore gks,
+			com.google.common.base.Predicate<Rule> filter, int maxThreads, ThreadPool pool) {
+		if (atomManager instanceof AtomEventFramework) {
+			log.debug("Grounding one rule at a time with an AtomEventFramework");
+			groundAll(m, atomManager, gks, filter);
+			return;
+		}
+		
+		final List<Rule> rules = new ArrayList<Rule>();
+		for (Rule k : m.getRules()) {
+			if (filter.apply(k))
+				rules.add(k);
+		}
+		
+		final RuleBuffer[] buffers = new RuleBuffer[rules.size()];
+		ReadWriteLock lock = new ReentrantReadWriteLock();
+		for (int i = 0; i < buffers.length; i++)
+			buffers[i] = new RuleBuffer(gks, lock);
+		final OrderedFlush flush = new OrderedFlush(buffers, lock);
+		
+		final AtomicInteger next = new AtomicInteger(0);
+		Future<?>[] futures = new Future<?>[Math.min(maxThreads, rules.size())];
+		log.debug("Grounding {} rules with {} threads", rules.size(), futures.length);
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int rule = next.getAndIncrement(); rule < buffers.length; rule = next.getAndIncrement()) {
+						rules.get(rule).groundAll(atomManager, buffers[rule]);
+						flush.grounded(rule);
+					}
+				}
+			});
+		}
+		
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				/* Rethrows errors in rules as the serial grounding would */
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Adds RuleBuffers to their target store in order, each as soon as it and
+	 * all earlier buffers are grounded.
+	 */
+	private static class OrderedFlush {
+		
+		private final RuleBuffer[] buffers;
+		private final ReadWriteLock lock;
+		private final boolean[] grounded;
+		/* The first buffer not yet added */
+		private int next;
+		
+		public OrderedFlush(RuleBuffer[] buffers, ReadWriteLock lock) {
+			this.buffers = buffers;
+			this.lock = lock;
+			grounded = new boolean[buffers.length];
+			next = 0;
+		}
+		
+		/**
+		 * Marks a buffer grounded and adds the buffers that can now be added.
+		 */
+		public synchronized void grounded(int buffer) {
+			grounded[buffer] = true;
+			if (buffer != next)
+				return;
+			
+			/* Buffers still being filled read the target store */
+			lock.writeLock().lock();
+			try {
+				while (next < buffers.length && grounded[next])
+					buffers[next++].flush();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Collects the GroundKernels of a Kernel in order until they are added to
+	 * a target store.
+	 * <p>
+	 * GroundKernels in the target store count as already added. Other buffers
+	 * are added to the target store while the buffer is filled, holding the
+	 * write lock of a lock whose read lock the buffer holds to read the target
+	 * store. They only add GroundKernels of other Kernels, so the buffer sees
+	 * the same GroundKernels of its own Kernel in the target store throughout.
+	 */
+	private static class RuleBuffer implements GroundRuleStore {
+		
+		private final GroundRuleStore target;
+		private final ReadWriteLock lock;
+		private final Set<GroundRule> groundKernels;
+		
+		public RuleBuffer(GroundRuleStore target, ReadWriteLock lock) {
+			this.target = target;
+			this.lock = lock;
+			groundKernels = new LinkedHashSet<GroundRule>();
+		}
+		
+		private boolean targetContains(GroundRule gk) {
+			lock.readLock().lock();
+			try {
+				return target.containsGroundKernel(gk);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		
+		@Override
+		public void addGroundRule(GroundRule gk) {
+			if (targetContains(gk) || !groundKernels.add(gk))
+				throw new IllegalArgumentException("GroundKernel has already been added: " + gk);
+		}
+		
+		@Override
+		public void changedGroundRule(GroundRule gk) {
+			/* Intentionally blank */
+		}
+		
+		@Override
+		public void changedGroundKernelWeight(WeightedGroundRule gk) {
+			/* Intentionally blank */
+		}
+		
+		@Override
+		public void changedGroundKernelWeights() {
+			/* Intentionally blank */
+		}
+		
+		@Override
+		public void removeGroundKernel(GroundRule gk) {
+			groundKernels.remove(gk);
+		}
+		
+		@Override
+		public boolean containsGroundKernel(GroundRule gk) {
+			return groundKernels.contains(gk) || targetContains(gk);
+		}
+		
+		@Override
+		public Iterable<GroundRule> getGroundKernels() {
+			return groundKernels;
+		}
+		
+		@Override
+		public Iterable<WeightedGroundRule> getCompatibilityKernels() {
+			return Iterables.filter(groundKernels, WeightedGroundRule.class);
+		}
+		
+		@Override
+		public Iterable<UnweightedGroundRule> getConstraintKernels() {
+			return Iterables.filter(groundKernels, UnweightedGroundRule.class);
+		}
+		
+		@Override
+		public Iterable<GroundRule> getGroundKernels(final Rule k) {
+			return Iterables.filter(groundKernels, new com.google.common.base.Predicate<GroundRule>() {
+				@Override
+				public boolean apply(GroundRule gk) {
+					return gk.getRule().equals(k);
+				}
+			});
+		}
+		
+		@Override
+		public int size() {
+			return groundKernels.size();
+		}
+		
+		/**
+		 * Adds the collected GroundKernels to the target store.
+		 */
+		public void flush() {
+			for (GroundRule gk : groundKernels)
+				target.addGroundRule(gk);
+			groundKernels.clear();
+		}
+	}
+	
 }
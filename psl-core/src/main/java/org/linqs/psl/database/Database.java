@@ -76,6 +76,8 @@ import org.linqs.psl.model.term.Variable;
  * <h2>Querying for Groundings</h2>
  *
  * {@link DatabaseQuery DatabaseQueries} can be run via {@link #executeQuery(DatabaseQuery)}.
+ * Queries with many groundings can instead be read through a cursor via
+ * {@link #streamQuery(DatabaseQuery)}.
  * Note that queries only act on the GroundAtoms persisted in Partitions and
  * GroundAtoms with {@link FunctionalPredicate FunctionalPredicates}.
  */
@@ -160,6 +162,22 @@ public interface Database {
 	 */
 	public ResultList executeQuery(DatabaseQuery query);
 
+	/**
+	 * Returns a cursor over all groundings of a Formula that match a
+	 * DatabaseQuery, which reads them from this Database as it advances.
+	 * <p>
+	 * The cursor must be closed once it is no longer needed. A Database may
+	 * also instantiate the atoms of the Formula from the groundings it reads,
+	 * so that the subsequent calls to {@link #getAtom(Predicate, Constant...)}
+	 * are cheap.
+	 *
+	 * @param query  the query to match
+	 * @return a cursor over the substitutions of {@link Constant GroundTerms}
+	 *             for {@link Variable Variables}
+	 * @throws IllegalArgumentException  if the query Formula is invalid
+	 */
+	public ResultCursor streamQuery(DatabaseQuery query);
+
 	/**
 	 * Returns whether a StandardPredicate is closed in this Database.
 	 *
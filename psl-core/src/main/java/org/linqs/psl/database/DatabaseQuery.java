@@ -66,6 +66,16 @@ import java.util.Set;
  * the same as including all Variables in the Formula in the subset except those
  * with assignments in the partial grounding. Use {@link #getProjectionSubset()}
  * to modify the subset. It is initially empty.
+ * <p>
+ * Finally, a query can exclude groundings by the truth values of their
+ * GroundAtoms with closed {@link StandardPredicate StandardPredicates}. Each
+ * such GroundAtom grounded from an Atom of the Formula in
+ * {@link #getNonZeroAtoms()} must have a truth value greater than zero, and
+ * no such GroundAtom grounded from an Atom in {@link #getNonOneAtoms()} may
+ * be persisted with a truth value of one (or greater). The Atoms in the
+ * latter set need not be in the Formula, but each of their Variables must be.
+ * Atoms with {@link FunctionalPredicate FunctionalPredicates} or open
+ * StandardPredicates are ignored. Both sets are initially empty.
  */
 public class DatabaseQuery {
 
@@ -73,11 +83,15 @@ public class DatabaseQuery {
 	private final VariableAssignment partialGrounding;
 	private final Set<Variable> projectTo;
 	private final ListOrderedSet<Variable> ordering;
+	private final Set<Atom> nonZeroAtoms;
+	private final Set<Atom> nonOneAtoms;
 
 	public DatabaseQuery(Formula formula) {
 		this.formula = formula;
 		partialGrounding = new VariableAssignment();
 		projectTo = new HashSet<Variable>();
+		nonZeroAtoms = new HashSet<Atom>();
+		nonOneAtoms = new HashSet<Atom>();
 
 		FormulaAnalysis analysis = new FormulaAnalysis(formula);
 		if (analysis.getNumDNFClauses() > 1 || analysis.getDNFClause(0).getNegLiterals().size() > 0) {
@@ -115,6 +129,22 @@ public class DatabaseQuery {
 		return projectTo;
 	}
 
+	/**
+	 * @return the Atoms of the Formula whose groundings, if their Predicates
+	 *         are closed, must have truth values greater than zero
+	 */
+	public Set<Atom> getNonZeroAtoms() {
+		return nonZeroAtoms;
+	}
+
+	/**
+	 * @return the Atoms whose groundings, if their Predicates are closed,
+	 *         must not have truth values of one
+	 */
+	public Set<Atom> getNonOneAtoms() {
+		return nonOneAtoms;
+	}
+
 	/**
 	 * @return the number of Variables in this query's Formula
 	 */
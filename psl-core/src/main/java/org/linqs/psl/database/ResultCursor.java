@@ -0,0 +1,88 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.database;
+
+import java.util.Map;
+
+import org.linqs.psl.model.formula.Formula;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.Variable;
+
+/**
+ * Cursor over substitutions for {@link Variable Variables} in a {@link Formula}.
+ * <p>
+ * Unlike a {@link ResultList}, a ResultCursor reads the substitutions from its
+ * {@link Database} as it advances, so only a batch of them is held in memory
+ * at a time.
+ * <p>
+ * A ResultCursor holds resources of its Database until it is closed, so it
+ * must be closed once it is no longer needed, even if it was not read to
+ * the end.
+ */
+public interface ResultCursor {
+
+	/**
+	 * Advances to the next set of substitutions. The cursor starts before
+	 * the first one.
+	 * 
+	 * @return TRUE if there is a next set of substitutions, FALSE if the
+	 *             cursor is past the last one
+	 */
+	public boolean next();
+	
+	/**
+	 * @return the number of distinct {@link Variable Variables} replaced in
+	 *             each substitution
+	 */
+	public int getArity();
+	
+	/**
+	 * Returns the current substitution for a single {@link Variable}.
+	 * 
+	 * @param var  the Variable that is replaced
+	 * @return  the substituted GroundTerm
+	 * @throws IllegalArgumentException  if var is invalid
+	 * @throws IllegalStateException  if the cursor is not on a set of substitutions
+	 */
+	public Constant get(Variable var);
+	
+	/**
+	 * Returns the current substitution for all {@link Variable Variables},
+	 * ordered as by {@link ResultList#get(int)}.
+	 * <p>
+	 * The returned array is not changed by advancing the cursor.
+	 * 
+	 * @return  the substituted GroundTerms
+	 * @throws IllegalStateException  if the cursor is not on a set of substitutions
+	 */
+	public Constant[] get();
+	
+	/**
+	 * Returns a Map from {@link Variable Variables} to the indices of 
+	 * substitutions that are returned by {@link #get()}.
+	 * 
+	 * @return map of Variables to indices
+	 */
+	public Map<Variable, Integer> getVariableMap();
+	
+	/**
+	 * Releases the resources held by this cursor. Closing a closed cursor
+	 * has no effect.
+	 */
+	public void close();
+}
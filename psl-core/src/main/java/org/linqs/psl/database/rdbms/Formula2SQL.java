@@ -18,6 +18,7 @@
 package org.linqs.psl.database.rdbms;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,7 +41,10 @@ import com.healthmarketscience.sqlbuilder.BinaryCondition;
 import com.healthmarketscience.sqlbuilder.CustomSql;
 import com.healthmarketscience.sqlbuilder.FunctionCall;
 import com.healthmarketscience.sqlbuilder.InCondition;
+import com.healthmarketscience.sqlbuilder.NotCondition;
 import com.healthmarketscience.sqlbuilder.SelectQuery;
+import com.healthmarketscience.sqlbuilder.Subquery;
+import com.healthmarketscience.sqlbuilder.UnaryCondition;
 
 public class Formula2SQL extends AbstractFormulaTraverser {
 
@@ -54,12 +58,49 @@ public class Formula2SQL extends AbstractFormulaTraverser {
 
 	protected final List<Atom> functionalAtoms;
 
+	/*
+	 * Whether to select the value, confidence, and partition of each atom of a
+	 * StandardPredicate, and those atoms with the tables they are selected from
+	 */
+	protected final boolean fetchAtoms;
+	protected final List<Atom> fetchedAtoms;
+	protected final List<String> fetchedTables;
+
+	/* Atoms whose groundings with closed predicates must not be zero, or one */
+	protected final Set<Atom> nonZeroAtoms;
+	protected final Set<Atom> nonOneAtoms;
+
 	protected final SelectQuery query;
 
 	protected int tableCounter;
 
 	public Formula2SQL(VariableAssignment pg, Set<Variable> proj,
 			RDBMSDatabase db) {
+		this(pg, proj, db, false);
+	}
+
+	/**
+	 * @param fetchAtoms  whether to also select the value, confidence, and
+	 *                    partition of each atom of a StandardPredicate, so that
+	 *                    the atoms do not have to be looked up separately
+	 * @see #getFetchedAtoms()
+	 */
+	public Formula2SQL(VariableAssignment pg, Set<Variable> proj,
+			RDBMSDatabase db, boolean fetchAtoms) {
+		this(pg, proj, db, fetchAtoms, Collections.<Atom>emptySet(), Collections.<Atom>emptySet());
+	}
+
+	/**
+	 * @param nonZeroAtoms  the atoms whose groundings with closed predicates
+	 *                      must have truth values greater than zero
+	 * @param nonOneAtoms  the atoms whose groundings with closed predicates
+	 *                     must not be persisted with truth values of one
+	 * @see org.linqs.psl.database.DatabaseQuery#getNonZeroAtoms()
+	 * @see org.linqs.psl.database.DatabaseQuery#getNonOneAtoms()
+	 */
+	public Formula2SQL(VariableAssignment pg, Set<Variable> proj,
+			RDBMSDatabase db, boolean fetchAtoms, Set<Atom> nonZeroAtoms,
+			Set<Atom> nonOneAtoms) {
 		partialGrounding = pg;
 		projection = proj;
 		joins = new HashMap<Variable, String>();
@@ -67,6 +108,11 @@ public class Formula2SQL extends AbstractFormulaTraverser {
 		query = new SelectQuery();
 		query.setIsDistinct(true);
 		functionalAtoms = new ArrayList<Atom>(4);
+		this.fetchAtoms = fetchAtoms && !proj.isEmpty();
+		fetchedAtoms = new ArrayList<Atom>(4);
+		fetchedTables = new ArrayList<String>(4);
+		this.nonZeroAtoms = nonZeroAtoms;
+		this.nonOneAtoms = nonOneAtoms;
 		tableCounter = 1;
 		if (projection.isEmpty())
 			query.addAllColumns(); // query.addAllTableColumns(tablePrefix+tableCounter);
@@ -76,6 +122,28 @@ public class Formula2SQL extends AbstractFormulaTraverser {
 		return functionalAtoms;
 	}
 
+	/**
+	 * Returns the atoms whose value, confidence, and partition are selected,
+	 * which are those of StandardPredicates whose variables are all projected
+	 * or partially grounded, so that selecting them does not add rows.
+	 * They are selected as the columns of the atom's
+	 * {@link RDBMSPredicateHandle} prefixed with
+	 * {@link #getFetchedColumnPrefix(int)}.
+	 *
+	 * @return the atoms, empty unless atoms are fetched
+	 */
+	public List<Atom> getFetchedAtoms() {
+		return fetchedAtoms;
+	}
+
+	/**
+	 * @param index  the index of an atom in {@link #getFetchedAtoms()}
+	 * @return the prefix of the aliases of the columns selected for the atom
+	 */
+	public String getFetchedColumnPrefix(int index) {
+		return fetchedTables.get(index) + "_";
+	}
+
 	@Override
 	public void afterConjunction(int noFormulas) {
 		// Supported
@@ -207,23 +275,102 @@ public class Formula2SQL extends AbstractFormulaTraverser {
 					assert arg instanceof Variable;
 			}
 			
-			ArrayList<Integer> partitions;
-			partitions = new ArrayList<Integer>(database.readPartitions.length);
-			// Query all of the read (and the write) partition(s) belonging to the database
-			for (int i = 0; i < database.readPartitions.length; i++)
-			    partitions.add(database.readPartitions[i].getID());
-			partitions.add(database.writePartition.getID());
-
 			query.addCondition(new InCondition(new CustomSql(tableDot
-					+ ph.partitionColumn()), partitions));
+					+ ph.partitionColumn()), getPartitions()));
+
+			if (nonZeroAtoms.contains(atom) && database.isClosed((StandardPredicate) atom.getPredicate()))
+				query.addCondition(BinaryCondition.greaterThan(new CustomSql(
+						tableDot + ph.valueColumn()), 0.0, false));
+
+			if (fetchAtoms && isDetermined(arguments)) {
+				String prefix = tableName + "_";
+				query.addAliasedColumn(new CustomSql(tableDot + ph.valueColumn()), prefix + ph.valueColumn());
+				query.addAliasedColumn(new CustomSql(tableDot + ph.confidenceColumn()), prefix + ph.confidenceColumn());
+				query.addAliasedColumn(new CustomSql(tableDot + ph.partitionColumn()), prefix + ph.partitionColumn());
+				fetchedAtoms.add(atom);
+				fetchedTables.add(tableName);
+			}
 			tableCounter++;
 		}
 	}
 
+	/**
+	 * Excludes the groundings for which a grounding of an atom is persisted
+	 * with a truth value of one (or greater). Since the atom need not be in the
+	 * formula, it is looked up in a subquery.
+	 */
+	protected void visitNonOneAtom(Atom atom) {
+		RDBMSPredicateHandle ph = database.getHandle(atom.getPredicate());
+
+		String tableName = tablePrefix + tableCounter;
+		String tableDot = tableName + ".";
+		SelectQuery subquery = new SelectQuery();
+		subquery.addAllColumns();
+		subquery.addCustomFromTable(ph.tableName() + " " + tableName);
+
+		Object[] convert = convertArguments(atom.getArguments());
+		for (int i = 0; i < convert.length; i++) {
+			Object value = convert[i];
+			if (value instanceof String)
+				value = escapeSingleQuotes((String) value);
+			subquery.addCondition(BinaryCondition.equalTo(new CustomSql(
+					tableDot + ph.argumentColumns()[i]), value));
+		}
+
+		subquery.addCondition(new InCondition(new CustomSql(tableDot
+				+ ph.partitionColumn()), getPartitions()));
+		subquery.addCondition(BinaryCondition.greaterThan(new CustomSql(
+				tableDot + ph.valueColumn()), 1.0, true));
+
+		query.addCondition(new NotCondition(UnaryCondition.exists(new Subquery(subquery))));
+		tableCounter++;
+	}
+
+	/**
+	 * @return the IDs of the read partitions and the write partition of the
+	 *         database
+	 */
+	private List<Integer> getPartitions() {
+		List<Integer> partitions = new ArrayList<Integer>(database.readPartitions.length + 1);
+		for (int i = 0; i < database.readPartitions.length; i++)
+			partitions.add(database.readPartitions[i].getID());
+		partitions.add(database.writePartition.getID());
+		return partitions;
+	}
+
+	/**
+	 * @return whether each variable in arguments is partially grounded or
+	 *         selected by the query
+	 */
+	private boolean isBound(Term[] arguments) {
+		for (Term arg : arguments)
+			if (arg instanceof Variable && !joins.containsKey(arg)
+					&& !partialGrounding.hasVariable((Variable) arg))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return whether each variable in arguments is projected or partially
+	 *         grounded
+	 */
+	private boolean isDetermined(Term[] arguments) {
+		for (Term arg : arguments)
+			if (arg instanceof Variable && !projection.contains(arg)
+					&& !partialGrounding.hasVariable((Variable) arg))
+				return false;
+		return true;
+	}
+
 	public String getSQL(Formula f) {
 		AbstractFormulaTraverser.traverse(f, this);
 		for (Atom atom : functionalAtoms)
 			visitFunctionalAtom(atom);
+		for (Atom atom : nonOneAtoms)
+			if (atom.getPredicate() instanceof StandardPredicate
+					&& database.isClosed((StandardPredicate) atom.getPredicate())
+					&& isBound(atom.getArguments()))
+				visitNonOneAtom(atom);
 		return query.validate().toString();
 	}
 	
@@ -38,6 +38,7 @@ import org.linqs.psl.database.DataStore;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.Partition;
 import org.linqs.psl.database.ReadOnlyDatabase;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.loading.Inserter;
 import org.linqs.psl.database.loading.Updater;
 import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
@@ -105,6 +106,15 @@ public class RDBMSDataStore implements DataStore {
 	/** Default value for the USE_STRING_ID_KEY property */
 	public static final boolean USE_STRING_ID_DEFAULT = true;
 	
+	/**
+	 * Key for positive int property for the number of rows fetched from the
+	 * database at a time while a query is read through a {@link ResultCursor}.
+	 */
+	public static final String FETCH_SIZE_KEY = CONFIG_PREFIX + ".fetchsize";
+	
+	/** Default value for the FETCH_SIZE_KEY property */
+	public static final int FETCH_SIZE_DEFAULT = 10000;
+	
 	/*
 	 * The values for the PSL columns.
 	 */
@@ -149,6 +159,8 @@ public class RDBMSDataStore implements DataStore {
 	
 	protected final boolean stringUniqueIDs;
 	
+	protected final int fetchSize;
+	
 	/**
 	 * Returns an RDBMSDataStore that utilizes the connection created by the {@link DatabaseDriver}.
 	 * @param dbDriver	the DatabaseDriver that contains a connection to the backing database.
@@ -181,6 +193,10 @@ public class RDBMSDataStore implements DataStore {
 		// Store the type of unique ID this RDBMS will use
 		this.stringUniqueIDs = config.getBoolean(USE_STRING_ID_KEY, USE_STRING_ID_DEFAULT);
 		
+		this.fetchSize = config.getInt(FETCH_SIZE_KEY, FETCH_SIZE_DEFAULT);
+		if (fetchSize <= 0)
+			throw new IllegalArgumentException("Property " + FETCH_SIZE_KEY + " must be positive.");
+		
 		
 		// Read in any predicates that exist in the database
 		deserializePredicates();
@@ -427,6 +443,14 @@ public class RDBMSDataStore implements DataStore {
 		return db;
 	}
 
+	/**
+	 * @return the number of rows fetched at a time while a query is read
+	 *         through a {@link ResultCursor}
+	 */
+	int getFetchSize() {
+		return fetchSize;
+	}
+
 	@Override
 	public UniqueID getUniqueID(Object key) {
 		if (stringUniqueIDs)
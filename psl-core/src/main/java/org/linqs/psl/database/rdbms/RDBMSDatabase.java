@@ -35,7 +35,9 @@ import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
 import org.linqs.psl.database.Partition;
 import org.linqs.psl.database.ReadOnlyDatabase;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
+import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.AtomCache;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.QueryAtom;
@@ -71,7 +73,9 @@ public class RDBMSDatabase implements Database {
 	protected final RDBMSDataStore parentDataStore;
 
 	/**
-	 * The connection to the JDBC database
+	 * The connection to the JDBC database. Since this database can be used by
+	 * multiple threads at once, every use of the connection and of the
+	 * statements prepared on it synchronizes on this database.
 	 */
 	protected final Connection dbConnection;
 
@@ -508,45 +512,52 @@ public class RDBMSDatabase implements Database {
 		if (result != null)
 			return result;
 
-		if (pendingInserts.contains(qAtom) || pendingUpdates.contains(qAtom))
-			executePendingStatements();
+		synchronized (this) {
+			/* Another thread might have instantiated the atom meanwhile */
+			result = cache.getCachedAtom(qAtom);
+			if (result != null)
+				return result;
 
-		ResultSet rs = queryDBForAtom(qAtom);
-		try {
-			if (rs.next()) {
-					double value = rs.getDouble(ph.valueColumn());
-					// need to check whether the previous double is null, if so set it specifically to NaN
-					if (rs.wasNull()) value = Double.NaN;
-		 		double confidence = rs.getDouble(ph.confidenceColumn());
-		 		if (rs.wasNull()) confidence = Double.NaN;
-
-		 		int partition = rs.getInt(ph.partitionColumn());
-		 		if (partition == writeID) {
-		 			// Found in the write partition
-		 			if (isClosed((StandardPredicate) p)) {
-		 				// Predicate is closed, instantiate as ObservedAtom
-		 				result = cache.instantiateObservedAtom(p, arguments, value, confidence);
-		 			} else {
-		 				// Predicate is open, instantiate as RandomVariableAtom
-		 				result = cache.instantiateRandomVariableAtom((StandardPredicate) p, arguments, value, confidence);
-		 			}
-		 		} else {
-		 			// Must be in a read partition, instantiate as ObservedAtom
-		 			result = cache.instantiateObservedAtom(p, arguments, value, confidence);
-		 		}
-		 		if (rs.next())
-		 			throw new IllegalStateException("Atom cannot exist in more than one partition.");
+			if (pendingInserts.contains(qAtom) || pendingUpdates.contains(qAtom))
+				executePendingStatements();
+
+			ResultSet rs = queryDBForAtom(qAtom);
+			try {
+				if (rs.next()) {
+						double value = rs.getDouble(ph.valueColumn());
+						// need to check whether the previous double is null, if so set it specifically to NaN
+						if (rs.wasNull()) value = Double.NaN;
+			 		double confidence = rs.getDouble(ph.confidenceColumn());
+			 		if (rs.wasNull()) confidence = Double.NaN;
+
+			 		int partition = rs.getInt(ph.partitionColumn());
+			 		if (partition == writeID) {
+			 			// Found in the write partition
+			 			if (isClosed((StandardPredicate) p)) {
+			 				// Predicate is closed, instantiate as ObservedAtom
+			 				result = cache.instantiateObservedAtom(p, arguments, value, confidence);
+			 			} else {
+			 				// Predicate is open, instantiate as RandomVariableAtom
+			 				result = cache.instantiateRandomVariableAtom((StandardPredicate) p, arguments, value, confidence);
+			 			}
+			 		} else {
+			 			// Must be in a read partition, instantiate as ObservedAtom
+			 			result = cache.instantiateObservedAtom(p, arguments, value, confidence);
+			 		}
+			 		if (rs.next())
+			 			throw new IllegalStateException("Atom cannot exist in more than one partition.");
+				}
+				rs.close();
+			} catch (SQLException e) {
+				throw new RuntimeException("Error analyzing results from atom query.", e);
 			}
-			rs.close();
-		} catch (SQLException e) {
-			throw new RuntimeException("Error analyzing results from atom query.", e);
-		}
 
-		if (result == null) {
-			if (isClosed((StandardPredicate) p))
-				result = cache.instantiateObservedAtom(p, arguments, 0.0, Double.NaN);
-			else
-				result = cache.instantiateRandomVariableAtom((StandardPredicate) p, arguments, 0.0, Double.NaN);
+			if (result == null) {
+				if (isClosed((StandardPredicate) p))
+					result = cache.instantiateObservedAtom(p, arguments, 0.0, Double.NaN);
+				else
+					result = cache.instantiateRandomVariableAtom((StandardPredicate) p, arguments, 0.0, Double.NaN);
+			}
 		}
 
 		return result;
@@ -563,7 +574,7 @@ public class RDBMSDatabase implements Database {
 	}
 
 	@Override
-	public void commit(RandomVariableAtom atom) {
+	public synchronized void commit(RandomVariableAtom atom) {
 		RDBMSPredicateHandle ph = getHandle(atom.getPredicate());
 		QueryAtom qAtom = new QueryAtom(atom.getPredicate(), atom.getArguments());
 
@@ -674,7 +685,7 @@ public class RDBMSDatabase implements Database {
 		}
 	}
 
-	protected void executePendingStatements() {
+	protected synchronized void executePendingStatements() {
 		int pendingOperationCount = pendingInserts.size() + pendingUpdates.size();
 		if (pendingOperationCount == 0)
 			return;
@@ -710,6 +721,38 @@ public class RDBMSDatabase implements Database {
 
 	@Override
 	public ResultList executeQuery(DatabaseQuery query) {
+		ResultCursor cursor = streamQuery(query, false);
+		try {
+			RDBMSResultList results = new RDBMSResultList(cursor.getArity());
+			for (Map.Entry<Variable, Integer> e : cursor.getVariableMap().entrySet())
+				results.setVariable(e.getKey(), e.getValue());
+			while (cursor.next())
+				results.addResult(cursor.get());
+
+			log.trace("Number of results: {}",results.size());
+			return results;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The query also selects the atoms of the formula, and each row instantiates
+	 * those that are ObservedAtoms into the atom cache, saving a lookup per atom
+	 * when grounding.
+	 */
+	@Override
+	public ResultCursor streamQuery(DatabaseQuery query) {
+		return streamQuery(query, true);
+	}
+
+	/**
+	 * @param fetchAtoms  whether to instantiate the atoms of the formula from
+	 *                    the rows
+	 */
+	protected ResultCursor streamQuery(DatabaseQuery query, boolean fetchAtoms) {
 		if (closed)
 			throw new IllegalStateException("Cannot perform query on database that was closed.");
 
@@ -726,45 +769,72 @@ public class RDBMSDatabase implements Database {
 		}
 
 		// Construct query from formula
-		Formula2SQL sqler = new Formula2SQL(partialGrounding, projectTo, this);
+		Formula2SQL sqler = new Formula2SQL(partialGrounding, projectTo, this, fetchAtoms,
+				query.getNonZeroAtoms(), query.getNonOneAtoms());
 		String queryString = sqler.getSQL(f);
 		log.trace(queryString);
 
-		// Create and initialize ResultList
+		// Order the projected variables as in the query
 		int i = 0;
-		RDBMSResultList results = new RDBMSResultList(projectTo.size());
-		for (int varIndex = 0; varIndex < query.getNumVariables(); varIndex++)
-			if (projectTo.contains(query.getVariable(varIndex)))
-				results.setVariable(query.getVariable(varIndex), i++);
+		Variable[] variables = new Variable[projectTo.size()];
+		ConstantType[] types = new ConstantType[variables.length];
+		Constant[] constants = new Constant[variables.length];
+		Map<Variable, Integer> positions = new HashMap<Variable, Integer>();
+		for (int varIndex = 0; varIndex < query.getNumVariables(); varIndex++) {
+			Variable var = query.getVariable(varIndex);
+			if (projectTo.contains(var)) {
+				variables[i] = var;
+				positions.put(var, i);
+				if (partialGrounding.hasVariable(var))
+					constants[i] = partialGrounding.getVariable(var);
+				else
+					types[i] = varTypes.getType(var);
+				i++;
+			}
+		}
+
+		// Substitute the arguments of the selected atoms from the rows
+		List<Atom> atoms = sqler.getFetchedAtoms();
+		RDBMSResultCursor.FetchedAtom[] fetchedAtoms = new RDBMSResultCursor.FetchedAtom[atoms.size()];
+		for (int atomIndex = 0; atomIndex < fetchedAtoms.length; atomIndex++) {
+			Atom atom = atoms.get(atomIndex);
+			Term[] arguments = atom.getArguments();
+			int[] argumentPositions = new int[arguments.length];
+			Constant[] argumentConstants = new Constant[arguments.length];
+			for (int j = 0; j < arguments.length; j++) {
+				if (arguments[j] instanceof Variable && positions.containsKey(arguments[j])) {
+					argumentPositions[j] = positions.get(arguments[j]);
+				} else {
+					argumentPositions[j] = -1;
+					if (arguments[j] instanceof Variable)
+						argumentConstants[j] = partialGrounding.getVariable((Variable) arguments[j]);
+					else
+						argumentConstants[j] = (Constant) arguments[j];
+				}
+			}
 
-		try  {
-			Statement stmt = dbConnection.createStatement();
+			RDBMSPredicateHandle ph = getHandle(atom.getPredicate());
+			String prefix = sqler.getFetchedColumnPrefix(atomIndex);
+			fetchedAtoms[atomIndex] = new RDBMSResultCursor.FetchedAtom((StandardPredicate) atom.getPredicate(),
+					argumentPositions, argumentConstants, prefix + ph.valueColumn(),
+					prefix + ph.confidenceColumn(), prefix + ph.partitionColumn());
+		}
+
+		synchronized (this) {
 			try {
-				ResultSet rs = stmt.executeQuery(queryString);
+				Statement stmt = dbConnection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 				try {
-					while (rs.next()) {
-						Constant[] res = new Constant[projectTo.size()];
-						for (Variable var : projectTo) {
-							i = results.getPos(var);
-							if (partialGrounding.hasVariable(var)) {
-								res[i] = partialGrounding.getVariable(var);
-							} else {
-								res[i] = extractConstantFromResult(rs, var.getName(), varTypes.getType(var));
-							}
-						}
-						results.addResult(res);
-					}
-				} finally {
-					rs.close();
+					stmt.setFetchSize(parentDataStore.getFetchSize());
+					ResultSet rs = stmt.executeQuery(queryString);
+					return new RDBMSResultCursor(this, stmt, rs, variables, types, constants, fetchedAtoms);
+				} catch (SQLException e) {
+					stmt.close();
+					throw e;
 				}
-			} finally {
-				stmt.close();
+			} catch (SQLException e) {
+				throw new RuntimeException("Error executing database query.", e);
 			}
-		} catch (SQLException e) {
-			throw new RuntimeException("Error executing database query.", e);
 		}
-		log.trace("Number of results: {}",results.size());
-		return results;
 	}
 
 	@Override
@@ -0,0 +1,232 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.database.rdbms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.linqs.psl.database.ResultCursor;
+import org.linqs.psl.model.atom.ObservedAtom;
+import org.linqs.psl.model.atom.QueryAtom;
+import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.Variable;
+
+/**
+ * {@link ResultCursor} over the rows of a JDBC ResultSet.
+ * <p>
+ * The rows are fetched in batches of the fetch size of the statement. Like
+ * every use of the connection of an {@link RDBMSDatabase}, reading a row
+ * synchronizes on the database, so the database can be used by other
+ * threads, and to get atoms, while the cursor is open.
+ * <p>
+ * If the query also selects the atoms of the formula (see
+ * {@link Formula2SQL#getFetchedAtoms()}), each row instantiates those of them
+ * that are {@link ObservedAtom ObservedAtoms} into the atom cache of the
+ * database, so that getting them while grounding the row does not query the
+ * database again. Like getting them, it fails if the rows put one of them
+ * in more than one partition.
+ */
+public class RDBMSResultCursor implements ResultCursor {
+
+	private final RDBMSDatabase db;
+	private final Statement stmt;
+	private final ResultSet rs;
+
+	/* Variables, their types, and the constants of partially grounded ones, by position */
+	private final Variable[] variables;
+	private final ConstantType[] types;
+	private final Constant[] constants;
+	private final Map<Variable, Integer> varMap;
+	private final FetchedAtom[] fetchedAtoms;
+	/* The partition each atom selected so far was read from */
+	private final Map<QueryAtom, Integer> partitions;
+
+	private Constant[] current;
+	private boolean closed;
+
+	/**
+	 * @param constants  the constant substituted for each variable that is
+	 *                   not read from the ResultSet, or null
+	 * @param fetchedAtoms  the atoms selected with each row
+	 */
+	RDBMSResultCursor(RDBMSDatabase db, Statement stmt, ResultSet rs,
+			Variable[] variables, ConstantType[] types, Constant[] constants,
+			FetchedAtom[] fetchedAtoms) {
+		this.db = db;
+		this.stmt = stmt;
+		this.rs = rs;
+		this.variables = variables;
+		this.types = types;
+		this.constants = constants;
+		this.fetchedAtoms = fetchedAtoms;
+		partitions = new HashMap<QueryAtom, Integer>();
+
+		varMap = new HashMap<Variable, Integer>();
+		for (int i = 0; i < variables.length; i++)
+			varMap.put(variables[i], Integer.valueOf(i));
+
+		current = null;
+		closed = false;
+	}
+
+	@Override
+	public boolean next() {
+		synchronized (db) {
+			current = null;
+			if (closed)
+				return false;
+
+			try {
+				if (!rs.next()) {
+					close();
+					return false;
+				}
+
+				Constant[] res = new Constant[variables.length];
+				for (int i = 0; i < variables.length; i++) {
+					if (constants[i] != null)
+						res[i] = constants[i];
+					else
+						res[i] = db.extractConstantFromResult(rs, variables[i].getName(), types[i]);
+				}
+				for (FetchedAtom atom : fetchedAtoms)
+					cacheAtom(atom, res);
+
+				current = res;
+				return true;
+			} catch (SQLException e) {
+				close();
+				throw new RuntimeException("Error reading database query results.", e);
+			}
+		}
+	}
+
+	/**
+	 * Instantiates an atom selected with the current row into the atom cache,
+	 * unless it is cached already or is a RandomVariableAtom. RandomVariableAtoms
+	 * are left to {@link RDBMSDatabase#getAtom(Predicate, Constant...)}, since,
+	 * e.g., an AtomEventFramework needs to see them instantiated.
+	 *
+	 * @throws IllegalStateException  if the atom was selected from another
+	 *                                partition by an earlier row
+	 */
+	private void cacheAtom(FetchedAtom atom, Constant[] row) throws SQLException {
+		int partition = rs.getInt(atom.partitionColumn);
+		Constant[] arguments = new Constant[atom.positions.length];
+		for (int i = 0; i < arguments.length; i++)
+			arguments[i] = (atom.positions[i] == -1) ? atom.constants[i] : row[atom.positions[i]];
+		QueryAtom qAtom = new QueryAtom(atom.predicate, arguments);
+
+		Integer previousPartition = partitions.put(qAtom, partition);
+		if (previousPartition != null) {
+			if (previousPartition != partition)
+				throw new IllegalStateException("Atom cannot exist in more than one partition.");
+			return;
+		}
+
+		if (partition == db.writeID && !db.isClosed(atom.predicate))
+			return;
+		if (db.cache.getCachedAtom(qAtom) != null)
+			return;
+
+		double value = rs.getDouble(atom.valueColumn);
+		if (rs.wasNull())
+			value = Double.NaN;
+		double confidence = rs.getDouble(atom.confidenceColumn);
+		if (rs.wasNull())
+			confidence = Double.NaN;
+		db.cache.instantiateObservedAtom(atom.predicate, arguments, value, confidence);
+	}
+
+	@Override
+	public int getArity() {
+		return variables.length;
+	}
+
+	@Override
+	public Constant get(Variable var) {
+		Integer pos = varMap.get(var);
+		if (pos == null)
+			throw new IllegalArgumentException("Variable is not in the results: " + var);
+		return get()[pos];
+	}
+
+	@Override
+	public Constant[] get() {
+		if (current == null)
+			throw new IllegalStateException("Cursor is not on a result.");
+		return current;
+	}
+
+	@Override
+	public Map<Variable, Integer> getVariableMap() {
+		return Collections.unmodifiableMap(varMap);
+	}
+
+	@Override
+	public void close() {
+		synchronized (db) {
+			if (closed)
+				return;
+			closed = true;
+
+			try {
+				try {
+					rs.close();
+				} finally {
+					stmt.close();
+				}
+			} catch (SQLException e) {
+				throw new RuntimeException("Error closing database query results.", e);
+			}
+		}
+	}
+
+	/**
+	 * An atom selected with each row, and how to substitute its arguments.
+	 */
+	static class FetchedAtom {
+		private final StandardPredicate predicate;
+
+		/* The position in the row of each argument, or -1 for constants[i] */
+		private final int[] positions;
+		private final Constant[] constants;
+
+		/* Aliases of the selected columns */
+		private final String valueColumn;
+		private final String confidenceColumn;
+		private final String partitionColumn;
+
+		FetchedAtom(StandardPredicate predicate, int[] positions, Constant[] constants,
+				String valueColumn, String confidenceColumn, String partitionColumn) {
+			this.predicate = predicate;
+			this.positions = positions;
+			this.constants = constants;
+			this.valueColumn = valueColumn;
+			this.confidenceColumn = confidenceColumn;
+			this.partitionColumn = partitionColumn;
+		}
+	}
+}
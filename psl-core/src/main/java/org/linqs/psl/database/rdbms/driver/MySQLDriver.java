@@ -62,7 +62,10 @@ public class MySQLDriver implements DatabaseDriver {
       Class.forName("com.mysql.jdbc.Driver").newInstance();
 
       // get connection
-      dbConnection = DriverManager.getConnection("jdbc:mysql://localhost/?user=root&password="); 
+      // Connector/J reads whole results into memory unless cursor fetching
+      // is on, ignoring the fetch size that ResultCursors are read with
+      dbConnection = DriverManager.getConnection(
+          "jdbc:mysql://localhost/?user=root&password=&useCursorFetch=true");
 
       // clean db if specified
       if (clearDB) {
@@ -17,8 +17,8 @@
  */
 package org.linqs.psl.model.atom;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.model.predicate.Predicate;
@@ -32,12 +32,16 @@ import com.google.common.collect.Iterables;
  * always returns the same object for a GroundAtom.
  * <p>
  * Also serves as the factory for GroundAtoms for a Database.
+ * <p>
+ * An AtomCache can be read and added to by multiple threads at once, such as
+ * while rules are grounded in parallel. If two threads instantiate the same
+ * Atom, the first one stored is returned to both.
  */
 public class AtomCache {
 	
 	protected final Database db;
 	
-	protected final Map<QueryAtom, GroundAtom> cache;
+	protected final ConcurrentMap<QueryAtom, GroundAtom> cache;
 	/**
 	 * Constructs a new AtomCache for a Database.
 	 * 
@@ -45,7 +49,7 @@ public class AtomCache {
 	 */
 	public AtomCache(Database db) {
 		this.db = db;
-		this.cache = new HashMap<QueryAtom, GroundAtom>();
+		this.cache = new ConcurrentHashMap<QueryAtom, GroundAtom>();
 	}
 	
 	/**
@@ -87,11 +91,7 @@ public class AtomCache {
 	 * @return whether an atom was removed from the cache
 	 */
 	public boolean removeCachedAtom(QueryAtom qAtom) {
-		if(cache.containsKey(qAtom)){
-			cache.remove(qAtom);
-			return true;
-		}
-		return false;
+		return cache.remove(qAtom) != null;
 	}
 	
 	/**
@@ -122,14 +122,14 @@ public class AtomCache {
 	 * @param args  the arguments to this Atom
 	 * @param value  the Atom's truth value
 	 * @param confidence  the Atom's confidence value
-	 * @return the new ObservedAtom
+	 * @return the new ObservedAtom, or the one already stored by another thread
 	 */
 	public ObservedAtom instantiateObservedAtom(Predicate p, Constant[] args,
 			double value, double confidence) {
 		ObservedAtom atom = new ObservedAtom(p, args, db, value, confidence);
 		QueryAtom key = new QueryAtom(p, args);
-		cache.put(key, atom);
-		return atom;
+		GroundAtom cached = cache.putIfAbsent(key, atom);
+		return (cached == null) ? atom : (ObservedAtom) cached;
 	}
 	
 	/**
@@ -146,14 +146,14 @@ public class AtomCache {
 	 * @param args  the arguments to this Atom
 	 * @param value  the Atom's truth value
 	 * @param confidence  the Atom's confidence value
-	 * @return the new RandomVariableAtom
+	 * @return the new RandomVariableAtom, or the one already stored by another thread
 	 */
 	public RandomVariableAtom instantiateRandomVariableAtom(StandardPredicate p,
 			Constant[] args, double value, double confidence) {
 		RandomVariableAtom atom = new RandomVariableAtom(p, args, db, value, confidence);
 		QueryAtom key = new QueryAtom(p, args);
-		cache.put(key, atom);
-		return atom;
+		GroundAtom cached = cache.putIfAbsent(key, atom);
+		return (cached == null) ? atom : (RandomVariableAtom) cached;
 	}
 
 
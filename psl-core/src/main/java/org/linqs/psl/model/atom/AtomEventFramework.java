@@ -27,6 +27,7 @@ import org.linqs.psl.config.ConfigBundle;
 import org.linqs.psl.config.ConfigManager;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.model.predicate.Predicate;
 import org.linqs.psl.model.predicate.StandardPredicate;
@@ -249,6 +250,11 @@ public class AtomEventFramework implements AtomManager {
 	public ResultList executeQuery(DatabaseQuery query) {
 		return db.executeQuery(query);
 	}
+
+	@Override
+	public ResultCursor streamQuery(DatabaseQuery query) {
+		return db.streamQuery(query);
+	}
 	
 	@Override
 	public boolean isClosed(StandardPredicate predicate) {
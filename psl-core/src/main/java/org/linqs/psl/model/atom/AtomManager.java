@@ -19,6 +19,7 @@ package org.linqs.psl.model.atom;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.model.predicate.Predicate;
 import org.linqs.psl.model.predicate.StandardPredicate;
@@ -61,6 +62,15 @@ public interface AtomManager {
 	 */
 	public ResultList executeQuery(DatabaseQuery query);
 	
+	/**
+	 * Calls {@link Database#streamQuery(DatabaseQuery)} on the
+	 * encapsulated Database.
+	 * 
+	 * @param query  the query to execute
+	 * @return the query results exactly as returned by the Database
+	 */
+	public ResultCursor streamQuery(DatabaseQuery query);
+	
 	/**
 	 * Calls {@link Database#isClosed(StandardPredicate)} on the
 	 * encapsulated Database.
@@ -90,11 +90,13 @@ abstract public class GroundAtom extends Atom {
 	 * Registers a ground kernel to receive update events.
 	 * <p>
 	 * Any GroundKernel that is a function of this Atom should be registered.
+	 * Ground kernels can be registered by multiple threads at once, such as
+	 * while rules are grounded in parallel.
 	 * 
 	 * @param f A ground kernel
 	 * @return TRUE if successful; FALSE if kernel was already registered 
 	 */
-	public boolean registerGroundKernel(GroundRule f) {
+	public synchronized boolean registerGroundKernel(GroundRule f) {
 		if (registeredGroundKernels == null)
 			registeredGroundKernels = HashMultimap.create();
 		return registeredGroundKernels.put(f.getRule(), f);
@@ -106,7 +108,7 @@ abstract public class GroundAtom extends Atom {
 	 * @param f A ground kernel
 	 * @return TRUE if successful; FALSE if kernel was never registered
 	 */
-	public boolean unregisterGroundKernel(GroundRule f) {
+	public synchronized boolean unregisterGroundKernel(GroundRule f) {
 		if (registeredGroundKernels == null)
 			return false;
 		return registeredGroundKernels.remove(f.getRule(), f);
@@ -24,6 +24,7 @@ import java.util.Set;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.model.formula.Formula;
 import org.linqs.psl.model.predicate.Predicate;
@@ -101,6 +102,11 @@ public class PersistedAtomManager implements AtomManager {
 		return db.executeQuery(query);
 	}
 
+	@Override
+	public ResultCursor streamQuery(DatabaseQuery query) {
+		return db.streamQuery(query);
+	}
+
 	@Override
 	public boolean isClosed(StandardPredicate predicate) {
 		return db.isClosed(predicate);
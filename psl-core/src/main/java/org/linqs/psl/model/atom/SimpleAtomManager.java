@@ -19,6 +19,7 @@ package org.linqs.psl.model.atom;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.model.predicate.Predicate;
 import org.linqs.psl.model.predicate.StandardPredicate;
@@ -48,6 +49,11 @@ public class SimpleAtomManager implements AtomManager {
 	public ResultList executeQuery(DatabaseQuery query) {
 		return db.executeQuery(query);
 	}
+
+	@Override
+	public ResultCursor streamQuery(DatabaseQuery query) {
+		return db.streamQuery(query);
+	}
 	
 	@Override
 	public boolean isClosed(StandardPredicate predicate) {
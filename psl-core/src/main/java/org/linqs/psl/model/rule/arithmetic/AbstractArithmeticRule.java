@@ -19,7 +19,7 @@ package org.linqs.psl.model.rule.arithmetic;
 
 import org.linqs.psl.application.groundrulestore.GroundRuleStore;
 import org.linqs.psl.database.DatabaseQuery;
-import org.linqs.psl.database.ResultList;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.AtomEvent;
 import org.linqs.psl.model.atom.AtomEventFramework;
@@ -137,8 +137,9 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
 			query = new DatabaseQuery(queryAtoms.get(0));
 		}
 
-		// Execute the body query
-		ResultList rawGroundings = atomManager.executeQuery(query);
+		// Execute the body query.
+		// The groundings are read through a cursor, so only the summation substitutions are held in memory.
+		ResultCursor rawGroundings = atomManager.streamQuery(query);
 		Map<Variable, Integer> groundingVariableMap = rawGroundings.getVariableMap();
 
 		// <Non-Summation Values, <Summation Variable, Summation Replacements>>
@@ -148,40 +149,44 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
 		// Store all ground summation atoms for later validation.
 		Set<GroundAtom> groundSummationAtoms = new HashSet<GroundAtom>();
 
-		for (int i = 0; i < rawGroundings.size(); i++) {
-			Constant[] rawGrounding = rawGroundings.get(i);
+		try {
+			while (rawGroundings.next()) {
+				Constant[] rawGrounding = rawGroundings.get();
 
-			// Store all ground summation atoms for later validation.
-			for (SummationAtom summationAtom : summationAtoms) {
-				groundSummationAtoms.add(getGroundAtom(summationAtom, Arrays.asList(rawGrounding), groundingVariableMap, atomManager));
-			}
-
-			// Put all the non-summation constants into a list.
-			// Note that we know the size ahead of time and would have used an array, but this will need to
-			// be a key in a map so it must be an Object.
-			List<Constant> nonSummationConstants = new ArrayList<Constant>();
-			for (Variable nonSummationVariable : nonSummationVariables) {
-				nonSummationConstants.add(rawGrounding[groundingVariableMap.get(nonSummationVariable).intValue()]);
-			}
+				// Store all ground summation atoms for later validation.
+				for (SummationAtom summationAtom : summationAtoms) {
+					groundSummationAtoms.add(getGroundAtom(summationAtom, Arrays.asList(rawGrounding), groundingVariableMap, atomManager));
+				}
 
-			if (!summationSubs.containsKey(nonSummationConstants)) {
-				summationSubs.put(nonSummationConstants, new HashMap<SummationVariable, Set<Constant>>());
-			}
-			Map<SummationVariable, Set<Constant>> subs = summationSubs.get(nonSummationConstants);
+				// Put all the non-summation constants into a list.
+				// Note that we know the size ahead of time and would have used an array, but this will need to
+				// be a key in a map so it must be an Object.
+				List<Constant> nonSummationConstants = new ArrayList<Constant>();
+				for (Variable nonSummationVariable : nonSummationVariables) {
+					nonSummationConstants.add(rawGrounding[groundingVariableMap.get(nonSummationVariable).intValue()]);
+				}
 
-			// Add summation values that pass the filter into the set of summation subs.
-			// If there is no filter, we just add it directly.
-			for (SummationVariable sumVar : summationVariables) {
-				if (!subs.containsKey(sumVar)) {
-					subs.put(sumVar, new HashSet<Constant>());
+				if (!summationSubs.containsKey(nonSummationConstants)) {
+					summationSubs.put(nonSummationConstants, new HashMap<SummationVariable, Set<Constant>>());
 				}
+				Map<SummationVariable, Set<Constant>> subs = summationSubs.get(nonSummationConstants);
+
+				// Add summation values that pass the filter into the set of summation subs.
+				// If there is no filter, we just add it directly.
+				for (SummationVariable sumVar : summationVariables) {
+					if (!subs.containsKey(sumVar)) {
+						subs.put(sumVar, new HashSet<Constant>());
+					}
 
-				// Either there is no filter statement, or the filter allows this grounding.
-				if (!filterEvaluations.containsKey(sumVar)
-					 || filterEvaluations.get(sumVar).getEvaluation(rawGrounding, groundingVariableMap)) {
-					subs.get(sumVar).add(rawGrounding[groundingVariableMap.get(sumVar.getVariable()).intValue()]);
+					// Either there is no filter statement, or the filter allows this grounding.
+					if (!filterEvaluations.containsKey(sumVar)
+						 || filterEvaluations.get(sumVar).getEvaluation(rawGrounding, groundingVariableMap)) {
+						subs.get(sumVar).add(rawGrounding[groundingVariableMap.get(sumVar.getVariable()).intValue()]);
+					}
 				}
 			}
+		} finally {
+			rawGroundings.close();
 		}
 
 		List<Double> coeffs = new LinkedList<Double>();
@@ -242,12 +247,16 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
 					query = new DatabaseQuery(queryAtoms[0]);
 				}
 
-				ResultList filterGroundings = atomManager.executeQuery(query);
-				for (int i = 0; i < filterGroundings.size(); i++) {
-					boolean evaluationValue = evaluateFilterGrounding(atomManager,
-							componentFormula, queryAtoms,
-							filterGroundings.get(i), filterGroundings.getVariableMap());
-					summationEval.add(filterGroundings.get(i), filterGroundings.getVariableMap(), evaluationValue);
+				ResultCursor filterGroundings = atomManager.streamQuery(query);
+				try {
+					while (filterGroundings.next()) {
+						boolean evaluationValue = evaluateFilterGrounding(atomManager,
+								componentFormula, queryAtoms,
+								filterGroundings.get(), filterGroundings.getVariableMap());
+						summationEval.add(filterGroundings.get(), filterGroundings.getVariableMap(), evaluationValue);
+					}
+				} finally {
+					filterGroundings.close();
 				}
 
 				summationDisjunctionEval.addComponent(summationEval);
@@ -19,6 +19,7 @@ package org.linqs.psl.model.rule.logical;
 
 import org.linqs.psl.application.groundrulestore.GroundRuleStore;
 import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.ResultCursor;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.model.NumericUtilities;
 import org.linqs.psl.model.atom.Atom;
@@ -95,64 +96,121 @@ abstract public class AbstractLogicalRule extends AbstractRule {
 
 	@Override
 	public void groundAll(AtomManager atomManager, GroundRuleStore grs) {
-		ResultList res = atomManager.executeQuery(new DatabaseQuery(clause.getQueryFormula()));
-		int numGrounded = groundFormula(atomManager, grs, res, null);
+		DatabaseQuery query = new DatabaseQuery(clause.getQueryFormula());
+		/*
+		 * A ground rule whose worst-case value is not positive is never added.
+		 * That is the case if any of its positive literals is observed to be
+		 * zero or any of its negative literals is observed to be one, so those
+		 * groundings can be excluded by the query. An AtomEventFramework still
+		 * has to consider their random variable atoms, though.
+		 */
+		if (!(atomManager instanceof AtomEventFramework)) {
+			query.getNonZeroAtoms().addAll(clause.getPosLiterals());
+			query.getNonOneAtoms().addAll(clause.getNegLiterals());
+		}
+
+		ResultCursor res = atomManager.streamQuery(query);
+		int numGrounded;
+		try {
+			numGrounded = groundFormula(atomManager, grs, res);
+		} finally {
+			res.close();
+		}
 		log.debug("Grounded {} instances of rule {}", numGrounded, this);
 	}
 
+	/**
+	 * Grounds the formula for each substitution read from a cursor, so that
+	 * only the current substitution is held in memory.
+	 */
+	protected int groundFormula(AtomManager atomManager, GroundRuleStore grs, ResultCursor res) {
+		int numGroundingsAdded = 0;
+		GroundingBuffers buffers = new GroundingBuffers();
+		Map<Variable, Integer> varMap = res.getVariableMap();
+
+		while (res.next()) {
+			if (groundSubstitution(atomManager, grs, res.get(), varMap, null, buffers))
+				numGroundingsAdded++;
+		}
+
+		return numGroundingsAdded;
+	}
+
 	protected int groundFormula(AtomManager atomManager, GroundRuleStore grs, ResultList res,  VariableAssignment var) {
 		int numGroundingsAdded = 0;
-		List<GroundAtom> posLiterals = new ArrayList<GroundAtom>(4);
-		List<GroundAtom> negLiterals = new ArrayList<GroundAtom>(4);
+		GroundingBuffers buffers = new GroundingBuffers();
+		Map<Variable, Integer> varMap = res.getVariableMap();
+
+		for (int i = 0; i < res.size(); i++) {
+			if (groundSubstitution(atomManager, grs, res.get(i), varMap, var, buffers))
+				numGroundingsAdded++;
+		}
+
+		return numGroundingsAdded;
+	}
+
+	/**
+	 * Grounds the formula for one substitution and adds the ground rule to grs
+	 * if it is potentially unsatisfied and not already in grs.
+	 *
+	 * @return whether the ground rule was added
+	 */
+	private boolean groundSubstitution(AtomManager atomManager, GroundRuleStore grs, Constant[] result,
+			Map<Variable, Integer> varMap, VariableAssignment var, GroundingBuffers buffers) {
+		List<GroundAtom> posLiterals = buffers.posLiterals;
+		List<GroundAtom> negLiterals = buffers.negLiterals;
 
 		/* Uses these to check worst-case truth value */
-		Map<FunctionVariable, Double> worstCaseValues = new HashMap<FunctionVariable, Double>(8);
+		Map<FunctionVariable, Double> worstCaseValues = buffers.worstCaseValues;
 		double worstCaseValue;
+		boolean added;
 
 		GroundAtom atom;
-		for (int i = 0; i < res.size(); i++) {
-
-			for (int j = 0; j < clause.getPosLiterals().size(); j++) {
-				atom = groundAtom(atomManager, clause.getPosLiterals().get(j), res, i, var);
-				if (atom instanceof RandomVariableAtom)
-					worstCaseValues.put(atom.getVariable(), 1.0);
-				else
-					worstCaseValues.put(atom.getVariable(), atom.getValue());
-				posLiterals.add(atom);
-			}
-
-			for (int j = 0; j < clause.getNegLiterals().size(); j++) {
-				atom = groundAtom(atomManager, clause.getNegLiterals().get(j), res, i, var);
-				if (atom instanceof RandomVariableAtom)
-					worstCaseValues.put(atom.getVariable(), 0.0);
-				else
-					worstCaseValues.put(atom.getVariable(), atom.getValue());
-				negLiterals.add(atom);
-			}
+		for (int j = 0; j < clause.getPosLiterals().size(); j++) {
+			atom = groundAtom(atomManager, clause.getPosLiterals().get(j), result, varMap, var);
+			if (atom instanceof RandomVariableAtom)
+				worstCaseValues.put(atom.getVariable(), 1.0);
+			else
+				worstCaseValues.put(atom.getVariable(), atom.getValue());
+			posLiterals.add(atom);
+		}
 
-			AbstractGroundLogicalRule groundRule = groundFormulaInstance(posLiterals, negLiterals);
-			FunctionTerm function = groundRule.getFunction();
-			worstCaseValue = function.getValue(worstCaseValues, false);
-			if (worstCaseValue > NumericUtilities.strictEpsilon
-					&& (!function.isConstant() || !(groundRule instanceof WeightedGroundRule))
-					&& !grs.containsGroundKernel(groundRule)) {
-				grs.addGroundRule(groundRule);
-				numGroundingsAdded++;
-			}
-			/* If the ground kernel is not actually added, unregisters it from atoms */
+		for (int j = 0; j < clause.getNegLiterals().size(); j++) {
+			atom = groundAtom(atomManager, clause.getNegLiterals().get(j), result, varMap, var);
+			if (atom instanceof RandomVariableAtom)
+				worstCaseValues.put(atom.getVariable(), 0.0);
 			else
-				for (GroundAtom incidentAtom : groundRule.getAtoms())
-					incidentAtom.unregisterGroundKernel(groundRule);
+				worstCaseValues.put(atom.getVariable(), atom.getValue());
+			negLiterals.add(atom);
+		}
 
-			posLiterals.clear();
-			negLiterals.clear();
-			worstCaseValues.clear();
+		AbstractGroundLogicalRule groundRule = groundFormulaInstance(posLiterals, negLiterals);
+		FunctionTerm function = groundRule.getFunction();
+		worstCaseValue = function.getValue(worstCaseValues, false);
+		if (worstCaseValue > NumericUtilities.strictEpsilon
+				&& (!function.isConstant() || !(groundRule instanceof WeightedGroundRule))
+				&& !grs.containsGroundKernel(groundRule)) {
+			grs.addGroundRule(groundRule);
+			added = true;
+		}
+		/* If the ground kernel is not actually added, unregisters it from atoms */
+		else {
+			for (GroundAtom incidentAtom : groundRule.getAtoms())
+				incidentAtom.unregisterGroundKernel(groundRule);
+			added = false;
 		}
 
-		return numGroundingsAdded;
+		posLiterals.clear();
+		negLiterals.clear();
+		worstCaseValues.clear();
+		return added;
 	}
 
 	protected GroundAtom groundAtom(AtomManager atomManager, Atom atom, ResultList res, int resultIndex, VariableAssignment var) {
+		return groundAtom(atomManager, atom, res.get(resultIndex), res.getVariableMap(), var);
+	}
+
+	protected GroundAtom groundAtom(AtomManager atomManager, Atom atom, Constant[] result, Map<Variable, Integer> varMap, VariableAssignment var) {
 		Term[] oldArgs = atom.getArguments();
 		Constant[] newArgs = new Constant[atom.getArity()];
 		for (int i = 0; i < oldArgs.length; i++)
@@ -161,7 +219,7 @@ abstract public class AbstractLogicalRule extends AbstractRule {
 				if (var != null && var.hasVariable(v))
 					newArgs[i] = var.getVariable(v);
 				else
-					newArgs[i] = res.get(resultIndex, (Variable) oldArgs[i]);
+					newArgs[i] = result[varMap.get(v)];
 			}
 			else if (oldArgs[i] instanceof Constant)
 				newArgs[i] = (Constant) oldArgs[i];
@@ -200,4 +258,13 @@ abstract public class AbstractLogicalRule extends AbstractRule {
 	public Rule clone() throws CloneNotSupportedException {
 		throw new CloneNotSupportedException();
 	}
+
+	/**
+	 * Collections reused to ground each substitution.
+	 */
+	private static class GroundingBuffers {
+		private final List<GroundAtom> posLiterals = new ArrayList<GroundAtom>(4);
+		private final List<GroundAtom> negLiterals = new ArrayList<GroundAtom>(4);
+		private final Map<FunctionVariable, Double> worstCaseValues = new HashMap<FunctionVariable, Double>(8);
+	}
 }
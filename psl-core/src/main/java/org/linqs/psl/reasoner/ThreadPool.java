@@ -17,43 +17,298 @@
  */
 package org.linqs.psl.reasoner;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.linqs.psl.config.ConfigBundle;
+
+/**
+ * Threads shared by the reasoners and applications in a JVM.
+ * <p>
+ * A pool is either fixed-size, for computation, or elastic, starting
+ * threads as tasks arrive and stopping them once idle, for work that mostly
+ * blocks, such as on a database. {@link #getPool()} returns a pool shared
+ * by default, and {@link #getPool(ConfigBundle)} a pool shared by the
+ * configurations that set the same sizing, which is what the reasoners and
+ * grounding use. They can also be given their own pools.
+ * <p>
+ * Tasks that wait for each other, such as at barriers, must be submitted
+ * together with {@link #submitGang(Runnable[])}, which runs each on its own
+ * thread so that they cannot deadlock however many other tasks are running.
+ */
 public class ThreadPool {
 
+	/** Prefix of property keys used by this class. */
+	public static final String CONFIG_PREFIX = "threadpool";
+
+	/**
+	 * Key for String property. How the pool is sized:
+	 * {@link #SIZING_PROCESSORS}, {@link #SIZING_FIXED}, or
+	 * {@link #SIZING_ELASTIC}.
+	 */
+	public static final String SIZING_KEY = CONFIG_PREFIX + ".sizing";
+	/** Value of SIZING_KEY for a thread per available processor */
+	public static final String SIZING_PROCESSORS = "processors";
+	/** Value of SIZING_KEY for {@link #NUM_THREADS_KEY} threads */
+	public static final String SIZING_FIXED = "fixed";
+	/** Value of SIZING_KEY for a thread per running task, stopped once idle */
+	public static final String SIZING_ELASTIC = "elastic";
+	/** Default value for SIZING_KEY property */
+	public static final String SIZING_DEFAULT = SIZING_PROCESSORS;
+
+	/**
+	 * Key for positive integer property. The number of threads when
+	 * {@link #SIZING_KEY} is {@link #SIZING_FIXED}.
+	 */
+	public static final String NUM_THREADS_KEY = CONFIG_PREFIX + ".numthreads";
+	/** Default value for NUM_THREADS_KEY property */
+	public static final int NUM_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+
+	/** Number of threads of an elastic pool */
+	public static final int ELASTIC = -1;
+
+	/** Seconds an idle thread of an elastic pool, or of a gang, waits before stopping */
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
 	private static ThreadPool instance = null;
-	
-	private final ExecutorService pool;
-	
-	private ThreadPool() {
-		this.pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory());
-	}
-	
-	public static ThreadPool getPool() {
+	/** Pools shared by configurations that set SIZING_KEY, by number of threads */
+	private static final Map<Integer, ThreadPool> configuredPools = new HashMap<Integer, ThreadPool>();
+
+	private final MeteredExecutor pool;
+	/** Threads when no gang is running, or ELASTIC */
+	private final int numThreads;
+	/** Threads added for the running gangs */
+	private int gangThreads;
+
+	/**
+	 * @param numThreads  the number of threads, or {@link #ELASTIC} to start
+	 *                    a thread for each task that arrives while the others
+	 *                    are busy and stop threads once idle
+	 */
+	public ThreadPool(int numThreads) {
+		if (numThreads <= 0 && numThreads != ELASTIC)
+			throw new IllegalArgumentException("A pool needs at least one thread.");
+		this.numThreads = numThreads;
+		if (numThreads == ELASTIC)
+			pool = new MeteredExecutor(0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>());
+		else
+			pool = new MeteredExecutor(numThreads, numThreads, new LinkedBlockingQueue<Runnable>());
+		gangThreads = 0;
+	}
+
+	/**
+	 * Creates a pool sized as configured by {@link #SIZING_KEY}.
+	 */
+	public ThreadPool(ConfigBundle config) {
+		this(getNumThreads(config));
+	}
+
+	private static int getNumThreads(ConfigBundle config) {
+		String sizing = config.getString(SIZING_KEY, SIZING_DEFAULT);
+		if (sizing.equals(SIZING_PROCESSORS))
+			return Runtime.getRuntime().availableProcessors();
+		else if (sizing.equals(SIZING_FIXED)) {
+			int numThreads = config.getInt(NUM_THREADS_KEY, NUM_THREADS_DEFAULT);
+			if (numThreads <= 0)
+				throw new IllegalArgumentException("Property " + NUM_THREADS_KEY + " must be positive.");
+			return numThreads;
+		}
+		else if (sizing.equals(SIZING_ELASTIC))
+			return ELASTIC;
+		else
+			throw new IllegalArgumentException("Property " + SIZING_KEY + " must be "
+					+ SIZING_PROCESSORS + ", " + SIZING_FIXED + ", or " + SIZING_ELASTIC + ".");
+	}
+
+	/**
+	 * @return the pool shared by default, with a thread per available
+	 *         processor unless replaced with {@link #setPool(ThreadPool)}
+	 */
+	public static synchronized ThreadPool getPool() {
 		if (instance == null)
-			instance = new ThreadPool();
-		
+			instance = new ThreadPool(Runtime.getRuntime().availableProcessors());
+
 		return instance;
 	}
-	
+
+	/**
+	 * @return the pool shared by default if the configuration does not set
+	 *         {@link #SIZING_KEY}, or else the pool shared by the
+	 *         configurations sized the same way
+	 */
+	public static synchronized ThreadPool getPool(ConfigBundle config) {
+		if (config.getString(SIZING_KEY, null) == null)
+			return getPool();
+
+		int numThreads = getNumThreads(config);
+		ThreadPool pool = configuredPools.get(numThreads);
+		if (pool == null) {
+			pool = new ThreadPool(numThreads);
+			configuredPools.put(numThreads, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Replaces the pool shared by default. Reasoners created before keep
+	 * the pool they were given.
+	 */
+	public static synchronized void setPool(ThreadPool pool) {
+		instance = pool;
+	}
+
 	public Future<?> submit(Runnable task) {
 		return pool.submit(task);
 	}
 
-	private class DaemonThreadFactory implements ThreadFactory {
+	/**
+	 * Submits tasks that wait for each other, each of which starts on a
+	 * thread of its own, added to the pool until all of them are done.
+	 */
+	public Future<?>[] submitGang(Runnable[] tasks) {
+		final int size = tasks.length;
+		final AtomicInteger running = new AtomicInteger(size);
+		Future<?>[] futures = new Future<?>[size];
+		synchronized (this) {
+			resize(size);
+			for (int i = 0; i < size; i++) {
+				final Runnable task = tasks[i];
+				futures[i] = pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.run();
+						}
+						finally {
+							if (running.decrementAndGet() == 0)
+								resize(-size);
+						}
+					}
+				});
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Adds threads for a gang, so that each of its tasks finds a new thread,
+	 * or removes them once it is done.
+	 */
+	private synchronized void resize(int change) {
+		gangThreads += change;
+		int coreSize = Math.max(numThreads, 0) + gangThreads;
+		if (numThreads == ELASTIC)
+			pool.setCorePoolSize(coreSize);
+		else if (change > 0) {
+			pool.setMaximumPoolSize(coreSize);
+			pool.setCorePoolSize(coreSize);
+		}
+		else {
+			pool.setCorePoolSize(coreSize);
+			pool.setMaximumPoolSize(coreSize);
+		}
+	}
+
+	/**
+	 * @return the number of tasks waiting for a thread
+	 */
+	public int getQueueDepth() {
+		return pool.getQueue().size();
+	}
+
+	/**
+	 * @return the approximate number of threads running tasks
+	 */
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	/**
+	 * @return the number of threads, busy or idle
+	 */
+	public int getPoolSize() {
+		return pool.getPoolSize();
+	}
+
+	/**
+	 * @return the nanoseconds spent running completed tasks, over all threads
+	 */
+	public long getBusyTime() {
+		return pool.busyTime.get();
+	}
+
+	/**
+	 * @return the approximate number of tasks completed
+	 */
+	public long getCompletedTaskCount() {
+		return pool.getCompletedTaskCount();
+	}
+
+	/**
+	 * Lets the submitted tasks finish, and then stops the threads. No tasks
+	 * can be submitted after.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Waits until the pool is shut down and all tasks have finished.
+	 *
+	 * @return false if the timeout elapsed first
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return pool.awaitTermination(timeout, unit);
+	}
+
+	/** Executor that measures the time its threads spend running tasks */
+	private static class MeteredExecutor extends ThreadPoolExecutor {
+		private final AtomicLong busyTime;
+		private final ThreadLocal<Long> startTimes;
+
+		public MeteredExecutor(int coreSize, int maxSize, BlockingQueue<Runnable> queue) {
+			super(coreSize, maxSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, new DaemonThreadFactory());
+			busyTime = new AtomicLong(0);
+			startTimes = new ThreadLocal<Long>();
+		}
+
+		@Override
+		protected void beforeExecute(Thread thread, Runnable task) {
+			super.beforeExecute(thread, task);
+			startTimes.set(System.nanoTime());
+		}
+
+		@Override
+		protected void afterExecute(Runnable task, Throwable throwable) {
+			busyTime.addAndGet(System.nanoTime() - startTimes.get());
+			super.afterExecute(task, throwable);
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+		private final AtomicInteger threadNumber;
+		private final String prefix;
 
-		private ThreadFactory defaultThreadFactory;
-		
 		public DaemonThreadFactory() {
-			this.defaultThreadFactory = Executors.defaultThreadFactory();
+			threadNumber = new AtomicInteger(1);
+			prefix = "psl-pool-" + poolNumber.getAndIncrement() + "-thread-";
 		}
-		
+
 		@Override
 		public Thread newThread(Runnable r) {
-			Thread thread = defaultThreadFactory.newThread(r);
+			Thread thread = new Thread(r, prefix + threadNumber.getAndIncrement());
 			thread.setDaemon(true);
 			return thread;
 		}
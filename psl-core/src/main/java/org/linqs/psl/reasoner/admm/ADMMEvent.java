@@ -0,0 +1,196 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+/**
+ * Progress of an optimization by an {@link ADMMReasoner}, published to the
+ * {@link Listener Listeners} registered with it.
+ * <p>
+ * Events are published by the synchronous and asynchronous iterations and
+ * by optimization on workers, including the separate optimization of each
+ * large connected component when decomposing. Small components, which are
+ * optimized many at a time, publish no events.
+ */
+public class ADMMEvent {
+
+	/** Types of ADMMEvents */
+	public enum Type {
+		/** The residuals were computed */
+		Check,
+		/** An optimization stopped, after converging or reaching the maximum iterations */
+		Completed;
+	}
+
+	/**
+	 * A listener for ADMMEvents. Listeners are notified on the threads that
+	 * optimize, which wait for them, so they should return quickly.
+	 */
+	public interface Listener {
+		/**
+		 * Notifies this object of an ADMMEvent.
+		 *
+		 * @param event  event information
+		 */
+		public void notifyADMMEvent(ADMMEvent event);
+	}
+
+	private final Type type;
+	private final ADMMReasoner reasoner;
+	private final int iteration;
+	private final long elapsedTime;
+	private final double iterationRate;
+	private final double primalResidual, dualResidual;
+	private final double epsilonPrimal, epsilonDual;
+	private final double stepSize;
+	private final double lagrangePenalty, augmentedLagrangePenalty;
+	private final long[] localTimes, consensusTimes, waitTimes;
+
+	ADMMEvent(Type type, ADMMReasoner reasoner, int iteration, long elapsedTime, double iterationRate,
+			double primalResidual, double dualResidual, double epsilonPrimal, double epsilonDual,
+			double stepSize, double lagrangePenalty, double augmentedLagrangePenalty,
+			long[] localTimes, long[] consensusTimes, long[] waitTimes) {
+		this.type = type;
+		this.reasoner = reasoner;
+		this.iteration = iteration;
+		this.elapsedTime = elapsedTime;
+		this.iterationRate = iterationRate;
+		this.primalResidual = primalResidual;
+		this.dualResidual = dualResidual;
+		this.epsilonPrimal = epsilonPrimal;
+		this.epsilonDual = epsilonDual;
+		this.stepSize = stepSize;
+		this.lagrangePenalty = lagrangePenalty;
+		this.augmentedLagrangePenalty = augmentedLagrangePenalty;
+		this.localTimes = localTimes;
+		this.consensusTimes = consensusTimes;
+		this.waitTimes = waitTimes;
+	}
+
+	/**
+	 * @return the associated ADMMEvent.Type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the reasoner that is optimizing
+	 */
+	public ADMMReasoner getReasoner() {
+		return reasoner;
+	}
+
+	/**
+	 * @return the number of iterations completed, by the thread that computed
+	 *         the residuals if iterations are asynchronous
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * @return the nanoseconds since the optimization started
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * @return the average number of iterations per second since the
+	 *         optimization started
+	 */
+	public double getIterationRate() {
+		return iterationRate;
+	}
+
+	public double getPrimalResidual() {
+		return primalResidual;
+	}
+
+	public double getDualResidual() {
+		return dualResidual;
+	}
+
+	/**
+	 * @return the tolerance of the primal residual, which it must not exceed
+	 *         to converge
+	 */
+	public double getEpsilonPrimal() {
+		return epsilonPrimal;
+	}
+
+	/**
+	 * @return the tolerance of the dual residual, which it must not exceed
+	 *         to converge
+	 */
+	public double getEpsilonDual() {
+		return epsilonDual;
+	}
+
+	/**
+	 * @return whether the residuals meet the stopping criterion
+	 */
+	public boolean isConverged() {
+		return primalResidual <= epsilonPrimal && dualResidual <= epsilonDual;
+	}
+
+	/**
+	 * @return the step size for the next iteration
+	 */
+	public double getStepSize() {
+		return stepSize;
+	}
+
+	/**
+	 * @return the total of y * (x - z) over the local variables
+	 */
+	public double getLagrangePenalty() {
+		return lagrangePenalty;
+	}
+
+	/**
+	 * @return the total of stepSize / 2 * (x - z)^2 over the local variables
+	 */
+	public double getAugmentedLagrangePenalty() {
+		return augmentedLagrangePenalty;
+	}
+
+	/**
+	 * @return the nanoseconds each thread has spent minimizing terms since the
+	 *         optimization started, or null if not measured
+	 */
+	public long[] getLocalTimes() {
+		return localTimes;
+	}
+
+	/**
+	 * @return the nanoseconds each thread has spent updating consensus
+	 *         variables since the optimization started, or null if not measured
+	 */
+	public long[] getConsensusTimes() {
+		return consensusTimes;
+	}
+
+	/**
+	 * @return the nanoseconds each thread has spent waiting for the others
+	 *         since the optimization started, or null if not measured
+	 */
+	public long[] getWaitTimes() {
+		return waitTimes;
+	}
+}
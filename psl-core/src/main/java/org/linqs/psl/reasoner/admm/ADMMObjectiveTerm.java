@@ -38,7 +38,7 @@ public abstract class ADMMObjectiveTerm {
 		
 		/* This loop ensures that the reasoner, when it first computes y, will keep it at 0 */
 		for (int i = 0; i < x.length; i++)
-			x[i] = reasoner.z.get(zIndices[i]);
+			x[i] = reasoner.z[zIndices[i]];
 	}
 	
 	/**
@@ -49,11 +49,26 @@ public abstract class ADMMObjectiveTerm {
 	abstract protected void minimize();
 	
 	/**
+	 * Updates y with x relaxed toward the consensus variables before the last
+	 * consensus step, if the reasoner relaxes.
+	 * 
 	 * @return this for convenience
 	 */
 	protected ADMMObjectiveTerm updateLagrange() {
-		for (int i = 0; i < y.length; i++) {
-			y[i] = y[i] + reasoner.stepSize * (x[i] - reasoner.z.get(zIndices[i]));
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+		double relaxation = reasoner.relaxation;
+		if (relaxation == 1.0) {
+			for (int i = 0; i < y.length; i++) {
+				y[i] = y[i] + stepSize * (x[i] - z[zIndices[i]]);
+			}
+		}
+		else {
+			double[] previousZ = reasoner.previousZ;
+			for (int i = 0; i < y.length; i++) {
+				double relaxedX = relaxation * x[i] + (1 - relaxation) * previousZ[zIndices[i]];
+				y[i] = y[i] + stepSize * (relaxedX - z[zIndices[i]]);
+			}
 		}
 		
 		return this;
@@ -17,14 +17,29 @@
  */
 package org.linqs.psl.reasoner.admm;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.collections4.BidiMap;
 import org.apache.commons.collections4.bidimap.DualHashBidiMap;
@@ -86,6 +101,50 @@ public class ADMMReasoner implements Reasoner {
 	/** Default value for STEP_SIZE_KEY property */
 	public static final double STEP_SIZE_DEFAULT = 1;
 
+	/**
+	 * Key for boolean property. If true, the step size is adapted during
+	 * optimization to keep the primal and dual residuals within a factor of
+	 * {@link #STEP_SIZE_BALANCE_KEY} of each other.
+	 */
+	public static final String ADAPTIVE_STEP_SIZE_KEY = CONFIG_PREFIX + ".adaptivestepsize";
+	/** Default value for ADAPTIVE_STEP_SIZE_KEY property */
+	public static final boolean ADAPTIVE_STEP_SIZE_DEFAULT = false;
+
+	/**
+	 * Key for double property greater than 1. The largest ratio between the
+	 * primal and dual residuals tolerated before the step size is adapted.
+	 */
+	public static final String STEP_SIZE_BALANCE_KEY = CONFIG_PREFIX + ".stepsizebalance";
+	/** Default value for STEP_SIZE_BALANCE_KEY property */
+	public static final double STEP_SIZE_BALANCE_DEFAULT = 10.0;
+
+	/**
+	 * Key for double property greater than 1. The factor by which the step
+	 * size is increased or decreased when it is adapted.
+	 */
+	public static final String STEP_SIZE_SCALE_KEY = CONFIG_PREFIX + ".stepsizescale";
+	/** Default value for STEP_SIZE_SCALE_KEY property */
+	public static final double STEP_SIZE_SCALE_DEFAULT = 2.0;
+
+	/**
+	 * Key for non-negative integer property. The most times the step size is
+	 * adapted in one optimization. It is then fixed, since ADMM is only
+	 * guaranteed to converge with a step size that eventually stops changing.
+	 */
+	public static final String STEP_SIZE_ADAPTATIONS_KEY = CONFIG_PREFIX + ".stepsizeadaptations";
+	/** Default value for STEP_SIZE_ADAPTATIONS_KEY property */
+	public static final int STEP_SIZE_ADAPTATIONS_DEFAULT = 50;
+
+	/**
+	 * Key for double property in (0, 2). Relaxation parameter of the consensus
+	 * update. Values greater than 1 over-relax, which often speeds up
+	 * convergence, typically in the range 1.5 to 1.8. The value 1 is standard
+	 * ADMM.
+	 */
+	public static final String RELAXATION_KEY = CONFIG_PREFIX + ".relaxation";
+	/** Default value for RELAXATION_KEY property */
+	public static final double RELAXATION_DEFAULT = 1.0;
+
 	/**
 	 * Key for positive double property. Absolute error component of stopping
 	 * criteria.
@@ -118,27 +177,280 @@ public class ADMMReasoner implements Reasoner {
 	 * (by default uses the number of processors in the system) */
 	public static final int NUM_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
 
+	/**
+	 * Key for positive integer property. Each thread's share of the terms and
+	 * of the consensus variables is split into this many chunks of roughly
+	 * equal estimated cost. Threads that finish their own chunks take
+	 * remaining chunks from other threads. 1 disables taking chunks.
+	 */
+	public static final String CHUNKS_PER_THREAD_KEY = CONFIG_PREFIX + ".chunksperthread";
+	/** Default value for CHUNKS_PER_THREAD_KEY property */
+	public static final int CHUNKS_PER_THREAD_DEFAULT = 8;
+
+	/**
+	 * Key for String property. How the objective terms are stored, either
+	 * {@link #TERM_STORE_OBJECT}, {@link #TERM_STORE_FLAT},
+	 * {@link #TERM_STORE_FLOAT}, or {@link #TERM_STORE_MAPPED}.
+	 *
+	 * @see ObjectTermStore
+	 * @see FlatTermStore
+	 * @see FloatTermStore
+	 * @see MappedTermStore
+	 */
+	public static final String TERM_STORE_KEY = CONFIG_PREFIX + ".termstore";
+	/** Value of TERM_STORE_KEY for storing each term as an object */
+	public static final String TERM_STORE_OBJECT = "object";
+	/** Value of TERM_STORE_KEY for packing all terms into contiguous arrays */
+	public static final String TERM_STORE_FLAT = "flat";
+	/**
+	 * Value of TERM_STORE_KEY for packing all terms into contiguous arrays
+	 * with local variables in single precision
+	 */
+	public static final String TERM_STORE_FLOAT = "float";
+	/**
+	 * Value of TERM_STORE_KEY for packing all terms into memory-mapped files,
+	 * so that they need not fit in the heap
+	 */
+	public static final String TERM_STORE_MAPPED = "mapped";
+	/** Default value for TERM_STORE_KEY property */
+	public static final String TERM_STORE_DEFAULT = TERM_STORE_OBJECT;
+
+	/**
+	 * Key for String property. The directory in which the memory-mapped files
+	 * are created when {@link #TERM_STORE_KEY} is {@link #TERM_STORE_MAPPED}.
+	 * It should be on a local disk with room for 24 bytes per local variable.
+	 */
+	public static final String MAPPED_DIRECTORY_KEY = CONFIG_PREFIX + ".mappeddirectory";
+	/** Default value for MAPPED_DIRECTORY_KEY property */
+	public static final String MAPPED_DIRECTORY_DEFAULT = System.getProperty("java.io.tmpdir");
+
+	/**
+	 * Key for boolean property. If true, squared hyperplane terms with three
+	 * or more variables solve for their local variables with cached Cholesky
+	 * factorizations. If false, they use the Sherman-Morrison formula, which
+	 * takes time linear in the number of variables and needs no factorization.
+	 *
+	 * @see SquaredHyperplaneTerm
+	 */
+	public static final String CHOLESKY_KEY = CONFIG_PREFIX + ".cholesky";
+	/** Default value for CHOLESKY_KEY property */
+	public static final boolean CHOLESKY_DEFAULT = false;
+
+	/**
+	 * Key for positive integer property. The maximum number of Cholesky
+	 * factors each reasoner caches when {@link #CHOLESKY_KEY} is true.
+	 * Least recently used factors are evicted first.
+	 */
+	public static final String CHOLESKY_CACHE_SIZE_KEY = CONFIG_PREFIX + ".choleskycachesize";
+	/** Default value for CHOLESKY_CACHE_SIZE_KEY property */
+	public static final int CHOLESKY_CACHE_SIZE_DEFAULT = 1024;
+
+	/**
+	 * Key for boolean property. If true, the local variables, Lagrange
+	 * multipliers, and consensus variables are kept when ground kernels are
+	 * added, changed, or removed between calls to {@link #optimize()}, so
+	 * optimization resumes from the previous solution. If false, optimization
+	 * restarts from the current atom values after such changes.
+	 * <p>
+	 * Changes to weights only never restart optimization.
+	 */
+	public static final String WARM_START_KEY = CONFIG_PREFIX + ".warmstart";
+	/** Default value for WARM_START_KEY property */
+	public static final boolean WARM_START_DEFAULT = false;
+
+	/**
+	 * Key for boolean property. If true, ground kernels whose terms are the
+	 * same function of the same variables share a single term, weighted by
+	 * the sum of their weights. Identical constraints share a single
+	 * constraint.
+	 *
+	 * @see TermKey
+	 */
+	public static final String DEDUPLICATE_KEY = CONFIG_PREFIX + ".deduplicate";
+	/** Default value for DEDUPLICATE_KEY property */
+	public static final boolean DEDUPLICATE_DEFAULT = false;
+
+	/**
+	 * Key for boolean property. If true, the ground model is simplified
+	 * before optimization by fixing variables whose optimal values are
+	 * implied by the constraints and the signs of the terms, and by dropping
+	 * terms that cannot affect the optimum. Fixed variables are written back
+	 * to their atoms with the rest of the solution.
+	 * <p>
+	 * Since changes to ground kernels can undo these simplifications, the
+	 * ground model is rebuilt whenever ground kernels are added, changed, or
+	 * removed. Changes to weights only do not rebuild it.
+	 *
+	 * @see Presolver
+	 */
+	public static final String PRESOLVE_KEY = CONFIG_PREFIX + ".presolve";
+	/** Default value for PRESOLVE_KEY property */
+	public static final boolean PRESOLVE_DEFAULT = false;
+
+	/**
+	 * Key for boolean property. If true, the consensus variables are renumbered
+	 * and the terms reordered so that terms sharing variables are close together
+	 * whenever the ground model is built or the term store compacted.
+	 *
+	 * @see LocalityOrdering
+	 */
+	public static final String REORDER_KEY = CONFIG_PREFIX + ".reorder";
+	/** Default value for REORDER_KEY property */
+	public static final boolean REORDER_DEFAULT = false;
+
+	/**
+	 * Key for boolean property. If true, each connected component of the
+	 * ground model is optimized as an independent problem with its own
+	 * stopping criterion. Components too large for a single thread's share
+	 * of the work are optimized one at a time by all threads. The others are
+	 * spread over the threads, each solved by one thread, and do not adapt
+	 * the step size. Implies {@link #REORDER_KEY}.
+	 */
+	public static final String DECOMPOSE_KEY = CONFIG_PREFIX + ".decompose";
+	/** Default value for DECOMPOSE_KEY property */
+	public static final boolean DECOMPOSE_DEFAULT = false;
+
+	/**
+	 * Key for boolean property. If true, the threads do not synchronize
+	 * between iterations. Each repeatedly updates a fixed share of the terms
+	 * and then of the consensus variables, reading whatever values the other
+	 * threads last wrote, and only waits if it gets more than
+	 * {@link #STALENESS_KEY} iterations ahead of the slowest thread.
+	 * Optimization stops once the residuals each thread last computed
+	 * together meet the stopping criterion, or once any thread has made
+	 * {@link #MAX_ITER_KEY} iterations.
+	 * <p>
+	 * The step size is not adapted in this mode, and
+	 * {@link #RELAXATION_KEY} must be 1.
+	 */
+	public static final String ASYNCHRONOUS_KEY = CONFIG_PREFIX + ".asynchronous";
+	/** Default value for ASYNCHRONOUS_KEY property */
+	public static final boolean ASYNCHRONOUS_DEFAULT = false;
+
+	/**
+	 * Key for non-negative integer property. The number of iterations a thread
+	 * may get ahead of the slowest thread when {@link #ASYNCHRONOUS_KEY} is
+	 * true. Larger values let threads wait less, but each iteration then
+	 * works with older values from the other threads, so more iterations
+	 * may be needed.
+	 */
+	public static final String STALENESS_KEY = CONFIG_PREFIX + ".staleness";
+	/** Default value for STALENESS_KEY property */
+	public static final int STALENESS_DEFAULT = 1;
+
+	/**
+	 * Key for String property. If not empty, the directory in which the state
+	 * of the optimization is checkpointed every
+	 * {@link #CHECKPOINT_INTERVAL_KEY} iterations. When the ground model is
+	 * first built, optimization resumes from the checkpoint there if it is of
+	 * the same ground model.
+	 * <p>
+	 * Reasoners that run at the same time must use different directories.
+	 * Checkpointing requires {@link #DECOMPOSE_KEY} and
+	 * {@link #ASYNCHRONOUS_KEY} to be false.
+	 *
+	 * @see Checkpointer
+	 */
+	public static final String CHECKPOINT_DIRECTORY_KEY = CONFIG_PREFIX + ".checkpointdirectory";
+	/** Default value for CHECKPOINT_DIRECTORY_KEY property (no checkpoints) */
+	public static final String CHECKPOINT_DIRECTORY_DEFAULT = "";
+
+	/**
+	 * Key for positive integer property. The number of iterations between
+	 * checkpoints when {@link #CHECKPOINT_DIRECTORY_KEY} is set.
+	 */
+	public static final String CHECKPOINT_INTERVAL_KEY = CONFIG_PREFIX + ".checkpointinterval";
+	/** Default value for CHECKPOINT_INTERVAL_KEY property */
+	public static final int CHECKPOINT_INTERVAL_DEFAULT = 1000;
+
+	/** Name of the checkpoint file in {@link #CHECKPOINT_DIRECTORY_KEY} */
+	public static final String CHECKPOINT_FILE = "admm.checkpoint";
+
+	/**
+	 * Key for String property. If not empty, a comma-separated list of the
+	 * host:port of {@link ADMMWorker ADMMWorkers} in other processes, among
+	 * which the terms are split for optimization instead of among threads.
+	 * Only the consensus variables used by the terms of several workers are
+	 * exchanged every iteration.
+	 * <p>
+	 * Workers require {@link #TERM_STORE_KEY} not to be
+	 * {@link #TERM_STORE_OBJECT}, {@link #RELAXATION_KEY} to be 1, and
+	 * {@link #DECOMPOSE_KEY}, {@link #ASYNCHRONOUS_KEY}, and
+	 * {@link #CHECKPOINT_DIRECTORY_KEY} to be unset.
+	 */
+	public static final String WORKERS_KEY = CONFIG_PREFIX + ".workers";
+	/** Default value for WORKERS_KEY property (optimize in this process) */
+	public static final String WORKERS_DEFAULT = "";
+
+	/** Fewest ground kernels per chunk when creating terms in parallel */
+	private static final int MIN_KERNELS_PER_CHUNK = 1024;
+	/** Most term objects created before they are added to the term store */
+	private static final int TERM_BATCH_SIZE = 1 << 18;
+
 	private int maxIter;
 	/* Sometimes called rho or eta */
-	public final double stepSize;
+	protected double stepSize;
+	private final double initialStepSize;
+	private final boolean adaptiveStepSize;
+	private final double stepSizeBalance, stepSizeScale;
+	private final int stepSizeAdaptations;
+	final double relaxation;
 
 	private double epsilonRel, epsilonAbs;
 	private final int stopCheck;
-	private int n;
+	private final String termStoreType;
+	private final File mappedDirectory;
+	final boolean cholesky;
+	/* Null unless cholesky is true */
+	final CholeskyCache choleskyCache;
+	private boolean warmStart;
+	private final boolean deduplicate;
+	private final boolean presolve;
+	private final boolean reorder;
+	private final boolean decompose;
+	private final boolean asynchronous;
+	private final int staleness;
+	private final Checkpointer checkpointer;
+	private final int checkpointInterval;
+	/** Whether a checkpoint was looked for since the reasoner was created */
+	private boolean checkpointResumed;
+	/** Iteration at which the next optimization resumes */
+	private int resumedIteration;
+	/* Null unless optimizing on workers */
+	private final List<InetSocketAddress> workers;
+	private ConsensusTransport transport;
 	private boolean rebuildModel;
+	/** Whether term weights changed since the checkpointer indexed the terms */
+	private boolean weightsChanged;
 	private double lagrangePenalty, augmentedLagrangePenalty;
+	private final Set<ADMMEvent.Listener> listeners;
+	private ThreadPool threadPool;
 
 	/** Ground kernels defining the objective function */
 	protected SetValuedMap<Rule, GroundRule> groundKernels;
 
+	/**
+	 * Ground kernels added or changed since the model was last built or updated,
+	 * in the order they were added. Their terms are created by the next
+	 * {@link #updateGroundModel()}.
+	 */
+	protected Set<GroundRule> addedGroundKernels;
+
 	/**
 	 * Ordered list of GroundKernels for looking up indices in terms.
 	 * The integer value corresponds to the index into terms.
 	 */
 	protected Map<GroundRule, Integer> orderedGroundKernels;
 
+	/**
+	 * Terms shared by ground kernels, by canonical form, and the shared term
+	 * of each ground kernel. Null unless deduplicating.
+	 */
+	private Map<TermKey, SharedTerm> sharedTerms;
+	private Map<GroundRule, SharedTerm> groundKernelTerms;
+
 	/** Ground kernels wrapped to be objective function terms for ADMM */
-	protected List<ADMMObjectiveTerm> terms;
+	protected ADMMTermStore termStore;
 
 	/**
 	 * Collection of variables and their associated indices for looking up indices in z.
@@ -147,20 +459,46 @@ public class ADMMReasoner implements Reasoner {
 	protected BidiMap<Integer, AtomFunctionVariable> variables;
 
 	/** Consensus vector */
-	protected List<Double> z;
+	protected double[] z;
+	/**
+	 * Consensus vector before the last consensus step, which the relaxed
+	 * Lagrange update uses. Null unless relaxing.
+	 */
+	protected double[] previousZ;
 	/** Lower bounds on variables */
-	protected List<Double> lb;
+	protected double[] lb;
 	/** Upper bounds on variables */
-	protected List<Double> ub;
-	/** Lists of local variable locations for updating consensus variables */
-	protected List<List<VariableLocation>> varLocations;
+	protected double[] ub;
+	/** Number of consensus variables, i.e., the used prefix of z, lb, and ub */
+	protected int numConsensusVariables;
+
+	/**
+	 * First term and first consensus variable of each connected component,
+	 * with one extra entry for the end. Null unless decomposing.
+	 */
+	protected int[] componentTermStarts, componentVariableStarts;
 
 	/* Multithreading variables */
 	private final int numThreads;
+	private final int chunksPerThread;
 
 	public ADMMReasoner(ConfigBundle config) {
 		maxIter = config.getInt(MAX_ITER_KEY, MAX_ITER_DEFAULT);
-		stepSize = config.getDouble(STEP_SIZE_KEY, STEP_SIZE_DEFAULT);
+		initialStepSize = config.getDouble(STEP_SIZE_KEY, STEP_SIZE_DEFAULT);
+		stepSize = initialStepSize;
+		adaptiveStepSize = config.getBoolean(ADAPTIVE_STEP_SIZE_KEY, ADAPTIVE_STEP_SIZE_DEFAULT);
+		stepSizeBalance = config.getDouble(STEP_SIZE_BALANCE_KEY, STEP_SIZE_BALANCE_DEFAULT);
+		if (stepSizeBalance <= 1)
+			throw new IllegalArgumentException("Property " + STEP_SIZE_BALANCE_KEY + " must be greater than 1.");
+		stepSizeScale = config.getDouble(STEP_SIZE_SCALE_KEY, STEP_SIZE_SCALE_DEFAULT);
+		if (stepSizeScale <= 1)
+			throw new IllegalArgumentException("Property " + STEP_SIZE_SCALE_KEY + " must be greater than 1.");
+		stepSizeAdaptations = config.getInt(STEP_SIZE_ADAPTATIONS_KEY, STEP_SIZE_ADAPTATIONS_DEFAULT);
+		if (stepSizeAdaptations < 0)
+			throw new IllegalArgumentException("Property " + STEP_SIZE_ADAPTATIONS_KEY + " must be non-negative.");
+		relaxation = config.getDouble(RELAXATION_KEY, RELAXATION_DEFAULT);
+		if (relaxation <= 0 || relaxation >= 2)
+			throw new IllegalArgumentException("Property " + RELAXATION_KEY + " must be in (0, 2).");
 		epsilonAbs = config.getDouble(EPSILON_ABS_KEY, EPSILON_ABS_DEFAULT);
 		if (epsilonAbs <= 0)
 			throw new IllegalArgumentException("Property " + EPSILON_ABS_KEY + " must be positive.");
@@ -169,14 +507,96 @@ public class ADMMReasoner implements Reasoner {
 			throw new IllegalArgumentException("Property " + EPSILON_REL_KEY + " must be positive.");
 		stopCheck = config.getInt(STOP_CHECK_KEY, STOP_CHECK_DEFAULT);
 
+		termStoreType = config.getString(TERM_STORE_KEY, TERM_STORE_DEFAULT);
+		if (!termStoreType.equals(TERM_STORE_OBJECT) && !termStoreType.equals(TERM_STORE_FLAT)
+				&& !termStoreType.equals(TERM_STORE_FLOAT) && !termStoreType.equals(TERM_STORE_MAPPED))
+			throw new IllegalArgumentException("Property " + TERM_STORE_KEY + " must be "
+					+ TERM_STORE_OBJECT + ", " + TERM_STORE_FLAT + ", " + TERM_STORE_FLOAT + ", or "
+					+ TERM_STORE_MAPPED + ".");
+		mappedDirectory = new File(config.getString(MAPPED_DIRECTORY_KEY, MAPPED_DIRECTORY_DEFAULT));
+		if (termStoreType.equals(TERM_STORE_MAPPED) && !mappedDirectory.isDirectory())
+			throw new IllegalArgumentException("Property " + MAPPED_DIRECTORY_KEY + " must be a directory.");
+		cholesky = config.getBoolean(CHOLESKY_KEY, CHOLESKY_DEFAULT);
+		if (cholesky) {
+			int cacheSize = config.getInt(CHOLESKY_CACHE_SIZE_KEY, CHOLESKY_CACHE_SIZE_DEFAULT);
+			if (cacheSize <= 0)
+				throw new IllegalArgumentException("Property " + CHOLESKY_CACHE_SIZE_KEY + " must be positive.");
+			choleskyCache = new CholeskyCache(cacheSize);
+		}
+		else
+			choleskyCache = null;
+
+		warmStart = config.getBoolean(WARM_START_KEY, WARM_START_DEFAULT);
+		deduplicate = config.getBoolean(DEDUPLICATE_KEY, DEDUPLICATE_DEFAULT);
+		presolve = config.getBoolean(PRESOLVE_KEY, PRESOLVE_DEFAULT);
+		decompose = config.getBoolean(DECOMPOSE_KEY, DECOMPOSE_DEFAULT);
+		reorder = config.getBoolean(REORDER_KEY, REORDER_DEFAULT) || decompose;
+		asynchronous = config.getBoolean(ASYNCHRONOUS_KEY, ASYNCHRONOUS_DEFAULT);
+		/* The relaxed Lagrange update needs both z and previousZ of the same step */
+		if (asynchronous && relaxation != 1.0)
+			throw new IllegalArgumentException("Property " + RELAXATION_KEY + " must be 1 if "
+					+ ASYNCHRONOUS_KEY + " is true.");
+		staleness = config.getInt(STALENESS_KEY, STALENESS_DEFAULT);
+		if (staleness < 0)
+			throw new IllegalArgumentException("Property " + STALENESS_KEY + " must be non-negative.");
+		String checkpointDirectory = config.getString(CHECKPOINT_DIRECTORY_KEY, CHECKPOINT_DIRECTORY_DEFAULT);
+		checkpointInterval = config.getInt(CHECKPOINT_INTERVAL_KEY, CHECKPOINT_INTERVAL_DEFAULT);
+		if (checkpointInterval <= 0)
+			throw new IllegalArgumentException("Property " + CHECKPOINT_INTERVAL_KEY + " must be positive.");
+		if (checkpointDirectory.isEmpty())
+			checkpointer = null;
+		else {
+			if (!new File(checkpointDirectory).isDirectory())
+				throw new IllegalArgumentException("Property " + CHECKPOINT_DIRECTORY_KEY + " must be a directory.");
+			/* Only the synchronous iterations stop all threads at a barrier */
+			if (decompose || asynchronous)
+				throw new IllegalArgumentException("Property " + CHECKPOINT_DIRECTORY_KEY + " must be empty if "
+						+ DECOMPOSE_KEY + " or " + ASYNCHRONOUS_KEY + " is true.");
+			checkpointer = new Checkpointer(this, new File(checkpointDirectory, CHECKPOINT_FILE));
+		}
+		checkpointResumed = false;
+		resumedIteration = 0;
+		String workerList = config.getString(WORKERS_KEY, WORKERS_DEFAULT).trim();
+		if (workerList.isEmpty())
+			workers = null;
+		else {
+			if (termStoreType.equals(TERM_STORE_OBJECT))
+				throw new IllegalArgumentException("Property " + TERM_STORE_KEY + " must not be "
+						+ TERM_STORE_OBJECT + " if " + WORKERS_KEY + " is set.");
+			/* Workers only exchange the totals of the unrelaxed copies */
+			if (relaxation != 1.0)
+				throw new IllegalArgumentException("Property " + RELAXATION_KEY + " must be 1 if "
+						+ WORKERS_KEY + " is set.");
+			if (decompose || asynchronous || checkpointer != null)
+				throw new IllegalArgumentException("Property " + WORKERS_KEY + " must be empty if "
+						+ DECOMPOSE_KEY + " or " + ASYNCHRONOUS_KEY + " is true or "
+						+ CHECKPOINT_DIRECTORY_KEY + " is set.");
+			workers = TcpConsensusTransport.parseAddresses(workerList);
+		}
+		transport = null;
+		listeners = new CopyOnWriteArraySet<ADMMEvent.Listener>();
+		threadPool = ThreadPool.getPool(config);
 		rebuildModel = true;
+		weightsChanged = false;
 
 		groundKernels = new HashSetValuedHashMap<Rule, GroundRule>();
+		addedGroundKernels = new LinkedHashSet<GroundRule>();
 
 		// Multithreading
 		numThreads = config.getInt(NUM_THREADS_KEY, NUM_THREADS_DEFAULT);
 		if (numThreads <= 0)
 			throw new IllegalArgumentException("Property " + NUM_THREADS_KEY + " must be positive.");
+		chunksPerThread = config.getInt(CHUNKS_PER_THREAD_KEY, CHUNKS_PER_THREAD_DEFAULT);
+		if (chunksPerThread <= 0)
+			throw new IllegalArgumentException("Property " + CHUNKS_PER_THREAD_KEY + " must be positive.");
+	}
+
+	/**
+	 * @return the current step size, which changes during optimization if
+	 *         it is adaptive
+	 */
+	public double getStepSize() {
+		return stepSize;
 	}
 
 	public int getMaxIter() {
@@ -203,6 +623,14 @@ public class ADMMReasoner implements Reasoner {
 		this.epsilonAbs = epsilonAbs;
 	}
 
+	public boolean isWarmStart() {
+		return warmStart;
+	}
+
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+
 	public double getLagrangianPenalty() {
 		return this.lagrangePenalty;
 	}
@@ -213,36 +641,161 @@ public class ADMMReasoner implements Reasoner {
 
 	@Override
 	public void addGroundRule(GroundRule gk) {
-		groundKernels.put(gk.getRule(), gk);
-		rebuildModel = true;
+		if (groundKernels.put(gk.getRule(), gk) && !rebuildModel) {
+			if (presolve)
+				rebuildModel = true;
+			else
+				addedGroundKernels.add(gk);
+		}
 	}
 
 	@Override
 	public void changedGroundRule(GroundRule gk) {
-		rebuildModel = true;
+		if (presolve)
+			rebuildModel = true;
+		else if (!rebuildModel) {
+			removeTerm(gk);
+			if (containsGroundKernel(gk))
+				addedGroundKernels.add(gk);
+		}
 	}
 
 	@Override
 	public void changedGroundKernelWeight(WeightedGroundRule gk) {
 		if (!rebuildModel) {
-			int index = orderedGroundKernels.get(gk);
-			if (index != -1) {
-				((WeightedObjectiveTerm) terms.get(index)).setWeight(gk.getWeight().getWeight());
+			Integer index = orderedGroundKernels.get(gk);
+			if (index != null) {
+				weightsChanged = true;
+				SharedTerm shared = (deduplicate) ? groundKernelTerms.get(gk) : null;
+				if (shared != null)
+					updateSharedWeight(shared);
+				else
+					termStore.setWeight(index, gk.getWeight().getWeight());
 			}
 		}
 	}
 
 	@Override
 	public void changedGroundKernelWeights() {
-		if (!rebuildModel)
-			for (WeightedGroundRule gk : getCompatibilityKernels())
-				changedGroundKernelWeight(gk);
+		if (rebuildModel)
+			return;
+		weightsChanged = true;
+
+		/* Updates each shared term once, rather than once per ground kernel */
+		if (deduplicate)
+			for (SharedTerm shared : sharedTerms.values())
+				if (!shared.key.isConstraint())
+					updateSharedWeight(shared);
+
+		for (WeightedGroundRule gk : getCompatibilityKernels()) {
+			Integer index = orderedGroundKernels.get(gk);
+			if (index != null && (!deduplicate || !groundKernelTerms.containsKey(gk)))
+				termStore.setWeight(index, gk.getWeight().getWeight());
+		}
 	}
 
 	@Override
 	public void removeGroundKernel(GroundRule gk) {
-		groundKernels.removeMapping(gk.getRule(), gk);
-		rebuildModel = true;
+		if (groundKernels.removeMapping(gk.getRule(), gk) && !rebuildModel) {
+			if (presolve)
+				rebuildModel = true;
+			else if (!addedGroundKernels.remove(gk))
+				removeTerm(gk);
+		}
+	}
+
+	/**
+	 * Tombstones the term of a ground kernel, if it has one and does not share
+	 * it with other ground kernels.
+	 */
+	private void removeTerm(GroundRule gk) {
+		Integer index = orderedGroundKernels.remove(gk);
+		if (index == null)
+			return;
+
+		SharedTerm shared = (deduplicate) ? groundKernelTerms.remove(gk) : null;
+		if (shared != null) {
+			shared.groundKernels.remove(gk);
+			if (!shared.groundKernels.isEmpty()) {
+				if (!shared.key.isConstraint())
+					updateSharedWeight(shared);
+				return;
+			}
+			sharedTerms.remove(shared.key);
+		}
+		termStore.remove(index);
+	}
+
+	/**
+	 * Adds the term of a ground kernel to the term store or, when
+	 * deduplicating, shares an identical term already there.
+	 *
+	 * @return whether a term was added to the term store
+	 */
+	private boolean addTerm(GroundRule groundKernel, ADMMObjectiveTerm term) {
+		if (term.x.length == 0)
+			return false;
+
+		TermKey key = (deduplicate) ? TermKey.of(term) : null;
+		if (key == null) {
+			orderedGroundKernels.put(groundKernel, termStore.add(term));
+			return true;
+		}
+
+		boolean added = false;
+		SharedTerm shared = sharedTerms.get(key);
+		if (shared == null) {
+			shared = new SharedTerm(key, termStore.add(term));
+			sharedTerms.put(key, shared);
+			added = true;
+		}
+		shared.groundKernels.add(groundKernel);
+		groundKernelTerms.put(groundKernel, shared);
+		orderedGroundKernels.put(groundKernel, shared.index);
+
+		if (!added && !key.isConstraint())
+			updateSharedWeight(shared);
+		return added;
+	}
+
+	/**
+	 * Sets the weight of a shared term to the total weight of its ground kernels.
+	 */
+	private void updateSharedWeight(SharedTerm shared) {
+		double weight = 0.0;
+		for (GroundRule gk : shared.groundKernels)
+			weight += ((WeightedGroundRule) gk).getWeight().getWeight();
+		termStore.setWeight(shared.index, weight);
+	}
+
+	/**
+	 * Updates the term indices of the ground kernels after the term store
+	 * was compacted or permuted.
+	 *
+	 * @param termMap  the new index of each term
+	 */
+	private void remapTerms(int[] termMap) {
+		for (Map.Entry<GroundRule, Integer> entry : orderedGroundKernels.entrySet())
+			entry.setValue(termMap[entry.getValue()]);
+		if (deduplicate)
+			for (SharedTerm shared : sharedTerms.values())
+				shared.index = termMap[shared.index];
+	}
+
+	/**
+	 * A term shared by the ground kernels whose terms have the same
+	 * canonical form.
+	 */
+	private static class SharedTerm {
+		private TermKey key;
+		private int index;
+		private final List<GroundRule> groundKernels;
+
+		public SharedTerm(TermKey key, int index) {
+			this.key = key;
+			this.index = index;
+			groundKernels = new ArrayList<GroundRule>(2);
+		}
 	}
 
 	@Override
@@ -255,31 +808,280 @@ public class ADMMReasoner implements Reasoner {
 
 		/* Initializes data structures */
 		orderedGroundKernels = new HashMap<GroundRule, Integer>(groundKernels.size());
-		terms = new ArrayList<ADMMObjectiveTerm>(groundKernels.size());
+		if (deduplicate) {
+			sharedTerms = new HashMap<TermKey, SharedTerm>(groundKernels.size());
+			groundKernelTerms = new HashMap<GroundRule, SharedTerm>(groundKernels.size());
+		}
 
 		variables = new DualHashBidiMap<Integer, AtomFunctionVariable>();
 
-		z = new ArrayList<Double>(groundKernels.size() * 2);
-		lb = new ArrayList<Double>(groundKernels.size() * 2);
-		ub = new ArrayList<Double>(groundKernels.size() * 2);
-		varLocations = new ArrayList<List<VariableLocation>>(groundKernels.size() * 2);
-		n = 0;
+		z = new double[Math.max(groundKernels.size() * 2, 1)];
+		lb = new double[z.length];
+		ub = new double[z.length];
+		numConsensusVariables = 0;
+		stepSize = initialStepSize;
+
+		termStore = createTermStore(groundKernels.size());
 
 		/* Initializes objective terms from ground kernels */
 		log.debug("Initializing objective terms for {} ground kernels", groundKernels.size());
-		for (GroundRule groundKernel : groundKernels.values()) {
-			ADMMObjectiveTerm term = createTerm(groundKernel);
-
-			if (term.x.length > 0) {
-				registerLocalVariableCopies(term);
-				orderedGroundKernels.put(groundKernel, orderedGroundKernels.size());
-				terms.add(term);
+		GroundRule[] kernels = groundKernels.values().toArray(new GroundRule[groundKernels.size()]);
+		if (presolve) {
+			ADMMObjectiveTerm[] terms = createTerms(kernels, 0, kernels.length);
+			new Presolver(this).presolve(terms);
+			for (int i = 0; i < kernels.length; i++)
+				if (terms[i] != null)
+					addTerm(kernels[i], terms[i]);
+		}
+		else {
+			for (int start = 0; start < kernels.length; start += TERM_BATCH_SIZE) {
+				ADMMObjectiveTerm[] terms = createTerms(kernels, start, Math.min(start + TERM_BATCH_SIZE, kernels.length));
+				for (int i = 0; i < terms.length; i++)
+					addTerm(kernels[start + i], terms[i]);
 			}
 		}
+		if (deduplicate)
+			log.debug("Merged {} ground kernels into {} terms", orderedGroundKernels.size(), termStore.size());
 
+		termStore.indexLocalVariables(numConsensusVariables);
+		if (reorder)
+			reorderGroundModel();
+
+		addedGroundKernels.clear();
 		rebuildModel = false;
 	}
 
+	/**
+	 * Brings the reasoner data structures up to date with the ground kernels
+	 * added, changed, and removed since they were last built or updated,
+	 * without rebuilding the unaffected terms.
+	 * <p>
+	 * Terms of removed ground kernels were already removed from the term store.
+	 * This method creates and appends the terms of new ground kernels and
+	 * compacts the term store if enough terms have been removed. When
+	 * decomposing, the store is also compacted and reordered whenever terms
+	 * are added, so that each component stays contiguous. Unless warm
+	 * starting, optimization then restarts from the current atom values, as
+	 * it would after a rebuild.
+	 *
+	 * @see #WARM_START_KEY
+	 */
+	protected void updateGroundModel() {
+		log.debug("Updating reasoner data structures with {} new ground kernels", addedGroundKernels.size());
+
+		if (!warmStart) {
+			for (int i = 0; i < numConsensusVariables; i++)
+				z[i] = variables.get(i).getValue();
+			termStore.resetLocalVariables(z);
+			stepSize = initialStepSize;
+		}
+
+		boolean added = false;
+		GroundRule[] kernels = addedGroundKernels.toArray(new GroundRule[addedGroundKernels.size()]);
+		ADMMObjectiveTerm[] terms = createTerms(kernels, 0, kernels.length);
+		for (int i = 0; i < kernels.length; i++)
+			if (addTerm(kernels[i], terms[i]))
+				added = true;
+		addedGroundKernels.clear();
+
+		if (termStore.needsCompaction() || (decompose && added)) {
+			log.debug("Compacting term store");
+			remapTerms(termStore.compact(numConsensusVariables));
+
+			if (reorder)
+				reorderGroundModel();
+		}
+	}
+
+	/**
+	 * Renumbers the consensus variables and reorders the terms so that terms
+	 * sharing variables are close together and each connected component is
+	 * contiguous. The term store must not contain removed terms.
+	 *
+	 * @see LocalityOrdering
+	 */
+	protected void reorderGroundModel() {
+		log.debug("Reordering {} terms and {} variables", termStore.size(), numConsensusVariables);
+
+		LocalityOrdering ordering = new LocalityOrdering(termStore, numConsensusVariables);
+		int[] termOrder = ordering.getTermOrder();
+		int[] variableMap = ordering.getVariableMap();
+		termStore.permute(termOrder, variableMap);
+
+		double[] oldZ = z;
+		double[] oldLb = lb;
+		double[] oldUb = ub;
+		BidiMap<Integer, AtomFunctionVariable> oldVariables = variables;
+		z = new double[oldZ.length];
+		lb = new double[oldLb.length];
+		ub = new double[oldUb.length];
+		variables = new DualHashBidiMap<Integer, AtomFunctionVariable>();
+		for (int i = 0; i < numConsensusVariables; i++) {
+			z[variableMap[i]] = oldZ[i];
+			lb[variableMap[i]] = oldLb[i];
+			ub[variableMap[i]] = oldUb[i];
+			variables.put(variableMap[i], oldVariables.get(i));
+		}
+
+		int[] termMap = new int[termOrder.length];
+		for (int i = 0; i < termOrder.length; i++)
+			termMap[termOrder[i]] = i;
+		remapTerms(termMap);
+
+		/* Keys are of the consensus variables, so terms added later can still share */
+		if (deduplicate) {
+			Map<TermKey, SharedTerm> oldSharedTerms = sharedTerms;
+			sharedTerms = new HashMap<TermKey, SharedTerm>(oldSharedTerms.size());
+			for (SharedTerm shared : oldSharedTerms.values()) {
+				shared.key = shared.key.remap(variableMap);
+				sharedTerms.put(shared.key, shared);
+			}
+		}
+
+		if (decompose) {
+			componentTermStarts = ordering.getComponentTermStarts();
+			componentVariableStarts = ordering.getComponentVariableStarts();
+			log.debug("Found {} connected components", ordering.getNumComponents());
+		}
+	}
+
+	/**
+	 * Creates the store that will hold the objective terms, as configured by
+	 * {@link #TERM_STORE_KEY}.
+	 *
+	 * @param numGroundKernels  the number of ground kernels to be added
+	 * @return an empty ADMMTermStore
+	 */
+	protected ADMMTermStore createTermStore(int numGroundKernels) {
+		if (termStoreType.equals(TERM_STORE_FLAT))
+			return new FlatTermStore(this, numGroundKernels, numGroundKernels * 2);
+		else if (termStoreType.equals(TERM_STORE_FLOAT))
+			return new FloatTermStore(this, numGroundKernels, numGroundKernels * 2);
+		else if (termStoreType.equals(TERM_STORE_MAPPED))
+			return new MappedTermStore(this, mappedDirectory, numGroundKernels, numGroundKernels * 2);
+		else
+			return new ObjectTermStore(numGroundKernels, numGroundKernels * 2);
+	}
+
+	/**
+	 * Creates the terms of ground kernels start (inclusive) to end (exclusive),
+	 * in parallel chunks if there are several threads and enough ground
+	 * kernels.
+	 * <p>
+	 * The model is the same as if the terms were created one at a time in
+	 * order: the new atoms of each chunk are first collected in parallel and
+	 * then given consensus variables in the order in which the ground kernels
+	 * use them. The terms are then created in parallel, only reading the
+	 * variables.
+	 */
+	private ADMMObjectiveTerm[] createTerms(final GroundRule[] kernels, final int start, int end) {
+		final ADMMObjectiveTerm[] terms = new ADMMObjectiveTerm[end - start];
+		int numChunks = (int) Math.min((long) numThreads * chunksPerThread,
+				(terms.length + MIN_KERNELS_PER_CHUNK - 1) / MIN_KERNELS_PER_CHUNK);
+		if (numThreads == 1 || numChunks <= 1) {
+			for (int i = 0; i < terms.length; i++)
+				terms[i] = createTerm(kernels[start + i]);
+			return terms;
+		}
+
+		final int[] bounds = new int[numChunks + 1];
+		for (int chunk = 0; chunk <= numChunks; chunk++)
+			bounds[chunk] = start + (int) ((long) terms.length * chunk / numChunks);
+
+		final List<List<AtomFunctionVariable>> newVariables = new ArrayList<List<AtomFunctionVariable>>(numChunks);
+		for (int chunk = 0; chunk < numChunks; chunk++)
+			newVariables.add(null);
+		runChunks(numChunks, new ChunkTask() {
+			@Override
+			public void run(int chunk) {
+				Set<AtomFunctionVariable> chunkVariables = new LinkedHashSet<AtomFunctionVariable>();
+				for (int i = bounds[chunk]; i < bounds[chunk + 1]; i++) {
+					if (kernels[i] instanceof WeightedGroundRule)
+						collectVariables(((WeightedGroundRule) kernels[i]).getFunctionDefinition(), chunkVariables);
+					else if (kernels[i] instanceof UnweightedGroundRule)
+						collectVariables(((UnweightedGroundRule) kernels[i]).getConstraintDefinition().getFunction(),
+								chunkVariables);
+				}
+				newVariables.set(chunk, new ArrayList<AtomFunctionVariable>(chunkVariables));
+			}
+		});
+
+		for (List<AtomFunctionVariable> chunkVariables : newVariables) {
+			for (AtomFunctionVariable variable : chunkVariables) {
+				if (!variables.containsValue(variable)) {
+					variables.put(variables.size(), variable);
+					addConsensusVariable(variable.getValue(), 0.0, 1.0);
+				}
+			}
+		}
+
+		runChunks(numChunks, new ChunkTask() {
+			@Override
+			public void run(int chunk) {
+				for (int i = bounds[chunk]; i < bounds[chunk + 1]; i++)
+					terms[i - start] = createTerm(kernels[i]);
+			}
+		});
+		return terms;
+	}
+
+	/**
+	 * Adds the atoms in a function that do not have consensus variables, in
+	 * the order in which {@link #processHyperplane(FunctionSum)} meets them.
+	 */
+	private void collectVariables(FunctionTerm function, Set<AtomFunctionVariable> newVariables) {
+		if (function instanceof PowerOfTwo)
+			collectVariables(((PowerOfTwo) function).getInnerFunction(), newVariables);
+		else if (function instanceof MaxFunction) {
+			for (int i = 0; i < ((MaxFunction) function).size(); i++)
+				collectVariables(((MaxFunction) function).get(i), newVariables);
+		}
+		else if (function instanceof FunctionSum) {
+			for (FunctionSummand summand : (FunctionSum) function) {
+				FunctionSingleton singleton = summand.getTerm();
+				if (singleton instanceof AtomFunctionVariable && !singleton.isConstant()
+						&& !variables.containsValue(singleton))
+					newVariables.add((AtomFunctionVariable) singleton);
+			}
+		}
+	}
+
+	/** Work on one chunk of a phase split among the threads */
+	private interface ChunkTask {
+		public void run(int chunk);
+	}
+
+	/**
+	 * Runs a task on chunks 0 (inclusive) to numChunks (exclusive), which the
+	 * threads take in order, and waits until all are done.
+	 */
+	private void runChunks(final int numChunks, final ChunkTask task) {
+		final AtomicInteger next = new AtomicInteger(0);
+		Future<?>[] futures = new Future<?>[Math.min(numThreads, numChunks)];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = threadPool.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int chunk = next.getAndIncrement(); chunk < numChunks; chunk = next.getAndIncrement())
+						task.run(chunk);
+				}
+			});
+		}
+
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				/* Rethrows errors in ground kernels as the serial path would */
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	/**
 	 * Processes a {@link GroundRule} to create a corresponding
 	 * {@link ADMMObjectiveTerm}
@@ -375,16 +1177,18 @@ public class ADMMReasoner implements Reasoner {
 
 	/**
 	 * Computes the incompatibility of the local variable copies corresponding to
-	 * GroundKernel gk
+	 * GroundKernel gk, or its incompatibility at the current atom values if
+	 * presolve dropped its term
 	 * @param gk
 	 * @return local (dual) incompatibility
 	 */
 	public double getDualIncompatibility(GroundRule gk) {
-		int index = orderedGroundKernels.get(gk);
-		ADMMObjectiveTerm term = terms.get(index);
-		for (int i = 0; i < term.zIndices.length; i++) {
-			int zIndex = term.zIndices[i];
-			variables.get(zIndex).setValue(term.x[i]);
+		Integer index = orderedGroundKernels.get(gk);
+		if (index == null)
+			return ((WeightedGroundRule) gk).getIncompatibility();
+		for (int i = termStore.getTermStart(index); i < termStore.getTermEnd(index); i++) {
+			int zIndex = termStore.getZIndex(i);
+			variables.get(zIndex).setValue(termStore.getX(i));
 		}
 		return ((WeightedGroundRule) gk).getIncompatibility();
 	}
@@ -394,34 +1198,160 @@ public class ADMMReasoner implements Reasoner {
 			throw new IllegalStateException("Consensus variables have not been initialized. "
 					+ "Must call optimize() first.");
 		}
-		return z.get(index);
+		return z[index];
 	}
 
-	private class ADMMTask implements Runnable {
-		public boolean flag;
-		private final int termStart, termEnd;
-		private final int zStart, zEnd;
-		private final CyclicBarrier workerBarrier, checkBarrier;
-		private final Semaphore notification;
+	public int getNumConsensusVariables() {
+		return numConsensusVariables;
+	}
 
-		public ADMMTask(int index, CyclicBarrier wBarrier, CyclicBarrier cBarrier, Semaphore notification) {
-			this.workerBarrier = wBarrier;
-			this.checkBarrier = cBarrier;
-			this.notification = notification;
-			this.flag = true;
+	public double getLowerBound(int index) {
+		return lb[index];
+	}
+
+	public void setLowerBound(int index, double value) {
+		lb[index] = value;
+	}
+
+	public double getUpperBound(int index) {
+		return ub[index];
+	}
+
+	public void setUpperBound(int index, double value) {
+		ub[index] = value;
+	}
+
+	/**
+	 * Appends a consensus variable, growing the backing arrays as needed.
+	 *
+	 * @return the index of the new variable in z
+	 */
+	protected int addConsensusVariable(double value, double lowerBound, double upperBound) {
+		if (numConsensusVariables == z.length) {
+			int capacity = z.length * 2;
+			z = Arrays.copyOf(z, capacity);
+			lb = Arrays.copyOf(lb, capacity);
+			ub = Arrays.copyOf(ub, capacity);
+		}
+
+		z[numConsensusVariables] = value;
+		lb[numConsensusVariables] = lowerBound;
+		ub[numConsensusVariables] = upperBound;
+		return numConsensusVariables++;
+	}
 
+	/**
+	 * Estimates the cost of processing each element of a phase of an ADMM
+	 * iteration.
+	 */
+	abstract class CostModel {
+		abstract int cost(int i);
+	}
 
-			// Determine the section of the terms this thread will look at
-			int tIncrement = (int)(Math.ceil((double)terms.size() / (double)numThreads));
-			this.termStart = tIncrement * index;
-			this.termEnd = Math.min(termStart + tIncrement, terms.size());
+	/** Cost of the local step of a term, its number of local variables plus one */
+	class TermCost extends CostModel {
+		@Override
+		int cost(int i) {
+			if (termStore.isRemoved(i))
+				return 1;
+			return termStore.getTermEnd(i) - termStore.getTermStart(i) + 1;
+		}
+	}
 
-			// Determine the section of the z vector this thread will look at
-			int zIncrement = (int)(Math.ceil((double)z.size() / (double)numThreads));
-			this.zStart = zIncrement * index;
-			this.zEnd = Math.min(zStart + zIncrement, z.size());
+	/** Cost of the consensus step of a variable, its number of local copies plus one */
+	class ConsensusCost extends CostModel {
+		@Override
+		int cost(int i) {
+			return termStore.getConsensusEnd(i) - termStore.getConsensusStart(i) + 1;
 		}
+	}
 
+	/**
+	 * Splits the elements start (inclusive) to end (exclusive) of a phase into
+	 * contiguous chunks of roughly equal cost.
+	 *
+	 * @return the numChunks + 1 chunk boundaries
+	 */
+	static int[] partition(CostModel costs, int start, int end, int numChunks) {
+		long totalCost = 0;
+		for (int i = start; i < end; i++)
+			totalCost += costs.cost(i);
+
+		int[] bounds = new int[numChunks + 1];
+		bounds[0] = start;
+		int chunk = 1;
+		long cost = 0;
+		for (int i = start; i < end && chunk < numChunks; i++) {
+			cost += costs.cost(i);
+			while (chunk < numChunks && cost * numChunks >= totalCost * chunk)
+				bounds[chunk++] = i + 1;
+		}
+		while (chunk <= numChunks)
+			bounds[chunk++] = end;
+
+		return bounds;
+	}
+
+	/**
+	 * Chunks of a phase of an ADMM iteration. Each thread owns a contiguous
+	 * range of chunks and, once it has processed them, takes the remaining
+	 * chunks of the other threads.
+	 */
+	static class WorkQueue {
+		private final int[] bounds;
+		private final int numThreads, chunksPerThread;
+		private final AtomicInteger[] cursors;
+
+		public WorkQueue(int[] bounds, int numThreads, int chunksPerThread) {
+			this.bounds = bounds;
+			this.numThreads = numThreads;
+			this.chunksPerThread = chunksPerThread;
+			cursors = new AtomicInteger[numThreads];
+			for (int i = 0; i < numThreads; i++)
+				cursors[i] = new AtomicInteger(i * chunksPerThread);
+		}
+
+		/**
+		 * @return the next chunk to process, or -1 if all chunks are taken
+		 */
+		public int next(int thread) {
+			for (int i = 0; i < numThreads; i++) {
+				int owner = (thread + i) % numThreads;
+				int end = (owner + 1) * chunksPerThread;
+				if (cursors[owner].get() < end) {
+					int chunk = cursors[owner].getAndIncrement();
+					if (chunk < end)
+						return chunk;
+				}
+			}
+			return -1;
+		}
+
+		public boolean isOwner(int thread, int chunk) {
+			return chunk / chunksPerThread == thread;
+		}
+
+		public int getStart(int chunk) {
+			return bounds[chunk];
+		}
+
+		public int getEnd(int chunk) {
+			return bounds[chunk + 1];
+		}
+
+		/**
+		 * Makes a thread's chunks available again. Must only be called once no
+		 * thread is processing this phase.
+		 */
+		public void reset(int thread) {
+			cursors[thread].set(thread * chunksPerThread);
+		}
+	}
+
+	/**
+	 * Updates consensus variables and accumulates the residuals of the updates.
+	 */
+	abstract class ConsensusWorker {
 		public double primalResInc = 0.0;
 		public double dualResInc = 0.0;
 		public double AxNormInc = 0.0;
@@ -430,6 +1360,99 @@ public class ADMMReasoner implements Reasoner {
 		protected double lagrangePenalty = 0.0;
 		protected double augmentedLagrangePenalty = 0.0;
 
+		protected void clearResiduals() {
+			primalResInc = 0.0;
+			dualResInc = 0.0;
+			AxNormInc = 0.0;
+			BzNormInc = 0.0;
+			AyNormInc = 0.0;
+			lagrangePenalty = 0.0;
+			augmentedLagrangePenalty = 0.0;
+		}
+
+		protected void updateConsensusVariable(int i, boolean check) {
+			int start = termStore.getConsensusStart(i);
+			int end = termStore.getConsensusEnd(i);
+			int numCopies = end - start;
+
+			/* Leaves variables no longer in any term at their last values */
+			if (numCopies == 0)
+				return;
+
+			double oldZ = z[i];
+			double total = 0.0;
+			/* First pass computes newZ and dual residual */
+			for (int j = start; j < end; j++) {
+				int local = termStore.getLocalVariable(j);
+				double x = termStore.getX(local);
+				double y = termStore.getY(local);
+				if (check) {
+					AxNormInc += x * x;
+					AyNormInc += y * y;
+				}
+				/* Relaxes the local copy, as the next Lagrange update also does */
+				if (relaxation != 1.0)
+					x = relaxation * x + (1 - relaxation) * oldZ;
+				total += x + y / stepSize;
+			}
+			double newZ = total / numCopies;
+			if (newZ < lb[i])
+				newZ = lb[i];
+			else if (newZ > ub[i])
+				newZ = ub[i];
+
+			if (check) {
+				double diff = oldZ - newZ;
+				/* Residual is diff^2 * number of local variables mapped to z element */
+				dualResInc += diff * diff * numCopies;
+				BzNormInc += newZ * newZ * numCopies;
+			}
+			if (relaxation != 1.0)
+				previousZ[i] = oldZ;
+			z[i] = newZ;
+
+			/* Second pass computes primal residuals */
+			if (check) {
+				for (int j = start; j < end; j++) {
+					int local = termStore.getLocalVariable(j);
+					double diff = termStore.getX(local) - newZ;
+					primalResInc += diff * diff;
+					// computes Lagrangian penalties
+					lagrangePenalty += termStore.getY(local) * diff;
+					augmentedLagrangePenalty += 0.5 * stepSize * diff * diff;
+				}
+			}
+		}
+
+	}
+
+	private class ADMMTask extends ConsensusWorker implements Runnable {
+		public boolean flag;
+		/** Iteration the task starts with, which must match the main thread's */
+		private final int startIteration;
+		private final int index;
+		private final CyclicBarrier workerBarrier, checkBarrier;
+		private final Semaphore notification;
+		private final WorkQueue termQueue, consensusQueue;
+
+		public ADMMTask(int index, int startIteration, CyclicBarrier wBarrier, CyclicBarrier cBarrier,
+				Semaphore notification, WorkQueue termQueue, WorkQueue consensusQueue) {
+			this.index = index;
+			this.startIteration = startIteration;
+			this.workerBarrier = wBarrier;
+			this.checkBarrier = cBarrier;
+			this.notification = notification;
+			this.termQueue = termQueue;
+			this.consensusQueue = consensusQueue;
+			this.flag = true;
+		}
+
+		/* Timing, in nanoseconds, to expose imbalance between threads */
+		protected long localTime = 0;
+		protected long consensusTime = 0;
+		protected long waitTime = 0;
+		protected int chunksTaken = 0;
+
 		private void awaitUninterruptibly(CyclicBarrier b) {
 			try {
 				b.await();
@@ -444,105 +1467,663 @@ public class ADMMReasoner implements Reasoner {
 		public void run() {
 			awaitUninterruptibly(checkBarrier);
 
-			int iter = 1;
+			int iter = startIteration;
 			while (flag) {
-				boolean check = (iter-1) % stopCheck == 0;
+				boolean check = isCheckIteration(iter);
+				long time = System.nanoTime();
 
 				/* Solves each local function */
-				for (int i = termStart; i < termEnd; i ++)
-					terms.get(i).updateLagrange().minimize();
+				for (int chunk = termQueue.next(index); chunk != -1; chunk = termQueue.next(index)) {
+					if (!termQueue.isOwner(index, chunk))
+						chunksTaken++;
+					for (int i = termQueue.getStart(chunk); i < termQueue.getEnd(chunk); i++)
+						if (!termStore.isRemoved(i))
+							termStore.minimize(i);
+				}
+				localTime += System.nanoTime() - time;
+				time = System.nanoTime();
 
 				// Ensures all threads are at the same point
 				awaitUninterruptibly(workerBarrier);
+				termQueue.reset(index);
+				waitTime += System.nanoTime() - time;
+				time = System.nanoTime();
 
-				if (check) {
-					primalResInc = 0.0;
-					dualResInc = 0.0;
-					AxNormInc = 0.0;
-					BzNormInc = 0.0;
-					AyNormInc = 0.0;
-					lagrangePenalty = 0.0;
-					augmentedLagrangePenalty = 0.0;
-				}
+				if (check)
+					clearResiduals();
 
-				for (int i = zStart; i < zEnd; i++) {
-					double total = 0.0;
-					/* First pass computes newZ and dual residual */
-					for (Iterator<VariableLocation> itr = varLocations.get(i).iterator(); itr.hasNext(); ) {
-						VariableLocation location = itr.next();
-						total += location.term.x[location.localIndex] + location.term.y[location.localIndex] / stepSize;
-						if (check) {
-							AxNormInc += location.term.x[location.localIndex] * location.term.x[location.localIndex];
-							AyNormInc += location.term.y[location.localIndex] * location.term.y[location.localIndex];
-						}
-					}
-					double newZ = total / varLocations.get(i).size();
-					if (newZ < lb.get(i))
-						newZ = lb.get(i);
-					else if (newZ > ub.get(i))
-						newZ = ub.get(i);
-
-					if (check) {
-						double diff = z.get(i) - newZ;
-						/* Residual is diff^2 * number of local variables mapped to z element */
-						dualResInc += diff * diff * varLocations.get(i).size();
-						BzNormInc += newZ * newZ * varLocations.get(i).size();
-					}
-					z.set(i, newZ);
-
-					/* Second pass computes primal residuals */
-					if (check) {
-						for (Iterator<VariableLocation> itr = varLocations.get(i).iterator(); itr.hasNext(); ) {
-							VariableLocation location = itr.next();
-							double diff = location.term.x[location.localIndex] - newZ;
-							primalResInc += diff * diff;
-							// computes Lagrangian penalties
-							lagrangePenalty += location.term.y[location.localIndex] * (location.term.x[location.localIndex] - z.get(i));
-							augmentedLagrangePenalty += 0.5 * stepSize * Math.pow(location.term.x[location.localIndex]-z.get(i), 2);
-						}
-					}
+				for (int chunk = consensusQueue.next(index); chunk != -1; chunk = consensusQueue.next(index)) {
+					if (!consensusQueue.isOwner(index, chunk))
+						chunksTaken++;
+					for (int i = consensusQueue.getStart(chunk); i < consensusQueue.getEnd(chunk); i++)
+						updateConsensusVariable(i, check);
 				}
 
 				if (check)
 					notification.release();
+				consensusTime += System.nanoTime() - time;
+				time = System.nanoTime();
 
 				// Waits for main thread
 				awaitUninterruptibly(checkBarrier);
+				consensusQueue.reset(index);
+				waitTime += System.nanoTime() - time;
+				iter++;
 			}
 			awaitUninterruptibly(checkBarrier);
 		}
 
 	}
 
+	/**
+	 * Optimizes connected components one at a time, each until it meets its own
+	 * stopping criterion. Tasks take components from a shared list.
+	 */
+	private class ComponentTask extends ConsensusWorker implements Runnable {
+		private final int[] components;
+		private final AtomicInteger next;
+
+		protected int maxIterations = 0;
+		protected long totalIterations = 0;
+		protected double totalLagrangePenalty = 0.0;
+		protected double totalAugmentedLagrangePenalty = 0.0;
+
+		public ComponentTask(int[] components, AtomicInteger next) {
+			this.components = components;
+			this.next = next;
+		}
+
+		@Override
+		public void run() {
+			for (int k = next.getAndIncrement(); k < components.length; k = next.getAndIncrement())
+				optimizeComponent(components[k]);
+		}
+
+		private void optimizeComponent(int component) {
+			int termStart = componentTermStarts[component];
+			int termEnd = componentTermStarts[component + 1];
+			int zStart = componentVariableStarts[component];
+			int zEnd = componentVariableStarts[component + 1];
+
+			/* The step size is shared with the other tasks, so it is not adapted */
+			ConvergenceCheck convergence = new ConvergenceCheck(countLocalVariables(termStart, termEnd), 0, false);
+			int iter = 0;
+			while (!convergence.isConverged() && iter < maxIter) {
+				boolean check = iter % stopCheck == 0;
+
+				for (int i = termStart; i < termEnd; i++)
+					if (!termStore.isRemoved(i))
+						termStore.minimize(i);
+
+				if (check)
+					clearResiduals();
+
+				for (int i = zStart; i < zEnd; i++)
+					updateConsensusVariable(i, check);
+
+				if (check)
+					convergence.check(primalResInc, dualResInc, AxNormInc, BzNormInc, AyNormInc, iter);
+
+				iter++;
+			}
+
+			maxIterations = Math.max(maxIterations, iter);
+			totalIterations += iter;
+			totalLagrangePenalty += lagrangePenalty;
+			totalAugmentedLagrangePenalty += augmentedLagrangePenalty;
+		}
+	}
+
+	/**
+	 * Repeatedly updates a fixed share of the terms and then of the consensus
+	 * variables without waiting for the other threads.
+	 */
+	private class AsynchronousTask extends ConsensusWorker implements Runnable {
+		private final int index;
+		private final int termStart, termEnd, zStart, zEnd;
+		private final AsynchronousMonitor monitor;
+
+		protected int iterations = 0;
+
+		public AsynchronousTask(int index, int termStart, int termEnd, int zStart, int zEnd,
+				AsynchronousMonitor monitor) {
+			this.index = index;
+			this.termStart = termStart;
+			this.termEnd = termEnd;
+			this.zStart = zStart;
+			this.zEnd = zEnd;
+			this.monitor = monitor;
+		}
+
+		@Override
+		public void run() {
+			while (monitor.awaitTurn(index, iterations)) {
+				boolean check = iterations % stopCheck == 0;
+
+				for (int i = termStart; i < termEnd; i++)
+					if (!termStore.isRemoved(i))
+						termStore.minimize(i);
+
+				if (check)
+					clearResiduals();
+
+				for (int i = zStart; i < zEnd; i++)
+					updateConsensusVariable(i, check);
+
+				iterations++;
+				monitor.setIterations(index, iterations);
+				if (check)
+					monitor.report(index, this, iterations);
+				if (iterations >= maxIter)
+					monitor.stop();
+			}
+		}
+	}
+
+	/**
+	 * Residual-based stopping rule, which also adapts the step size to balance
+	 * the residuals, and publishes the progress to the listeners.
+	 */
+	private class ConvergenceCheck {
+		private final double epsilonAbsTerm;
+		private final boolean adapt;
+		private final int startIteration;
+		private final long startTime;
+		private int numAdaptations;
+		protected double primalRes = Double.POSITIVE_INFINITY;
+		protected double dualRes = Double.POSITIVE_INFINITY;
+		protected double epsilonPrimal = 0.0;
+		protected double epsilonDual = 0.0;
+
+		/**
+		 * @param numLocalVariables  the number of local variables optimized
+		 * @param startIteration  the iteration at which optimization starts
+		 * @param adapt  whether to adapt the step size if it is adaptive
+		 */
+		public ConvergenceCheck(int numLocalVariables, int startIteration, boolean adapt) {
+			epsilonAbsTerm = Math.sqrt(numLocalVariables) * epsilonAbs;
+			this.adapt = adapt;
+			this.startIteration = startIteration;
+			startTime = System.nanoTime();
+			numAdaptations = 0;
+		}
+
+		/**
+		 * Computes the residuals and tolerances from the totals of a check.
+		 *
+		 * @param primalSum  sum of the squared primal residuals
+		 * @param dualSum  sum of the squared changes of the consensus variables,
+		 *                 times their numbers of copies
+		 */
+		public void check(double primalSum, double dualSum, double AxNorm, double BzNorm, double AyNorm, int iter) {
+			primalRes = Math.sqrt(primalSum);
+			dualRes = stepSize * Math.sqrt(dualSum);
+
+			epsilonPrimal = epsilonAbsTerm + epsilonRel * Math.max(Math.sqrt(AxNorm), Math.sqrt(BzNorm));
+			epsilonDual = epsilonAbsTerm + epsilonRel * Math.sqrt(AyNorm);
+
+			/*
+			 * Balances the residuals. The Lagrange multipliers are unscaled,
+			 * so they remain valid for the new step size.
+			 */
+			if (adapt && adaptiveStepSize && numAdaptations < stepSizeAdaptations && !isConverged()) {
+				if (primalRes > stepSizeBalance * dualRes) {
+					stepSize *= stepSizeScale;
+					numAdaptations++;
+					log.trace("Increased step size to {} at iter {}", stepSize, iter);
+				}
+				else if (dualRes > stepSizeBalance * primalRes) {
+					stepSize /= stepSizeScale;
+					numAdaptations++;
+					log.trace("Decreased step size to {} at iter {}", stepSize, iter);
+				}
+			}
+		}
+
+		public boolean isConverged() {
+			return primalRes <= epsilonPrimal && dualRes <= epsilonDual;
+		}
+
+		public void trace(int iter) {
+			if (iter % (50 * stopCheck) == 0 && log.isTraceEnabled()) {
+				log.trace("Residuals at iter {} -- Primal: {} -- Dual: {}", new Object[] {iter, primalRes, dualRes});
+				log.trace("--------- Epsilon primal: {} -- Epsilon dual: {}", epsilonPrimal, epsilonDual);
+			}
+		}
+
+		/**
+		 * Notifies the listeners of the residuals of the last check, if there
+		 * are any.
+		 *
+		 * @param iteration  the number of iterations completed
+		 * @param tasks  the tasks of the synchronous iterations, or null
+		 */
+		public void publish(ADMMEvent.Type type, int iteration, double lagrange, double augmentedLagrange,
+				ADMMTask[] tasks) {
+			if (listeners.isEmpty())
+				return;
+
+			long elapsedTime = System.nanoTime() - startTime;
+			long[] localTimes = null, consensusTimes = null, waitTimes = null;
+			if (tasks != null) {
+				localTimes = new long[tasks.length];
+				consensusTimes = new long[tasks.length];
+				waitTimes = new long[tasks.length];
+				for (int i = 0; i < tasks.length; i++) {
+					localTimes[i] = tasks[i].localTime;
+					consensusTimes[i] = tasks[i].consensusTime;
+					waitTimes[i] = tasks[i].waitTime;
+				}
+			}
+
+			ADMMEvent event = new ADMMEvent(type, ADMMReasoner.this, iteration, elapsedTime,
+					(iteration - startIteration) * 1e9 / Math.max(elapsedTime, 1),
+					primalRes, dualRes, epsilonPrimal, epsilonDual, stepSize, lagrange, augmentedLagrange,
+					localTimes, consensusTimes, waitTimes);
+			for (ADMMEvent.Listener listener : listeners)
+				listener.notifyADMMEvent(event);
+		}
+	}
+
+	/**
+	 * Keeps {@link AsynchronousTask AsynchronousTasks} within the staleness
+	 * bound of each other, totals the residuals each last computed, and stops
+	 * all of them once the totals meet the stopping criterion.
+	 */
+	private class AsynchronousMonitor {
+		private final AtomicIntegerArray iterations;
+		/* The thread of each task while it is waiting for its turn */
+		private final AtomicReferenceArray<Thread> waiting;
+		/* Primal, dual, Ax, Bz, and Ay residual terms and the penalties of each task */
+		private final double[][] residuals;
+		private int numReported;
+		private volatile boolean done;
+
+		/* The step size is not adapted while the tasks use it */
+		protected final ConvergenceCheck convergence;
+		protected double lagrange = 0.0, augmentedLagrange = 0.0;
+
+		public AsynchronousMonitor(int numTasks, int numLocalVariables) {
+			iterations = new AtomicIntegerArray(numTasks);
+			waiting = new AtomicReferenceArray<Thread>(numTasks);
+			residuals = new double[numTasks][];
+			numReported = 0;
+			convergence = new ConvergenceCheck(numLocalVariables, 0, false);
+			done = false;
+		}
+
+		/**
+		 * @param taskIterations  the number of iterations the task has completed
+		 */
+		public synchronized void report(int index, ConsensusWorker worker, int taskIterations) {
+			if (residuals[index] == null) {
+				residuals[index] = new double[7];
+				numReported++;
+			}
+			double[] r = residuals[index];
+			r[0] = worker.primalResInc;
+			r[1] = worker.dualResInc;
+			r[2] = worker.AxNormInc;
+			r[3] = worker.BzNormInc;
+			r[4] = worker.AyNormInc;
+			r[5] = worker.lagrangePenalty;
+			r[6] = worker.augmentedLagrangePenalty;
+
+			/* Waits until every task has computed its residuals at least once */
+			if (numReported < residuals.length)
+				return;
+
+			double[] total = new double[7];
+			for (double[] taskResiduals : residuals)
+				for (int k = 0; k < total.length; k++)
+					total[k] += taskResiduals[k];
+
+			lagrange = total[5];
+			augmentedLagrange = total[6];
+			convergence.check(total[0], total[1], total[2], total[3], total[4], taskIterations);
+			convergence.publish(ADMMEvent.Type.Check, taskIterations, lagrange, augmentedLagrange, null);
+			if (convergence.isConverged())
+				stop();
+		}
+
+		/**
+		 * Parks a task that has made the given number of iterations while it
+		 * is too far ahead of the slowest task.
+		 *
+		 * @return false if optimization is done
+		 */
+		public boolean awaitTurn(int index, int taskIterations) {
+			while (!done) {
+				if (isTurn(taskIterations))
+					return true;
+
+				/* Checks again once registered, so that no update is missed */
+				waiting.set(index, Thread.currentThread());
+				if (!done && !isTurn(taskIterations))
+					LockSupport.park(this);
+				waiting.set(index, null);
+			}
+			return false;
+		}
+
+		private boolean isTurn(int taskIterations) {
+			int slowest = Integer.MAX_VALUE;
+			for (int i = 0; i < iterations.length(); i++)
+				slowest = Math.min(slowest, iterations.get(i));
+			return taskIterations - slowest <= staleness;
+		}
+
+		public void setIterations(int index, int taskIterations) {
+			iterations.set(index, taskIterations);
+			wakeWaiting();
+		}
+
+		public void stop() {
+			done = true;
+			wakeWaiting();
+		}
+
+		private void wakeWaiting() {
+			for (int i = 0; i < waiting.length(); i++) {
+				Thread thread = waiting.get(i);
+				if (thread != null)
+					LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of local variables of the terms that are not removed
+	 *         from termStart (inclusive) to termEnd (exclusive)
+	 */
+	private int countLocalVariables(int termStart, int termEnd) {
+		int count = 0;
+		for (int i = termStart; i < termEnd; i++)
+			if (!termStore.isRemoved(i))
+				count += termStore.getTermEnd(i) - termStore.getTermStart(i);
+		return count;
+	}
+
+	/**
+	 * @return whether the residuals are computed on an iteration of the
+	 *         synchronous threads, which always includes the last one, so
+	 *         that the main thread waits for the threads to start it before
+	 *         stopping them
+	 */
+	private boolean isCheckIteration(int iter) {
+		return iter % stopCheck == 0 || iter == maxIter - 1;
+	}
+
 	@Override
 	public void optimize() {
+		/* The checkpoint being written must not see the model change */
+		if (checkpointer != null)
+			checkpointer.awaitWriter();
+
+		boolean changed = true;
 		if (rebuildModel)
 			buildGroundModel();
+		else if (!addedGroundKernels.isEmpty() || termStore.needsCompaction())
+			updateGroundModel();
+		else
+			changed = false;
+
+		/* Term weights are part of the keys of the terms */
+		if (checkpointer != null && (changed || weightsChanged)) {
+			long[] variableKeys = new long[numConsensusVariables];
+			for (int i = 0; i < numConsensusVariables; i++)
+				variableKeys[i] = Checkpointer.hash(variables.get(i).toString());
+			checkpointer.index(variableKeys);
+
+			if (!checkpointResumed) {
+				resumedIteration = Math.max(checkpointer.resume(), 0);
+				checkpointResumed = true;
+			}
+		}
+		weightsChanged = false;
+
+		/* Makes the first Lagrange update unrelaxed, as it is after a rebuild */
+		if (relaxation != 1.0 && (changed || previousZ == null))
+			previousZ = Arrays.copyOf(z, z.length);
+
+		log.debug("Performing optimization with {} variables and {} terms.", numConsensusVariables, termStore.size());
+
+		lagrangePenalty = 0.0;
+		augmentedLagrangePenalty = 0.0;
+
+		if (workers != null)
+			optimizeOnWorkers();
+		else if (decompose)
+			optimizeComponents();
+		else
+			optimize(0, termStore.size(), 0, numConsensusVariables);
+
+		if (cholesky)
+			log.debug("Cholesky cache: {} factors, {} hits, {} misses", choleskyCache.size(),
+					choleskyCache.getHits(), choleskyCache.getMisses());
+
+		/* Updates variables */
+		for (int i = 0; i < variables.size(); i++) {
+			variables.get(i).setValue(z[i]);
+		}
+	}
+
+	/**
+	 * @return the threads that optimize, which are shared with other
+	 *         reasoners unless set with {@link #setThreadPool(ThreadPool)}
+	 */
+	public ThreadPool getThreadPool() {
+		return threadPool;
+	}
+
+	/**
+	 * Sets the threads that optimize, by default
+	 * {@link ThreadPool#getPool(ConfigBundle)} with this reasoner's configuration.
+	 * The pool need not have {@link #NUM_THREADS_KEY} threads. Must not be
+	 * called while optimizing.
+	 */
+	public void setThreadPool(ThreadPool threadPool) {
+		this.threadPool = threadPool;
+	}
 
-		log.debug("Performing optimization with {} variables and {} terms.", z.size(), terms.size());
+	/**
+	 * Registers a listener to be notified of the progress of optimization.
+	 * Listeners can be registered and unregistered while optimizing.
+	 */
+	public void registerListener(ADMMEvent.Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener registered with {@link #registerListener(ADMMEvent.Listener)}.
+	 */
+	public void unregisterListener(ADMMEvent.Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return the cache of Cholesky factors used by squared hyperplane terms,
+	 *         or null if {@link #CHOLESKY_KEY} is false
+	 */
+	public CholeskyCache getCholeskyCache() {
+		return choleskyCache;
+	}
+
+	/**
+	 * Creates the connections to the workers listed in {@link #WORKERS_KEY}.
+	 * Subclasses can override it to use another transport.
+	 */
+	protected ConsensusTransport createTransport(List<InetSocketAddress> workers) {
+		return new TcpConsensusTransport(workers);
+	}
+
+	/**
+	 * Optimizes on the workers listed in {@link #WORKERS_KEY}, each of which
+	 * takes a contiguous range of terms of roughly equal cost. The stopping
+	 * criterion and step size adaptation are the same as in this process.
+	 */
+	private void optimizeOnWorkers() {
+		if (transport == null)
+			transport = createTransport(workers);
+
+		ConvergenceCheck convergence = new ConvergenceCheck(countLocalVariables(0, termStore.size()), 0, true);
+		double lagrange = 0.0, augmentedLagrange = 0.0;
+		int iter = 0;
+		long time = System.nanoTime();
+		try {
+			transport.open();
+			ConsensusCoordinator coordinator = new ConsensusCoordinator(this, transport,
+					partition(new TermCost(), 0, termStore.size(), transport.getNumWorkers()));
+			coordinator.distribute();
+
+			while (!convergence.isConverged() && iter < maxIter) {
+				boolean check = iter % stopCheck == 0;
+				coordinator.iterate(check);
+				if (check) {
+					lagrange = coordinator.lagrange;
+					augmentedLagrange = coordinator.augmentedLagrange;
+					convergence.check(coordinator.primalSum, coordinator.dualSum, coordinator.AxNorm,
+							coordinator.BzNorm, coordinator.AyNorm, iter);
+					convergence.publish(ADMMEvent.Type.Check, iter + 1, lagrange, augmentedLagrange, null);
+				}
+
+				convergence.trace(iter);
+				iter++;
+			}
+
+			coordinator.finish();
+		}
+		catch (IOException e) {
+			closeTransport();
+			throw new RuntimeException("Lost connection to ADMM workers.", e);
+		}
+
+		log.info("Optimization completed in  {} iterations. " +
+				"Primal res.: {}, Dual res.: {}", new Object[] {iter, convergence.primalRes, convergence.dualRes});
+		log.debug("Optimized on {} workers in {} ms", transport.getNumWorkers(), (System.nanoTime() - time) / 1000000);
+		convergence.publish(ADMMEvent.Type.Completed, iter, lagrange, augmentedLagrange, null);
+
+		lagrangePenalty += lagrange;
+		augmentedLagrangePenalty += augmentedLagrange;
+	}
+
+	private void closeTransport() {
+		if (transport == null)
+			return;
+		try {
+			transport.close();
+		}
+		catch (IOException e) {
+			log.warn("Could not close connections to ADMM workers", e);
+		}
+		transport = null;
+	}
+
+	/**
+	 * Optimizes each connected component independently. Components with more
+	 * local variables than a thread's share are optimized first, one at a
+	 * time, by all threads. The rest are then spread over the threads,
+	 * largest first. Each component starts from the initial step size.
+	 */
+	private void optimizeComponents() {
+		int numComponents = componentTermStarts.length - 1;
+		int totalSize = countLocalVariables(0, termStore.size());
+		final int[] sizes = new int[numComponents];
+		List<Integer> smallComponents = new ArrayList<Integer>();
+		int numLarge = 0;
+		for (int c = 0; c < numComponents; c++) {
+			sizes[c] = countLocalVariables(componentTermStarts[c], componentTermStarts[c + 1]);
+			if (numThreads > 1 && (long) sizes[c] * numThreads > totalSize) {
+				/* Each component starts from the initial step size, not the last one's adapted one */
+				stepSize = initialStepSize;
+				optimize(componentTermStarts[c], componentTermStarts[c + 1],
+						componentVariableStarts[c], componentVariableStarts[c + 1]);
+				numLarge++;
+			}
+			/* Components without terms have nothing to optimize */
+			else if (sizes[c] > 0)
+				smallComponents.add(c);
+		}
+
+		Collections.sort(smallComponents, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return sizes[b] - sizes[a];
+			}
+		});
+		int[] components = new int[smallComponents.size()];
+		for (int i = 0; i < components.length; i++)
+			components[i] = smallComponents.get(i);
+
+		stepSize = initialStepSize;
+		AtomicInteger next = new AtomicInteger(0);
+		ComponentTask[] tasks = new ComponentTask[Math.min(numThreads, components.length)];
+		Future<?>[] futures = new Future<?>[tasks.length];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new ComponentTask(components, next);
+			futures[i] = threadPool.submit(tasks[i]);
+		}
+
+		int maxIterations = 0;
+		long totalIterations = 0;
+		for (int i = 0; i < tasks.length; i++) {
+			try {
+				futures[i].get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+			maxIterations = Math.max(maxIterations, tasks[i].maxIterations);
+			totalIterations += tasks[i].totalIterations;
+			lagrangePenalty += tasks[i].totalLagrangePenalty;
+			augmentedLagrangePenalty += tasks[i].totalAugmentedLagrangePenalty;
+		}
+
+		log.info("Optimization of {} small components completed in at most {} iterations, {} in total. "
+				+ "{} large components optimized separately.",
+				new Object[] {components.length, maxIterations, totalIterations, numLarge});
+	}
+
+	/**
+	 * Optimizes the terms from termStart (inclusive) to termEnd (exclusive),
+	 * which must only copy the consensus variables from zStart (inclusive) to
+	 * zEnd (exclusive), using all threads.
+	 */
+	private void optimize(int termStart, int termEnd, int zStart, int zEnd) {
+		if (asynchronous) {
+			optimizeAsynchronously(termStart, termEnd, zStart, zEnd);
+			return;
+		}
 
 		// Starts up the computation threads
 		ADMMTask[] tasks = new ADMMTask[numThreads];
 		CyclicBarrier workerBarrier = new CyclicBarrier(numThreads);
-		CyclicBarrier checkBarrier = new CyclicBarrier(numThreads + 1);
+		/* Checkpoints are copied while all threads wait at the check barrier */
+		CyclicBarrier checkBarrier = (checkpointer != null)
+				? new CyclicBarrier(numThreads + 1, checkpointer) : new CyclicBarrier(numThreads + 1);
 		Semaphore notifySem = new Semaphore(0);
-		ThreadPool threadPool = ThreadPool.getPool();
-		for (int i = 0; i < numThreads; i ++) {
-			tasks[i] = new ADMMTask(i, workerBarrier, checkBarrier, notifySem);
-			threadPool.submit(tasks[i]);
-		}
+		WorkQueue termQueue = new WorkQueue(partition(new TermCost(), termStart, termEnd, numThreads * chunksPerThread),
+				numThreads, chunksPerThread);
+		WorkQueue consensusQueue = new WorkQueue(partition(new ConsensusCost(), zStart, zEnd, numThreads * chunksPerThread),
+				numThreads, chunksPerThread);
+		for (int i = 0; i < numThreads; i ++)
+			tasks[i] = new ADMMTask(i, resumedIteration, workerBarrier, checkBarrier, notifySem, termQueue,
+					consensusQueue);
+		/* The tasks wait for each other at the barriers */
+		threadPool.submitGang(tasks);
 
 		/* Performs inference */
-		double primalRes = Double.POSITIVE_INFINITY;
-		double dualRes = Double.POSITIVE_INFINITY;
-		double epsilonPrimal = 0;
-		double epsilonDual = 0;
-		double epsilonAbsTerm = Math.sqrt(n) * epsilonAbs;
-		double AxNorm = 0.0, BzNorm = 0.0, AyNorm = 0.0;
+		int startIter = resumedIteration;
+		ConvergenceCheck convergence = new ConvergenceCheck(countLocalVariables(termStart, termEnd), startIter, true);
+		double lagrange = 0.0, augmentedLagrange = 0.0;
 		boolean check = false;
-		int iter = 0;
-		while ((primalRes > epsilonPrimal || dualRes > epsilonDual) && iter < maxIter) {
-			check = iter % stopCheck == 0;
+		resumedIteration = 0;
+		int iter = startIter;
+		while (!convergence.isConverged() && iter < maxIter) {
+			check = isCheckIteration(iter);
+			if (checkpointer != null)
+				checkpointer.request((iter > startIter && iter % checkpointInterval == 0) ? iter : -1);
 
 			// Await check barrier
 			try {
@@ -557,13 +2138,9 @@ public class ADMMReasoner implements Reasoner {
 				// Acquire semaphore
 				notifySem.acquireUninterruptibly(numThreads);
 
-				primalRes = 0.0;
-				dualRes = 0.0;
-				AxNorm = 0.0;
-				BzNorm = 0.0;
-				AyNorm = 0.0;
-				lagrangePenalty = 0.0;
-				augmentedLagrangePenalty = 0.0;
+				double primalRes = 0.0, dualRes = 0.0, AxNorm = 0.0, BzNorm = 0.0, AyNorm = 0.0;
+				lagrange = 0.0;
+				augmentedLagrange = 0.0;
 
 				// Total values from threads
 				for (ADMMTask task : tasks) {
@@ -572,22 +2149,16 @@ public class ADMMReasoner implements Reasoner {
 					AxNorm += task.AxNormInc;
 					BzNorm += task.BzNormInc;
 					AyNorm += task.AyNormInc;
-					lagrangePenalty += task.lagrangePenalty;
-					augmentedLagrangePenalty += task.augmentedLagrangePenalty;
+					lagrange += task.lagrangePenalty;
+					augmentedLagrange += task.augmentedLagrangePenalty;
 				}
 
-				primalRes = Math.sqrt(primalRes);
-				dualRes = stepSize * Math.sqrt(dualRes);
-
-				epsilonPrimal = epsilonAbsTerm + epsilonRel * Math.max(Math.sqrt(AxNorm), Math.sqrt(BzNorm));
-				epsilonDual = epsilonAbsTerm + epsilonRel * Math.sqrt(AyNorm);
-			}
-
-			if (iter % (50 * stopCheck) == 0) {
-				log.trace("Residuals at iter {} -- Primal: {} -- Dual: {}", new Object[] {iter, primalRes, dualRes});
-				log.trace("--------- Epsilon primal: {} -- Epsilon dual: {}", epsilonPrimal, epsilonDual);
+				convergence.check(primalRes, dualRes, AxNorm, BzNorm, AyNorm, iter);
+				/* The residuals are of the iteration the threads just completed */
+				convergence.publish(ADMMEvent.Type.Check, iter + 1, lagrange, augmentedLagrange, tasks);
 			}
 
+			convergence.trace(iter);
 			iter++;
 		}
 
@@ -608,12 +2179,58 @@ public class ADMMReasoner implements Reasoner {
 		}
 
 		log.info("Optimization completed in  {} iterations. " +
-				"Primal res.: {}, Dual res.: {}", new Object[] {iter, primalRes, dualRes});
+				"Primal res.: {}, Dual res.: {}", new Object[] {iter, convergence.primalRes, convergence.dualRes});
+		for (ADMMTask task : tasks)
+			log.debug("Thread {} -- Local step: {} ms, Consensus step: {} ms, Waiting: {} ms, Chunks taken: {}",
+					new Object[] {task.index, task.localTime / 1000000, task.consensusTime / 1000000,
+					task.waitTime / 1000000, task.chunksTaken});
+		convergence.publish(ADMMEvent.Type.Completed, iter, lagrange, augmentedLagrange, tasks);
 
-		/* Updates variables */
-		for (int i = 0; i < variables.size(); i++) {
-			variables.get(i).setValue(z.get(i));
+		lagrangePenalty += lagrange;
+		augmentedLagrangePenalty += augmentedLagrange;
+	}
+
+	/**
+	 * Optimizes without synchronizing the threads between iterations. Each
+	 * thread gets a fixed share of the terms and of the consensus variables,
+	 * of roughly equal cost.
+	 *
+	 * @see #ASYNCHRONOUS_KEY
+	 */
+	private void optimizeAsynchronously(int termStart, int termEnd, int zStart, int zEnd) {
+		int[] termBounds = partition(new TermCost(), termStart, termEnd, numThreads);
+		int[] consensusBounds = partition(new ConsensusCost(), zStart, zEnd, numThreads);
+		AsynchronousMonitor monitor = new AsynchronousMonitor(numThreads, countLocalVariables(termStart, termEnd));
+
+		AsynchronousTask[] tasks = new AsynchronousTask[numThreads];
+		for (int i = 0; i < numThreads; i++)
+			tasks[i] = new AsynchronousTask(i, termBounds[i], termBounds[i + 1],
+					consensusBounds[i], consensusBounds[i + 1], monitor);
+		/* The tasks wait for each other to stay within the staleness bound */
+		Future<?>[] futures = threadPool.submitGang(tasks);
+
+		int minIterations = Integer.MAX_VALUE;
+		int maxIterations = 0;
+		for (int i = 0; i < numThreads; i++) {
+			try {
+				futures[i].get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+			minIterations = Math.min(minIterations, tasks[i].iterations);
+			maxIterations = Math.max(maxIterations, tasks[i].iterations);
 		}
+
+		log.info("Asynchronous optimization completed in {} to {} iterations per thread. " +
+				"Primal res.: {}, Dual res.: {}", new Object[] {minIterations, maxIterations,
+				monitor.convergence.primalRes, monitor.convergence.dualRes});
+		monitor.convergence.publish(ADMMEvent.Type.Completed, maxIterations, monitor.lagrange,
+				monitor.augmentedLagrange, null);
+
+		lagrangePenalty += monitor.lagrange;
+		augmentedLagrangePenalty += monitor.augmentedLagrange;
 	}
 
 	@Override
@@ -642,14 +2259,21 @@ public class ADMMReasoner implements Reasoner {
 
 	@Override
 	public void close() {
+		if (checkpointer != null)
+			checkpointer.awaitWriter();
+		closeTransport();
+
 		groundKernels = null;
+		addedGroundKernels = null;
 		orderedGroundKernels = null;
-		terms = null;
+		sharedTerms = null;
+		groundKernelTerms = null;
+		termStore = null;
 		variables = null;
 		z = null;
+		previousZ = null;
 		lb = null;
 		ub = null;
-		varLocations = null;
 
 //		try {
 //			log.debug("Shutting down thread pool.");
@@ -660,13 +2284,6 @@ public class ADMMReasoner implements Reasoner {
 //		}
 	}
 
-	private void registerLocalVariableCopies(ADMMObjectiveTerm term) {
-		for (int i = 0; i < term.x.length; i++) {
-			VariableLocation varLocation = new VariableLocation(term, i);
-			varLocations.get(term.zIndices[i]).add(varLocation);
-		}
-	}
-
 	protected Hyperplane processHyperplane(FunctionSum sum) {
 		Hyperplane hp = new Hyperplane();
 		HashMap<AtomFunctionVariable, Integer> localVarLocations = new HashMap<AtomFunctionVariable, Integer>();
@@ -697,9 +2314,6 @@ public class ADMMReasoner implements Reasoner {
 						tempZIndices.add(zIndex);
 						tempCoeffs.add(summand.getCoefficient());
 						localVarLocations.put((AtomFunctionVariable) singleton, tempZIndices.size()-1);
-
-						/* Increments count of local variables */
-						n++;
 					}
 				}
 				/* Else, creates a new global variable and a local variable */
@@ -707,20 +2321,12 @@ public class ADMMReasoner implements Reasoner {
 					/* Creates the global variable */
 					variables.put(variables.size(), (AtomFunctionVariable)singleton);
 
-					z.add(singleton.getValue());
-					lb.add(0.0);
-					ub.add(1.0);
-
-					/* Creates a list of local variable locations for the new variable */
-					varLocations.add(new ArrayList<ADMMReasoner.VariableLocation>());
+					int zIndex = addConsensusVariable(singleton.getValue(), 0.0, 1.0);
 
 					/* Creates the local variable */
-					tempZIndices.add(z.size()-1);
+					tempZIndices.add(zIndex);
 					tempCoeffs.add(summand.getCoefficient());
 					localVarLocations.put((AtomFunctionVariable) singleton, tempZIndices.size()-1);
-
-					/* Increments count of local variables */
-					n++;
 				}
 			}
 			else if (singleton.isConstant()) {
@@ -748,21 +2354,4 @@ public class ADMMReasoner implements Reasoner {
 		public double constant;
 	}
 
-	public class VariableLocation {
-		private final ADMMObjectiveTerm term;
-		private final int localIndex;
-
-		private VariableLocation(ADMMObjectiveTerm term, int localIndex) {
-			this.term = term;
-			this.localIndex = localIndex;
-		}
-		public ADMMObjectiveTerm getTerm() {
-			return term;
-		}
-
-		public int getLocalIndex() {
-			return localIndex;
-		}
-	}
-
 }
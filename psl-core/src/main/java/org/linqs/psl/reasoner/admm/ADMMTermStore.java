@@ -0,0 +1,167 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+/**
+ * Storage for the objective terms of an {@link ADMMReasoner} and the local
+ * copies of consensus variables that they hold.
+ * <p>
+ * Terms are identified by the order in which they were added. Each local
+ * variable copy is identified by an index assigned by the store, and the
+ * copies of a term occupy a contiguous range of these indices. Once
+ * {@link #indexLocalVariables(int)} has been called, the copies of each
+ * consensus variable can be enumerated in compressed sparse row (CSR) form:
+ * positions {@link #getConsensusStart(int)} (inclusive) to
+ * {@link #getConsensusEnd(int)} (exclusive) are mapped to local variables
+ * by {@link #getLocalVariable(int)}.
+ * <p>
+ * After the index is built, terms can still be added and removed. Added terms
+ * are indexed as they are added. Removed terms keep their indices, but are
+ * skipped by the index, until {@link #compact(int)} is called.
+ */
+public interface ADMMTermStore {
+
+	/**
+	 * Adds a term to this store. Implementations may copy the term's data,
+	 * so later changes to the term object are not necessarily seen.
+	 *
+	 * @return the index of the new term
+	 */
+	public int add(ADMMObjectiveTerm term);
+
+	/**
+	 * Removes a term from this store. The term's index stays valid, but the
+	 * term is no longer minimized or indexed.
+	 */
+	public void remove(int term);
+
+	public boolean isRemoved(int term);
+
+	/**
+	 * @return the number of terms, including removed ones
+	 */
+	public int size();
+
+	/**
+	 * @return the number of local variable copies across all terms that are not removed
+	 */
+	public int getNumLocalVariables();
+
+	/**
+	 * @return whether enough space is taken by removed terms that the store
+	 *         should be compacted
+	 */
+	public boolean needsCompaction();
+
+	/**
+	 * Reclaims the space of removed terms and renumbers the remaining terms
+	 * (keeping their order) and local variables. Also rebuilds the index.
+	 *
+	 * @param numConsensusVariables  the number of consensus variables
+	 * @return the new index of each term, or -1 for removed terms
+	 */
+	public int[] compact(int numConsensusVariables);
+
+	/**
+	 * Reorders the terms and renumbers the consensus variables they copy.
+	 * Also rebuilds the index. The store must not contain removed terms.
+	 *
+	 * @param termOrder  the current index of the term to place at each position
+	 * @param variableMap  the new index of each consensus variable
+	 * @see LocalityOrdering
+	 */
+	public void permute(int[] termOrder, int[] variableMap);
+
+	/**
+	 * @return the first local variable of the term
+	 */
+	public int getTermStart(int term);
+
+	/**
+	 * @return one past the last local variable of the term
+	 */
+	public int getTermEnd(int term);
+
+	/**
+	 * Builds the index from consensus variables to their local copies.
+	 * Must be called once the initial terms are added and before the index is used.
+	 *
+	 * @param numConsensusVariables  the number of consensus variables
+	 */
+	public void indexLocalVariables(int numConsensusVariables);
+
+	public int getConsensusStart(int zIndex);
+
+	public int getConsensusEnd(int zIndex);
+
+	/**
+	 * @param position  a position in [getConsensusStart(zIndex), getConsensusEnd(zIndex))
+	 * @return the local variable at that position of the index
+	 */
+	public int getLocalVariable(int position);
+
+	/**
+	 * @return the index into z of the consensus variable the local variable copies
+	 */
+	public int getZIndex(int localVariable);
+
+	/**
+	 * @return the value of the local variable
+	 */
+	public double getX(int localVariable);
+
+	/**
+	 * Sets the value of a local variable.
+	 */
+	public void setX(int localVariable, double value);
+
+	/**
+	 * @return the Lagrange multiplier of the local variable
+	 */
+	public double getY(int localVariable);
+
+	/**
+	 * Sets the Lagrange multiplier of a local variable.
+	 */
+	public void setY(int localVariable, double value);
+
+	/**
+	 * Updates the Lagrange multipliers of the term and then minimizes it.
+	 *
+	 * @see ADMMObjectiveTerm#updateLagrange()
+	 * @see ADMMObjectiveTerm#minimize()
+	 */
+	public void minimize(int term);
+
+	/**
+	 * Sets each local variable of the terms to the value of its consensus
+	 * variable and its Lagrange multiplier to zero, as for a new term.
+	 */
+	public void resetLocalVariables(double[] z);
+
+	/**
+	 * Sets the weight of a term that is a {@link WeightedObjectiveTerm}.
+	 */
+	public void setWeight(int term, double weight);
+
+	/**
+	 * @return a hash of the type, coefficients, constant, and weight of a
+	 *         term, but not of its variables
+	 */
+	public long hashDefinition(int term);
+}
@@ -0,0 +1,304 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.linqs.psl.config.EmptyBundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optimizes a shard of the terms of an {@link ADMMReasoner} in another
+ * process, as one of the workers listed in {@link ADMMReasoner#WORKERS_KEY}.
+ * <p>
+ * The reasoner sends each worker a shard of its terms with the consensus
+ * variables they use. A variable used only by one worker's terms is interior
+ * to it, and the worker updates it itself. A variable used by several workers
+ * is on the boundary, and every iteration each worker sends the reasoner the
+ * total of x + y / stepSize over its local copies of it, from which the
+ * reasoner computes the new value and sends it back with the next iteration.
+ * On iterations on which convergence is checked, each worker also sends the
+ * totals of x and y over the copies of each boundary variable and its
+ * residuals, from which the reasoner computes the residuals of the whole
+ * model.
+ * <p>
+ * Run a worker with
+ * <pre>
+ * java org.linqs.psl.reasoner.admm.ADMMWorker port [address]
+ * </pre>
+ * It listens on the loopback interface unless given the address of another
+ * interface to bind to, and serves each reasoner that connects, on its own
+ * thread, until killed. Workers trust the reasoners that connect to them, so
+ * only bind them to interfaces on trusted networks.
+ */
+public class ADMMWorker {
+
+	private static final Logger log = LoggerFactory.getLogger(ADMMWorker.class);
+
+	/* Messages from the reasoner */
+	static final int SHARD = 1;
+	static final int ITERATE = 2;
+	static final int FINISH = 3;
+
+	/** Largest length of an array received from the reasoner */
+	static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	/** Reasoner that holds the shard and updates its interior variables */
+	private final ADMMReasoner reasoner;
+	private final ADMMReasoner.ConsensusWorker consensus;
+
+	/** Whether each variable is on the boundary */
+	private boolean[] isBoundary;
+	/** Boundary variables, in the order of the messages */
+	private int[] boundary;
+
+	public ADMMWorker() {
+		/* The reasoner sends the step size, and its other options are not used */
+		reasoner = new ADMMReasoner(new EmptyBundle());
+		consensus = reasoner.new ConsensusWorker() {};
+		boundary = new int[0];
+	}
+
+	/**
+	 * Serves each reasoner that connects to a socket with its own worker,
+	 * until the socket is closed.
+	 */
+	public static void serve(ServerSocket server) throws IOException {
+		while (true) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			}
+			catch (SocketException e) {
+				if (server.isClosed())
+					return;
+				throw e;
+			}
+
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						try {
+							socket.setTcpNoDelay(true);
+							new ADMMWorker().serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+									new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+						}
+						finally {
+							socket.close();
+						}
+					}
+					catch (IOException e) {
+						log.warn("Lost connection to reasoner at " + socket.getRemoteSocketAddress(), e);
+					}
+				}
+			}, "ADMM worker for " + socket.getRemoteSocketAddress());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Serves a reasoner until it closes the connection.
+	 */
+	public void serve(DataInputStream in, DataOutputStream out) throws IOException {
+		while (true) {
+			int message = in.read();
+			switch (message) {
+				case -1:
+					return;
+				case SHARD:
+					readShard(in);
+					break;
+				case ITERATE:
+					iterate(in, out);
+					break;
+				case FINISH:
+					finish(out);
+					break;
+				default:
+					throw new IOException("Unknown message: " + message);
+			}
+		}
+	}
+
+	private void readShard(DataInputStream in) throws IOException {
+		int numVariables = readSize(in, "variables", MAX_SIZE);
+		reasoner.z = new double[numVariables];
+		reasoner.lb = new double[numVariables];
+		reasoner.ub = new double[numVariables];
+		reasoner.numConsensusVariables = numVariables;
+		for (int i = 0; i < numVariables; i++) {
+			reasoner.z[i] = in.readDouble();
+			reasoner.lb[i] = in.readDouble();
+			reasoner.ub[i] = in.readDouble();
+		}
+
+		isBoundary = new boolean[numVariables];
+		boundary = new int[readSize(in, "boundary variables", numVariables)];
+		for (int i = 0; i < boundary.length; i++) {
+			boundary[i] = readIndex(in, numVariables);
+			isBoundary[boundary[i]] = true;
+		}
+
+		int numTerms = readSize(in, "terms", MAX_SIZE);
+		int numLocalVariables = readSize(in, "local variables", MAX_SIZE);
+		ADMMTermStore termStore = new FlatTermStore(reasoner, Math.max(numTerms, 1), Math.max(numLocalVariables, 1));
+		reasoner.termStore = termStore;
+		for (int term = 0; term < numTerms; term++) {
+			byte type = in.readByte();
+			double constant = in.readDouble();
+			double weight = in.readDouble();
+			int size = readSize(in, "term variables", numVariables);
+			int[] zIndices = new int[size];
+			double[] coeffs = new double[size];
+			double[] x = new double[size];
+			double[] y = new double[size];
+			for (int i = 0; i < size; i++) {
+				zIndices[i] = readIndex(in, numVariables);
+				coeffs[i] = in.readDouble();
+				x[i] = in.readDouble();
+				y[i] = in.readDouble();
+			}
+
+			int index = termStore.add(AbstractFlatTermStore.createTerm(reasoner, type, zIndices, coeffs, constant, weight));
+			for (int i = 0; i < size; i++) {
+				termStore.setX(termStore.getTermStart(index) + i, x[i]);
+				termStore.setY(termStore.getTermStart(index) + i, y[i]);
+			}
+		}
+		termStore.indexLocalVariables(numVariables);
+
+		log.debug("Received shard with {} variables, {} on the boundary, and {} terms",
+				new Object[] {numVariables, boundary.length, numTerms});
+	}
+
+	/**
+	 * Reads the length of an array, which must be between zero and max.
+	 */
+	private static int readSize(DataInputStream in, String name, int max) throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > max)
+			throw new IOException("Invalid number of " + name + ": " + size);
+		return size;
+	}
+
+	/**
+	 * Reads the index of a consensus variable, which must be less than numVariables.
+	 */
+	private static int readIndex(DataInputStream in, int numVariables) throws IOException {
+		int index = in.readInt();
+		if (index < 0 || index >= numVariables)
+			throw new IOException("Invalid variable index: " + index);
+		return index;
+	}
+
+	private void iterate(DataInputStream in, DataOutputStream out) throws IOException {
+		double stepSize = in.readDouble();
+		boolean check = in.readBoolean();
+		reasoner.stepSize = stepSize;
+		double[] z = reasoner.z;
+		for (int i = 0; i < boundary.length; i++)
+			z[boundary[i]] = in.readDouble();
+
+		ADMMTermStore termStore = reasoner.termStore;
+		for (int term = 0; term < termStore.size(); term++)
+			termStore.minimize(term);
+
+		if (check)
+			consensus.clearResiduals();
+		for (int i = 0; i < reasoner.numConsensusVariables; i++)
+			if (!isBoundary[i])
+				consensus.updateConsensusVariable(i, check);
+
+		/* Totals over the copies of each boundary variable */
+		double xx = 0.0, xy = 0.0;
+		double[] xs = check ? new double[boundary.length] : null;
+		double[] ys = check ? new double[boundary.length] : null;
+		for (int i = 0; i < boundary.length; i++) {
+			double total = 0.0;
+			for (int j = termStore.getConsensusStart(boundary[i]); j < termStore.getConsensusEnd(boundary[i]); j++) {
+				int local = termStore.getLocalVariable(j);
+				double x = termStore.getX(local);
+				double y = termStore.getY(local);
+				total += x + y / stepSize;
+				if (check) {
+					xs[i] += x;
+					ys[i] += y;
+					xx += x * x;
+					xy += x * y;
+					consensus.AxNormInc += x * x;
+					consensus.AyNormInc += y * y;
+				}
+			}
+			out.writeDouble(total);
+		}
+
+		if (check) {
+			for (int i = 0; i < boundary.length; i++) {
+				out.writeDouble(xs[i]);
+				out.writeDouble(ys[i]);
+			}
+			out.writeDouble(consensus.primalResInc);
+			out.writeDouble(consensus.dualResInc);
+			out.writeDouble(consensus.AxNormInc);
+			out.writeDouble(consensus.BzNormInc);
+			out.writeDouble(consensus.AyNormInc);
+			out.writeDouble(consensus.lagrangePenalty);
+			out.writeDouble(consensus.augmentedLagrangePenalty);
+			out.writeDouble(xx);
+			out.writeDouble(xy);
+		}
+		out.flush();
+	}
+
+	private void finish(DataOutputStream out) throws IOException {
+		for (int i = 0; i < reasoner.numConsensusVariables; i++)
+			out.writeDouble(reasoner.z[i]);
+
+		ADMMTermStore termStore = reasoner.termStore;
+		for (int term = 0; term < termStore.size(); term++) {
+			for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++) {
+				out.writeDouble(termStore.getX(i));
+				out.writeDouble(termStore.getY(i));
+			}
+		}
+		out.flush();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java " + ADMMWorker.class.getName() + " port [address]");
+			System.exit(1);
+		}
+
+		InetAddress address = (args.length == 2) ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+		ServerSocket server = new ServerSocket(Integer.parseInt(args[0]), 50, address);
+		log.info("Waiting for reasoners on {}:{}", server.getInetAddress().getHostAddress(), server.getLocalPort());
+		serve(server);
+	}
+}
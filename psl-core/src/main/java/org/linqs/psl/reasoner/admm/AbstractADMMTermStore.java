@@ -0,0 +1,356 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+
+/**
+ * Base class for {@link ADMMTermStore ADMMTermStores} that keeps the term ranges
+ * and the consensus variable of each local variable in flat arrays and builds
+ * the CSR index from them.
+ * <p>
+ * Once indexed, the store is updated incrementally. Each consensus variable
+ * owns a segment of the index with some spare capacity. New local variables
+ * are appended to their variable's segment, which is moved to the end of the
+ * index when it is full. Removed terms are tombstoned and their local
+ * variables are unlinked from the index right away, but their storage is only
+ * reclaimed by {@link #compact(int)}.
+ * <p>
+ * Subclasses hold the remaining term data and must call {@link #addTerm(int[])}
+ * to reserve the local variables of each new term.
+ */
+public abstract class AbstractADMMTermStore implements ADMMTermStore {
+
+	/**
+	 * Fraction of the local variables that can be removed or wasted in the index
+	 * before {@link #needsCompaction()} is true.
+	 */
+	protected static final double COMPACTION_THRESHOLD = 0.25;
+
+	protected int numTerms;
+	protected int numLocalVariables;
+	protected int numRemovedTerms;
+	protected int numRemovedLocalVariables;
+
+	/** Start of each term's local variables, with one extra entry for the end */
+	protected int[] termStarts;
+	/** Whether each term has been removed */
+	protected boolean[] removed;
+	/** Consensus variable copied by each local variable */
+	protected int[] localZIndices;
+
+	/* Variable to local variable index. Null until indexLocalVariables() is called. */
+	/** Start of each consensus variable's segment in consensusLocalVariables */
+	protected int[] consensusStarts;
+	/** End of the used part of each consensus variable's segment */
+	protected int[] consensusEnds;
+	/** Capacity of each consensus variable's segment */
+	protected int[] consensusCapacities;
+	/** Local variables grouped by consensus variable */
+	protected int[] consensusLocalVariables;
+	/** Used length of consensusLocalVariables, including abandoned segments */
+	protected int consensusSize;
+	/** Number of positions in consensusLocalVariables left behind by moved segments */
+	protected int numAbandonedPositions;
+
+	protected AbstractADMMTermStore(int termCapacity, int localVariableCapacity) {
+		numTerms = 0;
+		numLocalVariables = 0;
+		numRemovedTerms = 0;
+		numRemovedLocalVariables = 0;
+		termStarts = new int[Math.max(termCapacity, 1) + 1];
+		removed = new boolean[termStarts.length];
+		localZIndices = new int[Math.max(localVariableCapacity, 1)];
+	}
+
+	/**
+	 * Reserves space for a new term and its local variables. If the store is
+	 * already indexed, also adds the local variables to the index.
+	 *
+	 * @param zIndices  the consensus variables the term's local variables copy
+	 * @return the index of the new term
+	 */
+	protected int addTerm(int[] zIndices) {
+		if (numTerms + 1 == termStarts.length)
+			growTerms(termStarts.length * 2);
+
+		if (numLocalVariables + zIndices.length > localZIndices.length)
+			growLocalVariables(Math.max(localZIndices.length * 2, numLocalVariables + zIndices.length));
+
+		System.arraycopy(zIndices, 0, localZIndices, numLocalVariables, zIndices.length);
+		termStarts[numTerms] = numLocalVariables;
+		numLocalVariables += zIndices.length;
+		termStarts[numTerms + 1] = numLocalVariables;
+		removed[numTerms] = false;
+
+		if (consensusStarts != null)
+			for (int i = termStarts[numTerms]; i < numLocalVariables; i++)
+				insertIntoIndex(i);
+
+		return numTerms++;
+	}
+
+	/**
+	 * Grows the per-term arrays. Subclasses that hold per-term data should
+	 * override this method and call it.
+	 */
+	protected void growTerms(int capacity) {
+		termStarts = Arrays.copyOf(termStarts, capacity);
+		removed = Arrays.copyOf(removed, capacity);
+	}
+
+	/**
+	 * Grows the per-local-variable arrays. Subclasses that hold data per
+	 * local variable should override this method and call it.
+	 */
+	protected void growLocalVariables(int capacity) {
+		localZIndices = Arrays.copyOf(localZIndices, capacity);
+	}
+
+	/**
+	 * Moves a live term to a lower index during {@link #compact(int)}.
+	 * Subclasses that hold per-term or per-local-variable data should
+	 * override this method and call it.
+	 *
+	 * @param term  the current index of the term
+	 * @param newTerm  the new index of the term, at most term
+	 * @param start  the current first local variable of the term
+	 * @param newStart  the new first local variable of the term, at most start
+	 * @param size  the number of local variables of the term
+	 */
+	protected void moveTerm(int term, int newTerm, int start, int newStart, int size) {
+		System.arraycopy(localZIndices, start, localZIndices, newStart, size);
+	}
+
+	/**
+	 * Rearranges the term data for {@link #permute(int[], int[])}. Subclasses
+	 * that hold per-term or per-local-variable data should override this
+	 * method and call it.
+	 *
+	 * @param termOrder  the current index of the term to place at each position
+	 * @param localMap  the new index of each local variable
+	 * @param variableMap  the new index of each consensus variable
+	 */
+	protected void permuteTerms(int[] termOrder, int[] localMap, int[] variableMap) {
+		int[] newLocalZIndices = new int[localZIndices.length];
+		for (int i = 0; i < numLocalVariables; i++)
+			newLocalZIndices[localMap[i]] = variableMap[localZIndices[i]];
+		localZIndices = newLocalZIndices;
+	}
+
+	@Override
+	public int size() {
+		return numTerms;
+	}
+
+	@Override
+	public int getNumLocalVariables() {
+		return numLocalVariables - numRemovedLocalVariables;
+	}
+
+	@Override
+	public int getTermStart(int term) {
+		return termStarts[term];
+	}
+
+	@Override
+	public int getTermEnd(int term) {
+		return termStarts[term + 1];
+	}
+
+	@Override
+	public void remove(int term) {
+		if (removed[term])
+			return;
+
+		removed[term] = true;
+		numRemovedTerms++;
+		numRemovedLocalVariables += termStarts[term + 1] - termStarts[term];
+
+		if (consensusStarts != null)
+			for (int i = termStarts[term]; i < termStarts[term + 1]; i++)
+				removeFromIndex(i);
+	}
+
+	@Override
+	public boolean isRemoved(int term) {
+		return removed[term];
+	}
+
+	@Override
+	public boolean needsCompaction() {
+		return numRemovedLocalVariables + numAbandonedPositions > COMPACTION_THRESHOLD * numLocalVariables;
+	}
+
+	@Override
+	public int[] compact(int numConsensusVariables) {
+		int[] termMap = new int[numTerms];
+		int newTerm = 0;
+		int newStart = 0;
+		for (int term = 0; term < numTerms; term++) {
+			if (removed[term]) {
+				termMap[term] = -1;
+				continue;
+			}
+
+			int start = termStarts[term];
+			int size = termStarts[term + 1] - start;
+			if (newTerm != term)
+				moveTerm(term, newTerm, start, newStart, size);
+			termStarts[newTerm] = newStart;
+			removed[newTerm] = false;
+
+			termMap[term] = newTerm;
+			newTerm++;
+			newStart += size;
+		}
+		termStarts[newTerm] = newStart;
+
+		numTerms = newTerm;
+		numLocalVariables = newStart;
+		numRemovedTerms = 0;
+		numRemovedLocalVariables = 0;
+
+		indexLocalVariables(numConsensusVariables);
+		return termMap;
+	}
+
+	@Override
+	public void permute(int[] termOrder, int[] variableMap) {
+		if (numRemovedTerms > 0)
+			throw new IllegalStateException("Cannot permute a term store with removed terms.");
+
+		int[] localMap = new int[numLocalVariables];
+		int[] newTermStarts = new int[termStarts.length];
+		int newStart = 0;
+		for (int newTerm = 0; newTerm < numTerms; newTerm++) {
+			int term = termOrder[newTerm];
+			newTermStarts[newTerm] = newStart;
+			for (int i = termStarts[term]; i < termStarts[term + 1]; i++)
+				localMap[i] = newStart++;
+		}
+		newTermStarts[numTerms] = newStart;
+
+		permuteTerms(termOrder, localMap, variableMap);
+		termStarts = newTermStarts;
+
+		indexLocalVariables(variableMap.length);
+	}
+
+	@Override
+	public void indexLocalVariables(int numConsensusVariables) {
+		/* Counts the live copies of each consensus variable */
+		int[] counts = new int[numConsensusVariables];
+		for (int term = 0; term < numTerms; term++)
+			if (!removed[term])
+				for (int i = termStarts[term]; i < termStarts[term + 1]; i++)
+					counts[localZIndices[i]]++;
+
+		consensusStarts = new int[numConsensusVariables];
+		consensusEnds = new int[numConsensusVariables];
+		consensusCapacities = counts;
+		for (int i = 1; i < numConsensusVariables; i++)
+			consensusStarts[i] = consensusStarts[i - 1] + counts[i - 1];
+		System.arraycopy(consensusStarts, 0, consensusEnds, 0, numConsensusVariables);
+
+		consensusSize = getNumLocalVariables();
+		numAbandonedPositions = 0;
+
+		/* Fills in the copies, keeping them in order of local variable */
+		consensusLocalVariables = new int[Math.max(consensusSize, 1)];
+		for (int term = 0; term < numTerms; term++)
+			if (!removed[term])
+				for (int i = termStarts[term]; i < termStarts[term + 1]; i++)
+					consensusLocalVariables[consensusEnds[localZIndices[i]]++] = i;
+	}
+
+	/**
+	 * Appends a local variable to its consensus variable's segment of the index.
+	 */
+	private void insertIntoIndex(int localVariable) {
+		int zIndex = localZIndices[localVariable];
+
+		/* Makes room for consensus variables created since the index was built */
+		if (zIndex >= consensusStarts.length) {
+			int capacity = Math.max(consensusStarts.length * 2, zIndex + 1);
+			int oldCapacity = consensusStarts.length;
+			consensusStarts = Arrays.copyOf(consensusStarts, capacity);
+			consensusEnds = Arrays.copyOf(consensusEnds, capacity);
+			consensusCapacities = Arrays.copyOf(consensusCapacities, capacity);
+			for (int i = oldCapacity; i < capacity; i++) {
+				consensusStarts[i] = consensusSize;
+				consensusEnds[i] = consensusSize;
+			}
+		}
+
+		/* Moves a full segment to the end of the index with more capacity */
+		if (consensusEnds[zIndex] == consensusStarts[zIndex] + consensusCapacities[zIndex]) {
+			int count = consensusEnds[zIndex] - consensusStarts[zIndex];
+			int capacity = Math.max(2 * consensusCapacities[zIndex], 4);
+			if (consensusSize + capacity > consensusLocalVariables.length)
+				consensusLocalVariables = Arrays.copyOf(consensusLocalVariables,
+						Math.max(consensusLocalVariables.length * 2, consensusSize + capacity));
+
+			System.arraycopy(consensusLocalVariables, consensusStarts[zIndex], consensusLocalVariables, consensusSize, count);
+			numAbandonedPositions += consensusCapacities[zIndex];
+
+			consensusStarts[zIndex] = consensusSize;
+			consensusEnds[zIndex] = consensusSize + count;
+			consensusCapacities[zIndex] = capacity;
+			consensusSize += capacity;
+		}
+
+		consensusLocalVariables[consensusEnds[zIndex]++] = localVariable;
+	}
+
+	/**
+	 * Unlinks a local variable from its consensus variable's segment of the index
+	 * by swapping it with the last local variable in the segment.
+	 */
+	private void removeFromIndex(int localVariable) {
+		int zIndex = localZIndices[localVariable];
+		int last = consensusEnds[zIndex] - 1;
+		for (int i = consensusStarts[zIndex]; i <= last; i++) {
+			if (consensusLocalVariables[i] == localVariable) {
+				consensusLocalVariables[i] = consensusLocalVariables[last];
+				consensusEnds[zIndex]--;
+				return;
+			}
+		}
+	}
+
+	@Override
+	public int getConsensusStart(int zIndex) {
+		return consensusStarts[zIndex];
+	}
+
+	@Override
+	public int getConsensusEnd(int zIndex) {
+		return consensusEnds[zIndex];
+	}
+
+	@Override
+	public int getLocalVariable(int position) {
+		return consensusLocalVariables[position];
+	}
+
+	@Override
+	public int getZIndex(int localVariable) {
+		return localZIndices[localVariable];
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+
+import org.linqs.psl.reasoner.function.FunctionComparator;
+
+/**
+ * {@link ADMMTermStore} that packs all terms into a few contiguous arrays
+ * instead of keeping an object per term.
+ * <p>
+ * The type, constant, weight, and squared norm of the coefficients of each
+ * term are stored here in parallel arrays indexed by term. Subclasses store
+ * the local variables, their Lagrange multipliers, and the coefficients of
+ * the terms in parallel arrays indexed by local variable, and implement the
+ * minimization of each type of term on them. Only the term types created by
+ * {@link ADMMReasoner#createTerm(org.linqs.psl.model.rule.GroundRule)} are
+ * supported: {@link LinearConstraintTerm}, {@link LinearLossTerm},
+ * {@link HingeLossTerm}, {@link SquaredLinearLossTerm}, and
+ * {@link SquaredHingeLossTerm}.
+ * <p>
+ * Squared terms are minimized in closed form with the Sherman-Morrison
+ * formula, so no factorizations are stored.
+ */
+public abstract class AbstractFlatTermStore extends AbstractADMMTermStore {
+
+	public static final byte LINEAR_LOSS = 0;
+	public static final byte HINGE_LOSS = 1;
+	public static final byte SQUARED_LINEAR_LOSS = 2;
+	public static final byte SQUARED_HINGE_LOSS = 3;
+	public static final byte EQUALITY_CONSTRAINT = 4;
+	public static final byte SMALLER_THAN_CONSTRAINT = 5;
+	public static final byte LARGER_THAN_CONSTRAINT = 6;
+
+	protected final ADMMReasoner reasoner;
+
+	/* Per-term data */
+	protected byte[] types;
+	protected double[] constants;
+	protected double[] weights;
+	/** Squared norm of each term's coefficients */
+	protected double[] squaredNorms;
+
+	protected AbstractFlatTermStore(ADMMReasoner reasoner, int termCapacity, int localVariableCapacity) {
+		super(termCapacity, localVariableCapacity);
+		this.reasoner = reasoner;
+
+		types = new byte[termStarts.length];
+		constants = new double[termStarts.length];
+		weights = new double[termStarts.length];
+		squaredNorms = new double[termStarts.length];
+	}
+
+	@Override
+	public int add(ADMMObjectiveTerm term) {
+		Definition definition = new Definition(term);
+
+		int start = numLocalVariables;
+		int index = addTerm(term.zIndices);
+
+		double squaredNorm = 0.0;
+		for (int i = 0; i < definition.coeffs.length; i++) {
+			setLocalVariable(start + i, term.x[i], term.y[i], definition.coeffs[i]);
+			squaredNorm += definition.coeffs[i] * definition.coeffs[i];
+		}
+
+		types[index] = definition.type;
+		constants[index] = definition.constant;
+		weights[index] = definition.weight;
+		squaredNorms[index] = squaredNorm;
+
+		return index;
+	}
+
+	@Override
+	public long hashDefinition(int term) {
+		long hash = types[term];
+		for (int i = termStarts[term]; i < termStarts[term + 1]; i++)
+			hash = hash(hash, getCoefficient(i));
+		return hash(hash(hash, constants[term]), weights[term]);
+	}
+
+	/**
+	 * @return the hash of {@link #hashDefinition(int)} for a term that is not
+	 *         stored
+	 */
+	static long hashDefinition(ADMMObjectiveTerm term) {
+		Definition definition = new Definition(term);
+		long hash = definition.type;
+		for (double coeff : definition.coeffs)
+			hash = hash(hash, coeff);
+		return hash(hash(hash, definition.constant), definition.weight);
+	}
+
+	private static long hash(long hash, double value) {
+		return 31 * hash + Double.doubleToLongBits(value);
+	}
+
+	/**
+	 * The type, coefficients, constant, and weight of a term, as stored here.
+	 */
+	private static class Definition {
+		private final byte type;
+		private final double[] coeffs;
+		private final double constant;
+		private final double weight;
+
+		public Definition(ADMMObjectiveTerm term) {
+			if (term.getClass() == LinearConstraintTerm.class) {
+				LinearConstraintTerm constraint = (LinearConstraintTerm) term;
+				if (constraint.comparator.equals(FunctionComparator.Equality))
+					type = EQUALITY_CONSTRAINT;
+				else if (constraint.comparator.equals(FunctionComparator.SmallerThan))
+					type = SMALLER_THAN_CONSTRAINT;
+				else
+					type = LARGER_THAN_CONSTRAINT;
+				coeffs = constraint.coeffs;
+				constant = constraint.constant;
+				weight = 0.0;
+			}
+			else if (term.getClass() == LinearLossTerm.class) {
+				type = LINEAR_LOSS;
+				coeffs = ((LinearLossTerm) term).coeffs;
+				constant = 0.0;
+				weight = ((LinearLossTerm) term).weight;
+			}
+			else if (term.getClass() == HingeLossTerm.class) {
+				type = HINGE_LOSS;
+				coeffs = ((HingeLossTerm) term).coeffs;
+				constant = ((HingeLossTerm) term).constant;
+				weight = ((HingeLossTerm) term).weight;
+			}
+			else if (term.getClass() == SquaredLinearLossTerm.class || term.getClass() == SquaredHingeLossTerm.class) {
+				type = (term.getClass() == SquaredLinearLossTerm.class) ? SQUARED_LINEAR_LOSS : SQUARED_HINGE_LOSS;
+				coeffs = ((SquaredHyperplaneTerm) term).coeffs;
+				constant = ((SquaredHyperplaneTerm) term).constant;
+				weight = ((SquaredHyperplaneTerm) term).weight;
+			}
+			else
+				throw new IllegalArgumentException("Unsupported term for flat storage: " + term.getClass().getName());
+		}
+	}
+
+	/**
+	 * Creates a term of one of the supported types.
+	 *
+	 * @param weight  ignored for constraints
+	 */
+	static ADMMObjectiveTerm createTerm(ADMMReasoner reasoner, byte type, int[] zIndices, double[] coeffs,
+			double constant, double weight) {
+		switch (type) {
+			case LINEAR_LOSS:
+				return new LinearLossTerm(reasoner, zIndices, coeffs, weight);
+			case HINGE_LOSS:
+				return new HingeLossTerm(reasoner, zIndices, coeffs, constant, weight);
+			case SQUARED_LINEAR_LOSS:
+				return new SquaredLinearLossTerm(reasoner, zIndices, coeffs, constant, weight);
+			case SQUARED_HINGE_LOSS:
+				return new SquaredHingeLossTerm(reasoner, zIndices, coeffs, constant, weight);
+			case EQUALITY_CONSTRAINT:
+				return new LinearConstraintTerm(reasoner, zIndices, coeffs, constant, FunctionComparator.Equality);
+			case SMALLER_THAN_CONSTRAINT:
+				return new LinearConstraintTerm(reasoner, zIndices, coeffs, constant, FunctionComparator.SmallerThan);
+			case LARGER_THAN_CONSTRAINT:
+				return new LinearConstraintTerm(reasoner, zIndices, coeffs, constant, FunctionComparator.LargerThan);
+			default:
+				throw new IllegalArgumentException("Unknown term type: " + type);
+		}
+	}
+
+	/**
+	 * Stores the value, Lagrange multiplier, and coefficient of a new local
+	 * variable.
+	 */
+	protected abstract void setLocalVariable(int localVariable, double x, double y, double coeff);
+
+	/**
+	 * @return the coefficient of the local variable in its term
+	 */
+	protected abstract double getCoefficient(int localVariable);
+
+	@Override
+	protected void growTerms(int capacity) {
+		super.growTerms(capacity);
+		types = Arrays.copyOf(types, capacity);
+		constants = Arrays.copyOf(constants, capacity);
+		weights = Arrays.copyOf(weights, capacity);
+		squaredNorms = Arrays.copyOf(squaredNorms, capacity);
+	}
+
+	@Override
+	protected void moveTerm(int term, int newTerm, int start, int newStart, int size) {
+		super.moveTerm(term, newTerm, start, newStart, size);
+
+		types[newTerm] = types[term];
+		constants[newTerm] = constants[term];
+		weights[newTerm] = weights[term];
+		squaredNorms[newTerm] = squaredNorms[term];
+	}
+
+	@Override
+	protected void permuteTerms(int[] termOrder, int[] localMap, int[] variableMap) {
+		super.permuteTerms(termOrder, localMap, variableMap);
+
+		byte[] newTypes = new byte[types.length];
+		double[] newConstants = new double[constants.length];
+		double[] newWeights = new double[weights.length];
+		double[] newSquaredNorms = new double[squaredNorms.length];
+		for (int newTerm = 0; newTerm < numTerms; newTerm++) {
+			int term = termOrder[newTerm];
+			newTypes[newTerm] = types[term];
+			newConstants[newTerm] = constants[term];
+			newWeights[newTerm] = weights[term];
+			newSquaredNorms[newTerm] = squaredNorms[term];
+		}
+		types = newTypes;
+		constants = newConstants;
+		weights = newWeights;
+		squaredNorms = newSquaredNorms;
+	}
+
+	@Override
+	public void setWeight(int term, double weight) {
+		if (types[term] >= EQUALITY_CONSTRAINT)
+			throw new IllegalArgumentException("Term " + term + " is not weighted.");
+		weights[term] = weight;
+	}
+
+	@Override
+	public void minimize(int term) {
+		int start = termStarts[term];
+		int end = termStarts[term + 1];
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+
+		updateLagrange(start, end, stepSize, z, reasoner.relaxation, reasoner.previousZ);
+
+		switch (types[term]) {
+			case LINEAR_LOSS:
+				minimizeLinear(term, start, end, stepSize, z);
+				break;
+			case HINGE_LOSS:
+				/* If the linear loss is NOT active at the unconstrained minimizer, it is the solution... */
+				if (minimizeUnconstrained(start, end, stepSize, z) <= constants[term])
+					break;
+				/* ...else if the linear loss IS active at its minimizer, that is the solution... */
+				if (minimizeLinear(term, start, end, stepSize, z) >= constants[term])
+					break;
+				/* ...else the solution is on the hinge */
+				project(term, start, end, stepSize, z);
+				break;
+			case SQUARED_LINEAR_LOSS:
+				minimizeSquared(term, start, end, stepSize, z);
+				break;
+			case SQUARED_HINGE_LOSS:
+				if (minimizeUnconstrained(start, end, stepSize, z) > constants[term])
+					minimizeSquared(term, start, end, stepSize, z);
+				break;
+			case EQUALITY_CONSTRAINT:
+				project(term, start, end, stepSize, z);
+				break;
+			case SMALLER_THAN_CONSTRAINT:
+				if (minimizeUnconstrained(start, end, stepSize, z) > constants[term])
+					project(term, start, end, stepSize, z);
+				break;
+			case LARGER_THAN_CONSTRAINT:
+				if (minimizeUnconstrained(start, end, stepSize, z) < constants[term])
+					project(term, start, end, stepSize, z);
+				break;
+			default:
+				throw new IllegalStateException("Unknown term type: " + types[term]);
+		}
+	}
+
+	/**
+	 * Updates the Lagrange multipliers of the local variables from start
+	 * (inclusive) to end (exclusive), with x relaxed toward previousZ unless
+	 * relaxation is 1.
+	 */
+	protected abstract void updateLagrange(int start, int end, double stepSize, double[] z,
+			double relaxation, double[] previousZ);
+
+	/**
+	 * Sets x to argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
+	 *
+	 * @return coeffs^T * x at the solution
+	 */
+	protected abstract double minimizeUnconstrained(int start, int end, double stepSize, double[] z);
+
+	/**
+	 * Sets x to argmin weight * coeffs^T * x + stepSize/2 * \|x - z + y / stepSize \|_2^2
+	 *
+	 * @return coeffs^T * x at the solution
+	 * @see LinearLossTerm#minimize()
+	 */
+	protected abstract double minimizeLinear(int term, int start, int end, double stepSize, double[] z);
+
+	/**
+	 * Projects z - y / stepSize onto the hyperplane coeffs^T * x = constant.
+	 *
+	 * @see HyperplaneTerm#project()
+	 */
+	protected abstract void project(int term, int start, int end, double stepSize, double[] z);
+
+	/**
+	 * Minimizes weight * (coeffs^T * x - constant)^2 + stepSize/2 * \|x - z + y / stepSize \|_2^2.
+	 * <p>
+	 * The system to solve is (stepSize * I + 2 * weight * coeffs * coeffs^T) x = b,
+	 * so by the Sherman-Morrison formula
+	 * x = b / stepSize - 2 * weight * (coeffs^T * b) / (stepSize * (stepSize + 2 * weight * coeffs^T * coeffs)) * coeffs.
+	 *
+	 * @see SquaredHyperplaneTerm#minWeightedSquaredHyperplane()
+	 */
+	protected abstract void minimizeSquared(int term, int start, int end, double stepSize, double[] z);
+}
@@ -0,0 +1,392 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes periodic checkpoints of the state of an {@link ADMMReasoner} and
+ * restores it from them.
+ * <p>
+ * A checkpoint holds the iteration, the step size, the consensus variables,
+ * and the local variables and Lagrange multipliers of every term. Since the
+ * order of variables and terms can differ between runs, they are identified
+ * by keys: each consensus variable by a hash of its atom, and each term by
+ * a hash of its type, coefficients, constant, and weight and of the keys of
+ * its variables. A fingerprint of all keys identifies
+ * the ground model, and a checkpoint is only restored into a ground model
+ * with the same fingerprint. Terms with the same key are matched in order,
+ * which at worst swaps their states.
+ * <p>
+ * Checkpoints are taken while the worker threads wait at a barrier, by
+ * running this object as its barrier action. Only the state is copied then,
+ * with the keys and sizes of the live terms, so that the ground model can
+ * change while it is written by a background thread, to a temporary file
+ * that replaces the checkpoint when complete. A checkpoint is skipped if the
+ * previous one is still being written.
+ * <p>
+ * A checkpoint is read completely before any of it is restored, so a
+ * checkpoint that cannot be read leaves the reasoner as it was.
+ */
+class Checkpointer implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(Checkpointer.class);
+
+	private static final int MAGIC = 0x50534c43;
+	private static final int VERSION = 2;
+
+	private final ADMMReasoner reasoner;
+	private final File file;
+
+	/* Keys of the current ground model */
+	private long[] variableKeys;
+	private long[] termKeys;
+	private long fingerprint;
+
+	/** Iteration to checkpoint at the next barrier, or -1 */
+	private int requestedIteration;
+	private Thread writer;
+
+	/* State copied by the last checkpoint */
+	private int iteration;
+	private double stepSize;
+	private long checkpointFingerprint;
+	private long[] checkpointVariableKeys;
+	private double[] z;
+	/** Keys and sizes of the live terms, whose x and y are packed in order */
+	private long[] checkpointTermKeys;
+	private int[] termSizes;
+	private int numTerms;
+	private double[] x, y;
+
+	/**
+	 * @param file  the checkpoint to write and to resume from
+	 */
+	Checkpointer(ADMMReasoner reasoner, File file) {
+		this.reasoner = reasoner;
+		this.file = file;
+		requestedIteration = -1;
+	}
+
+	/**
+	 * Computes the keys of the terms and the fingerprint of the ground model.
+	 * Must be called whenever the ground model is built or changed.
+	 *
+	 * @param variableKeys  the key of each consensus variable
+	 */
+	void index(long[] variableKeys) {
+		awaitWriter();
+		ADMMTermStore termStore = reasoner.termStore;
+		this.variableKeys = variableKeys;
+		termKeys = new long[termStore.size()];
+
+		long variableSum = 0;
+		for (long key : variableKeys)
+			variableSum += mix(key);
+
+		long termSum = 0;
+		for (int term = 0; term < termKeys.length; term++) {
+			if (termStore.isRemoved(term))
+				continue;
+
+			long key = mix(termStore.hashDefinition(term));
+			key = mix(31 * key + termStore.getTermEnd(term) - termStore.getTermStart(term));
+			for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++)
+				key = mix(31 * key + variableKeys[termStore.getZIndex(i)]);
+			termKeys[term] = key;
+			termSum += mix(key);
+		}
+
+		fingerprint = mix(mix(variableSum) + termSum);
+	}
+
+	/**
+	 * Sets the iteration to checkpoint at the next barrier.
+	 *
+	 * @param iteration  the number of completed iterations, or -1 to not
+	 *                   checkpoint
+	 */
+	void request(int iteration) {
+		requestedIteration = iteration;
+	}
+
+	@Override
+	public void run() {
+		if (requestedIteration >= 0) {
+			checkpoint(requestedIteration);
+			requestedIteration = -1;
+		}
+	}
+
+	/**
+	 * Copies the state of the reasoner and writes it in the background.
+	 * Must only be called while no thread is optimizing.
+	 */
+	void checkpoint(int iteration) {
+		if (writer != null && writer.isAlive()) {
+			log.debug("Skipping checkpoint at iteration {} while the previous one is written", iteration);
+			return;
+		}
+
+		ADMMTermStore termStore = reasoner.termStore;
+		int numLocalVariables = 0;
+		numTerms = 0;
+		for (int term = 0; term < termStore.size(); term++) {
+			if (!termStore.isRemoved(term)) {
+				numLocalVariables += termStore.getTermEnd(term) - termStore.getTermStart(term);
+				numTerms++;
+			}
+		}
+
+		this.iteration = iteration;
+		stepSize = reasoner.stepSize;
+		checkpointFingerprint = fingerprint;
+		checkpointVariableKeys = variableKeys;
+		z = copy(z, reasoner.z, variableKeys.length);
+		if (checkpointTermKeys == null || checkpointTermKeys.length < numTerms) {
+			checkpointTermKeys = new long[numTerms];
+			termSizes = new int[numTerms];
+		}
+		if (x == null || x.length < numLocalVariables) {
+			x = new double[numLocalVariables];
+			y = new double[numLocalVariables];
+		}
+		int next = 0, position = 0;
+		for (int term = 0; term < termStore.size(); term++) {
+			if (termStore.isRemoved(term))
+				continue;
+			checkpointTermKeys[next] = termKeys[term];
+			termSizes[next++] = termStore.getTermEnd(term) - termStore.getTermStart(term);
+			for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++) {
+				x[position] = termStore.getX(i);
+				y[position++] = termStore.getY(i);
+			}
+		}
+
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "ADMM checkpoint writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private static double[] copy(double[] target, double[] source, int length) {
+		if (target == null || target.length < length)
+			target = new double[length];
+		System.arraycopy(source, 0, target, 0, length);
+		return target;
+	}
+
+	/**
+	 * Writes the state copied by {@link #checkpoint(int)}, which is all it
+	 * reads.
+	 */
+	private void write() {
+		long time = System.nanoTime();
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(checkpointFingerprint);
+				out.writeInt(iteration);
+				out.writeDouble(stepSize);
+
+				out.writeInt(checkpointVariableKeys.length);
+				for (int i = 0; i < checkpointVariableKeys.length; i++) {
+					out.writeLong(checkpointVariableKeys[i]);
+					out.writeDouble(z[i]);
+				}
+
+				out.writeInt(numTerms);
+				int position = 0;
+				for (int term = 0; term < numTerms; term++) {
+					out.writeLong(checkpointTermKeys[term]);
+					out.writeInt(termSizes[term]);
+					for (int i = 0; i < termSizes[term]; i++, position++) {
+						out.writeDouble(x[position]);
+						out.writeDouble(y[position]);
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			log.debug("Wrote checkpoint at iteration {} in {} ms", iteration, (System.nanoTime() - time) / 1000000);
+		}
+		catch (IOException e) {
+			log.warn("Could not write checkpoint " + file, e);
+		}
+	}
+
+	/**
+	 * Waits until the last checkpoint is written.
+	 */
+	void awaitWriter() {
+		if (writer == null)
+			return;
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Restores the state of the reasoner from the checkpoint, if it exists
+	 * and matches the current ground model.
+	 *
+	 * @return the iteration of the checkpoint, or -1 if it was not restored
+	 */
+	int resume() {
+		if (!file.isFile())
+			return -1;
+
+		ADMMTermStore termStore = reasoner.termStore;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					log.warn("Ignoring checkpoint {}, which is not in a known format", file);
+					return -1;
+				}
+				if (in.readLong() != fingerprint) {
+					log.info("Ignoring checkpoint {}, which is of another ground model", file);
+					return -1;
+				}
+				int checkpointIteration = in.readInt();
+				double checkpointStepSize = in.readDouble();
+
+				/* The state is read into copies, and restored once all is read */
+				double[] restoredZ = Arrays.copyOf(reasoner.z, variableKeys.length);
+				Map<Long, Integer> variables = new HashMap<Long, Integer>(variableKeys.length * 2);
+				for (int i = 0; i < variableKeys.length; i++)
+					variables.put(variableKeys[i], i);
+				int numVariables = in.readInt();
+				for (int i = 0; i < numVariables; i++) {
+					Integer index = variables.get(in.readLong());
+					double value = in.readDouble();
+					if (index != null)
+						restoredZ[index] = value;
+				}
+
+				/* Chains the terms with the same key, in order */
+				Map<Long, Integer> terms = new HashMap<Long, Integer>(termKeys.length * 2);
+				int[] nextTerms = new int[termKeys.length];
+				Arrays.fill(nextTerms, -1);
+				for (int term = termKeys.length - 1; term >= 0; term--) {
+					if (termStore.isRemoved(term))
+						continue;
+					Integer next = terms.put(termKeys[term], term);
+					if (next != null)
+						nextTerms[term] = next;
+				}
+
+				int numLocalVariables = 0;
+				for (int term = 0; term < termKeys.length; term++)
+					if (!termStore.isRemoved(term))
+						numLocalVariables = Math.max(numLocalVariables, termStore.getTermEnd(term));
+				double[] restoredX = new double[numLocalVariables];
+				double[] restoredY = new double[numLocalVariables];
+				boolean[] restoredTerms = new boolean[termKeys.length];
+
+				int numTerms = in.readInt();
+				for (int i = 0; i < numTerms; i++) {
+					long key = in.readLong();
+					int size = in.readInt();
+					Integer term = terms.get(key);
+					if (term != null && termStore.getTermEnd(term) - termStore.getTermStart(term) == size) {
+						if (nextTerms[term] == -1)
+							terms.remove(key);
+						else
+							terms.put(key, nextTerms[term]);
+						restoredTerms[term] = true;
+						for (int j = termStore.getTermStart(term); j < termStore.getTermEnd(term); j++) {
+							restoredX[j] = in.readDouble();
+							restoredY[j] = in.readDouble();
+						}
+					}
+					else if (in.skipBytes(size * 16) != size * 16)
+						throw new EOFException();
+				}
+
+				System.arraycopy(restoredZ, 0, reasoner.z, 0, restoredZ.length);
+				for (int term = 0; term < restoredTerms.length; term++) {
+					if (!restoredTerms[term])
+						continue;
+					for (int j = termStore.getTermStart(term); j < termStore.getTermEnd(term); j++) {
+						termStore.setX(j, restoredX[j]);
+						termStore.setY(j, restoredY[j]);
+					}
+				}
+				reasoner.stepSize = checkpointStepSize;
+				log.info("Resumed from checkpoint {} at iteration {}", file, checkpointIteration);
+				return checkpointIteration;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			log.warn("Could not read checkpoint " + file, e);
+			return -1;
+		}
+	}
+
+	/**
+	 * @return a 64-bit hash of a string, such as the name of an atom
+	 */
+	static long hash(String string) {
+		/* FNV-1a */
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < string.length(); i++) {
+			hash ^= string.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static long mix(long value) {
+		/* Finalizer of SplitMix64 */
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleCholeskyDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+
+/**
+ * Bounded, thread-safe cache of the Cholesky factors of the systems
+ * stepSize * I + 2 * weight * coeffs * coeffs^T solved by
+ * {@link SquaredHyperplaneTerm SquaredHyperplaneTerms}.
+ * <p>
+ * Factors are keyed by (coeffs, weight, stepSize), so the matrix is only
+ * built on a miss. The cache is split into stripes, each evicting its least
+ * recently used factors once it is full, so that terms on different threads
+ * rarely contend for the same lock.
+ */
+public class CholeskyCache {
+
+	private static final int NUM_STRIPES = 16;
+
+	private final Stripe[] stripes;
+	private final AtomicLong hits, misses;
+
+	/**
+	 * @param capacity  the maximum number of factors to keep
+	 */
+	public CholeskyCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive.");
+
+		stripes = new Stripe[NUM_STRIPES];
+		for (int i = 0; i < NUM_STRIPES; i++)
+			stripes[i] = new Stripe(capacity / NUM_STRIPES + (i < capacity % NUM_STRIPES ? 1 : 0));
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+	}
+
+	/**
+	 * Returns the lower-triangular Cholesky factor of
+	 * stepSize * I + 2 * weight * coeffs * coeffs^T, computing it if it is
+	 * not cached.
+	 * <p>
+	 * The cache keeps a reference to coeffs, which must not be modified
+	 * afterwards.
+	 */
+	public DoubleMatrix2D get(double[] coeffs, double weight, double stepSize) {
+		Key key = new Key(coeffs, weight, stepSize);
+		Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % NUM_STRIPES];
+
+		DoubleMatrix2D L;
+		synchronized (stripe) {
+			L = stripe.get(key);
+		}
+		if (L != null) {
+			hits.incrementAndGet();
+			return L;
+		}
+
+		/* Factors outside the lock, so concurrent misses may duplicate work */
+		misses.incrementAndGet();
+		int n = coeffs.length;
+		DoubleMatrix2D matrix = new DenseDoubleMatrix2D(n, n);
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double coeff = 2 * weight * coeffs[i] * coeffs[j];
+				if (i == j)
+					coeff += stepSize;
+				matrix.setQuick(i, j, coeff);
+			}
+		}
+		L = new DenseDoubleCholeskyDecomposition(matrix).getL();
+
+		synchronized (stripe) {
+			stripe.put(key, L);
+		}
+		return L;
+	}
+
+	/**
+	 * @return the number of lookups that found a cached factor
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that computed a factor
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of cached factors
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	private static class Stripe extends LinkedHashMap<Key, DoubleMatrix2D> {
+
+		private static final long serialVersionUID = 4380624011766470921L;
+		private final int capacity;
+
+		public Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, DoubleMatrix2D> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	private static class Key {
+
+		private final double[] coeffs;
+		private final double weight, stepSize;
+		private final int hashcode;
+
+		public Key(double[] coeffs, double weight, double stepSize) {
+			this.coeffs = coeffs;
+			this.weight = weight;
+			this.stepSize = stepSize;
+
+			int hash = Arrays.hashCode(coeffs);
+			long bits = Double.doubleToLongBits(weight);
+			hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+			bits = Double.doubleToLongBits(stepSize);
+			hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+			hashcode = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (other == this)
+				return true;
+			if (!(other instanceof Key))
+				return false;
+			Key key = (Key) other;
+			return hashcode == key.hashcode
+					&& Double.doubleToLongBits(weight) == Double.doubleToLongBits(key.weight)
+					&& Double.doubleToLongBits(stepSize) == Double.doubleToLongBits(key.stepSize)
+					&& Arrays.equals(coeffs, key.coeffs);
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the iterations of an {@link ADMMReasoner} on {@link ADMMWorker ADMMWorkers}
+ * in other processes, each of which optimizes a contiguous range of its terms.
+ * <p>
+ * The coordinator only updates the boundary variables, the consensus
+ * variables used by the terms of several workers, from the totals over
+ * their local copies that the workers send. Every other variable is updated
+ * by the one worker that uses it. The local variables and Lagrange
+ * multipliers stay with the workers until {@link #finish()}.
+ */
+class ConsensusCoordinator {
+
+	private final ADMMReasoner reasoner;
+	private final ConsensusTransport transport;
+	/** First term of each worker, with one extra entry for the end */
+	private final int[] termBounds;
+
+	/** Consensus variable of each variable of each worker */
+	private int[][] variables;
+	/** Boundary variables of each worker, in the order of the messages */
+	private int[][] boundaries;
+	/** Variables on the boundary of any worker */
+	private int[] boundary;
+	/* Totals over the local copies of each boundary variable, by consensus variable */
+	private final double[] sums, sumsX, sumsY;
+
+	/* Totals of the last checked iteration */
+	double primalSum, dualSum, AxNorm, BzNorm, AyNorm;
+	double lagrange, augmentedLagrange;
+
+	/**
+	 * @param termBounds  the first term of each worker, with one extra entry
+	 *                    for the end
+	 */
+	ConsensusCoordinator(ADMMReasoner reasoner, ConsensusTransport transport, int[] termBounds) {
+		if (!(reasoner.termStore instanceof AbstractFlatTermStore))
+			throw new IllegalArgumentException("Workers require an AbstractFlatTermStore.");
+		this.reasoner = reasoner;
+		this.transport = transport;
+		this.termBounds = termBounds;
+
+		sums = new double[reasoner.numConsensusVariables];
+		sumsX = new double[reasoner.numConsensusVariables];
+		sumsY = new double[reasoner.numConsensusVariables];
+	}
+
+	/**
+	 * Sends each worker its shard of the terms, the variables they use, and
+	 * their current state.
+	 */
+	void distribute() throws IOException {
+		AbstractFlatTermStore termStore = (AbstractFlatTermStore) reasoner.termStore;
+		int numWorkers = transport.getNumWorkers();
+		int numVariables = reasoner.numConsensusVariables;
+
+		/* Finds the variables of each worker, and how many workers use each */
+		int[] lastWorkers = new int[numVariables];
+		int[] numUsers = new int[numVariables];
+		Arrays.fill(lastWorkers, -1);
+		variables = new int[numWorkers][];
+		for (int worker = 0; worker < numWorkers; worker++) {
+			List<Integer> workerVariables = new ArrayList<Integer>();
+			for (int term = termBounds[worker]; term < termBounds[worker + 1]; term++) {
+				if (termStore.isRemoved(term))
+					continue;
+				for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++) {
+					int variable = termStore.getZIndex(i);
+					if (lastWorkers[variable] != worker) {
+						lastWorkers[variable] = worker;
+						numUsers[variable]++;
+						workerVariables.add(variable);
+					}
+				}
+			}
+			variables[worker] = toArray(workerVariables);
+		}
+
+		List<Integer> allBoundary = new ArrayList<Integer>();
+		for (int variable = 0; variable < numVariables; variable++)
+			if (numUsers[variable] > 1)
+				allBoundary.add(variable);
+		boundary = toArray(allBoundary);
+
+		int[] localIndices = new int[numVariables];
+		boundaries = new int[numWorkers][];
+		for (int worker = 0; worker < numWorkers; worker++) {
+			List<Integer> workerBoundary = new ArrayList<Integer>();
+			for (int i = 0; i < variables[worker].length; i++) {
+				localIndices[variables[worker][i]] = i;
+				if (numUsers[variables[worker][i]] > 1)
+					workerBoundary.add(variables[worker][i]);
+			}
+			boundaries[worker] = toArray(workerBoundary);
+			sendShard(worker, termStore, localIndices);
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	private void sendShard(int worker, AbstractFlatTermStore termStore, int[] localIndices) throws IOException {
+		DataOutputStream out = transport.getOutput(worker);
+		out.writeByte(ADMMWorker.SHARD);
+
+		out.writeInt(variables[worker].length);
+		for (int variable : variables[worker]) {
+			out.writeDouble(reasoner.z[variable]);
+			out.writeDouble(reasoner.lb[variable]);
+			out.writeDouble(reasoner.ub[variable]);
+		}
+		out.writeInt(boundaries[worker].length);
+		for (int variable : boundaries[worker])
+			out.writeInt(localIndices[variable]);
+
+		int numTerms = 0;
+		int numLocalVariables = 0;
+		for (int term = termBounds[worker]; term < termBounds[worker + 1]; term++) {
+			if (!termStore.isRemoved(term)) {
+				numTerms++;
+				numLocalVariables += termStore.getTermEnd(term) - termStore.getTermStart(term);
+			}
+		}
+		out.writeInt(numTerms);
+		out.writeInt(numLocalVariables);
+		for (int term = termBounds[worker]; term < termBounds[worker + 1]; term++) {
+			if (termStore.isRemoved(term))
+				continue;
+			out.writeByte(termStore.types[term]);
+			out.writeDouble(termStore.constants[term]);
+			out.writeDouble(termStore.weights[term]);
+			out.writeInt(termStore.getTermEnd(term) - termStore.getTermStart(term));
+			for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++) {
+				out.writeInt(localIndices[termStore.getZIndex(i)]);
+				out.writeDouble(termStore.getCoefficient(i));
+				out.writeDouble(termStore.getX(i));
+				out.writeDouble(termStore.getY(i));
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Runs an iteration on every worker and updates the boundary variables.
+	 *
+	 * @param check  whether to compute the residuals
+	 */
+	void iterate(boolean check) throws IOException {
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+		for (int worker = 0; worker < transport.getNumWorkers(); worker++) {
+			DataOutputStream out = transport.getOutput(worker);
+			out.writeByte(ADMMWorker.ITERATE);
+			out.writeDouble(stepSize);
+			out.writeBoolean(check);
+			for (int variable : boundaries[worker])
+				out.writeDouble(z[variable]);
+			out.flush();
+		}
+
+		double xx = 0.0, xy = 0.0;
+		if (check) {
+			primalSum = 0.0;
+			dualSum = 0.0;
+			AxNorm = 0.0;
+			BzNorm = 0.0;
+			AyNorm = 0.0;
+			lagrange = 0.0;
+			augmentedLagrange = 0.0;
+		}
+		for (int worker = 0; worker < transport.getNumWorkers(); worker++) {
+			DataInputStream in = transport.getInput(worker);
+			for (int variable : boundaries[worker])
+				sums[variable] += in.readDouble();
+			if (check) {
+				for (int variable : boundaries[worker]) {
+					sumsX[variable] += in.readDouble();
+					sumsY[variable] += in.readDouble();
+				}
+				primalSum += in.readDouble();
+				dualSum += in.readDouble();
+				AxNorm += in.readDouble();
+				BzNorm += in.readDouble();
+				AyNorm += in.readDouble();
+				lagrange += in.readDouble();
+				augmentedLagrange += in.readDouble();
+				xx += in.readDouble();
+				xy += in.readDouble();
+			}
+		}
+
+		/*
+		 * The residuals of the copies of a boundary variable follow from the
+		 * totals: sum (x - z)^2 = sum x^2 - 2 z sum x + n z^2 and
+		 * sum y (x - z) = sum xy - z sum y.
+		 */
+		double boundaryPrimal = xx;
+		double boundaryLagrange = xy;
+		for (int variable : boundary) {
+			int numCopies = reasoner.termStore.getConsensusEnd(variable) - reasoner.termStore.getConsensusStart(variable);
+			double newZ = sums[variable] / numCopies;
+			if (newZ < reasoner.lb[variable])
+				newZ = reasoner.lb[variable];
+			else if (newZ > reasoner.ub[variable])
+				newZ = reasoner.ub[variable];
+
+			if (check) {
+				double diff = z[variable] - newZ;
+				dualSum += diff * diff * numCopies;
+				BzNorm += newZ * newZ * numCopies;
+				boundaryPrimal += numCopies * newZ * newZ - 2 * newZ * sumsX[variable];
+				boundaryLagrange -= newZ * sumsY[variable];
+				sumsX[variable] = 0.0;
+				sumsY[variable] = 0.0;
+			}
+			z[variable] = newZ;
+			sums[variable] = 0.0;
+		}
+
+		if (check) {
+			/* Rounding can make a vanishing residual negative */
+			boundaryPrimal = Math.max(boundaryPrimal, 0.0);
+			primalSum += boundaryPrimal;
+			lagrange += boundaryLagrange;
+			augmentedLagrange += 0.5 * stepSize * boundaryPrimal;
+		}
+	}
+
+	/**
+	 * Collects the interior variables, local variables, and Lagrange
+	 * multipliers from the workers.
+	 */
+	void finish() throws IOException {
+		for (int worker = 0; worker < transport.getNumWorkers(); worker++) {
+			transport.getOutput(worker).writeByte(ADMMWorker.FINISH);
+			transport.getOutput(worker).flush();
+		}
+
+		ADMMTermStore termStore = reasoner.termStore;
+		boolean[] isBoundary = new boolean[reasoner.numConsensusVariables];
+		for (int variable : boundary)
+			isBoundary[variable] = true;
+		for (int worker = 0; worker < transport.getNumWorkers(); worker++) {
+			DataInputStream in = transport.getInput(worker);
+			for (int variable : variables[worker]) {
+				double value = in.readDouble();
+				if (!isBoundary[variable])
+					reasoner.z[variable] = value;
+			}
+			for (int term = termBounds[worker]; term < termBounds[worker + 1]; term++) {
+				if (termStore.isRemoved(term))
+					continue;
+				for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++) {
+					termStore.setX(i, in.readDouble());
+					termStore.setY(i, in.readDouble());
+				}
+			}
+		}
+	}
+}
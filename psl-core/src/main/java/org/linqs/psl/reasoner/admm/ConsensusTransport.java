@@ -0,0 +1,49 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Connections from an {@link ADMMReasoner} to the {@link ADMMWorker ADMMWorkers}
+ * that optimize shards of its terms in other processes.
+ * <p>
+ * Messages are written to the output of a worker and flushed by the
+ * reasoner, and each worker replies on its input, so the streams only need
+ * to be reliable and ordered.
+ */
+public interface ConsensusTransport {
+
+	/**
+	 * Connects to the workers, if not already connected.
+	 */
+	public void open() throws IOException;
+
+	public int getNumWorkers();
+
+	public DataInputStream getInput(int worker);
+
+	public DataOutputStream getOutput(int worker);
+
+	/**
+	 * Disconnects from the workers, which then wait for another reasoner.
+	 */
+	public void close() throws IOException;
+}
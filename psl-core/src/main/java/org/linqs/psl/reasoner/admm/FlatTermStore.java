@@ -0,0 +1,176 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+
+/**
+ * {@link AbstractFlatTermStore} that stores local variables, their Lagrange
+ * multipliers, and the coefficients of the terms in double precision.
+ */
+public class FlatTermStore extends AbstractFlatTermStore {
+
+	/* Per-local-variable data */
+	protected double[] x;
+	protected double[] y;
+	protected double[] coeffs;
+
+	public FlatTermStore(ADMMReasoner reasoner, int termCapacity, int localVariableCapacity) {
+		super(reasoner, termCapacity, localVariableCapacity);
+
+		x = new double[localZIndices.length];
+		y = new double[localZIndices.length];
+		coeffs = new double[localZIndices.length];
+	}
+
+	@Override
+	protected void setLocalVariable(int localVariable, double x, double y, double coeff) {
+		this.x[localVariable] = x;
+		this.y[localVariable] = y;
+		coeffs[localVariable] = coeff;
+	}
+
+	@Override
+	protected void growLocalVariables(int capacity) {
+		super.growLocalVariables(capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		coeffs = Arrays.copyOf(coeffs, capacity);
+	}
+
+	@Override
+	protected void moveTerm(int term, int newTerm, int start, int newStart, int size) {
+		super.moveTerm(term, newTerm, start, newStart, size);
+		System.arraycopy(x, start, x, newStart, size);
+		System.arraycopy(y, start, y, newStart, size);
+		System.arraycopy(coeffs, start, coeffs, newStart, size);
+	}
+
+	@Override
+	protected void permuteTerms(int[] termOrder, int[] localMap, int[] variableMap) {
+		super.permuteTerms(termOrder, localMap, variableMap);
+
+		double[] newX = new double[x.length];
+		double[] newY = new double[y.length];
+		double[] newCoeffs = new double[coeffs.length];
+		for (int i = 0; i < numLocalVariables; i++) {
+			newX[localMap[i]] = x[i];
+			newY[localMap[i]] = y[i];
+			newCoeffs[localMap[i]] = coeffs[i];
+		}
+		x = newX;
+		y = newY;
+		coeffs = newCoeffs;
+	}
+
+	@Override
+	protected double getCoefficient(int localVariable) {
+		return coeffs[localVariable];
+	}
+
+	@Override
+	public double getX(int localVariable) {
+		return x[localVariable];
+	}
+
+	@Override
+	public void setX(int localVariable, double value) {
+		x[localVariable] = value;
+	}
+
+	@Override
+	public double getY(int localVariable) {
+		return y[localVariable];
+	}
+
+	@Override
+	public void setY(int localVariable, double value) {
+		y[localVariable] = value;
+	}
+
+	@Override
+	public void resetLocalVariables(double[] z) {
+		for (int i = 0; i < numLocalVariables; i++) {
+			x[i] = z[localZIndices[i]];
+			y[i] = 0.0;
+		}
+	}
+
+	@Override
+	protected void updateLagrange(int start, int end, double stepSize, double[] z,
+			double relaxation, double[] previousZ) {
+		if (relaxation == 1.0) {
+			for (int i = start; i < end; i++)
+				y[i] += stepSize * (x[i] - z[localZIndices[i]]);
+		}
+		else {
+			for (int i = start; i < end; i++) {
+				double relaxedX = relaxation * x[i] + (1 - relaxation) * previousZ[localZIndices[i]];
+				y[i] += stepSize * (relaxedX - z[localZIndices[i]]);
+			}
+		}
+	}
+
+	@Override
+	protected double minimizeUnconstrained(int start, int end, double stepSize, double[] z) {
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			x[i] = z[localZIndices[i]] - y[i] / stepSize;
+			total += coeffs[i] * x[i];
+		}
+		return total;
+	}
+
+	@Override
+	protected double minimizeLinear(int term, int start, int end, double stepSize, double[] z) {
+		double weight = weights[term];
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			x[i] = z[localZIndices[i]] - y[i] / stepSize - weight * coeffs[i] / stepSize;
+			total += coeffs[i] * x[i];
+		}
+		return total;
+	}
+
+	@Override
+	protected void project(int term, int start, int end, double stepSize, double[] z) {
+		double multiplier = -constants[term];
+		for (int i = start; i < end; i++) {
+			x[i] = z[localZIndices[i]] - y[i] / stepSize;
+			multiplier += coeffs[i] * x[i];
+		}
+		multiplier /= squaredNorms[term];
+
+		for (int i = start; i < end; i++)
+			x[i] -= multiplier * coeffs[i];
+	}
+
+	@Override
+	protected void minimizeSquared(int term, int start, int end, double stepSize, double[] z) {
+		double weight = weights[term];
+		double coeffsDotB = 0.0;
+		for (int i = start; i < end; i++) {
+			x[i] = stepSize * z[localZIndices[i]] - y[i] + 2 * weight * coeffs[i] * constants[term];
+			coeffsDotB += coeffs[i] * x[i];
+		}
+
+		double multiplier = 2 * weight * coeffsDotB / (stepSize * (stepSize + 2 * weight * squaredNorms[term]));
+		for (int i = start; i < end; i++)
+			x[i] = x[i] / stepSize - multiplier * coeffs[i];
+	}
+}
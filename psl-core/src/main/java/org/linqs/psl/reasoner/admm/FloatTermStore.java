@@ -0,0 +1,190 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+
+/**
+ * {@link AbstractFlatTermStore} that stores local variables, their Lagrange
+ * multipliers, and the coefficients of the terms in single precision.
+ * <p>
+ * This takes 20 instead of 32 bytes per local variable, including the
+ * indices kept by {@link AbstractADMMTermStore}. Terms are still minimized
+ * in double precision, and each result is rounded once when it is stored.
+ * The consensus variables and the residuals remain in double precision,
+ * but the local variables can only agree with them to about 1e-7, so
+ * {@link ADMMReasoner#EPSILON_ABS_KEY} should not be set much lower than
+ * that.
+ */
+public class FloatTermStore extends AbstractFlatTermStore {
+
+	/* Per-local-variable data */
+	protected float[] x;
+	protected float[] y;
+	protected float[] coeffs;
+
+	public FloatTermStore(ADMMReasoner reasoner, int termCapacity, int localVariableCapacity) {
+		super(reasoner, termCapacity, localVariableCapacity);
+
+		x = new float[localZIndices.length];
+		y = new float[localZIndices.length];
+		coeffs = new float[localZIndices.length];
+	}
+
+	@Override
+	protected void setLocalVariable(int localVariable, double x, double y, double coeff) {
+		this.x[localVariable] = (float) x;
+		this.y[localVariable] = (float) y;
+		coeffs[localVariable] = (float) coeff;
+	}
+
+	@Override
+	protected void growLocalVariables(int capacity) {
+		super.growLocalVariables(capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		coeffs = Arrays.copyOf(coeffs, capacity);
+	}
+
+	@Override
+	protected void moveTerm(int term, int newTerm, int start, int newStart, int size) {
+		super.moveTerm(term, newTerm, start, newStart, size);
+		System.arraycopy(x, start, x, newStart, size);
+		System.arraycopy(y, start, y, newStart, size);
+		System.arraycopy(coeffs, start, coeffs, newStart, size);
+	}
+
+	@Override
+	protected void permuteTerms(int[] termOrder, int[] localMap, int[] variableMap) {
+		super.permuteTerms(termOrder, localMap, variableMap);
+
+		float[] newX = new float[x.length];
+		float[] newY = new float[y.length];
+		float[] newCoeffs = new float[coeffs.length];
+		for (int i = 0; i < numLocalVariables; i++) {
+			newX[localMap[i]] = x[i];
+			newY[localMap[i]] = y[i];
+			newCoeffs[localMap[i]] = coeffs[i];
+		}
+		x = newX;
+		y = newY;
+		coeffs = newCoeffs;
+	}
+
+	@Override
+	protected double getCoefficient(int localVariable) {
+		return coeffs[localVariable];
+	}
+
+	@Override
+	public double getX(int localVariable) {
+		return x[localVariable];
+	}
+
+	@Override
+	public void setX(int localVariable, double value) {
+		x[localVariable] = (float) value;
+	}
+
+	@Override
+	public double getY(int localVariable) {
+		return y[localVariable];
+	}
+
+	@Override
+	public void setY(int localVariable, double value) {
+		y[localVariable] = (float) value;
+	}
+
+	@Override
+	public void resetLocalVariables(double[] z) {
+		for (int i = 0; i < numLocalVariables; i++) {
+			x[i] = (float) z[localZIndices[i]];
+			y[i] = 0.0f;
+		}
+	}
+
+	@Override
+	protected void updateLagrange(int start, int end, double stepSize, double[] z,
+			double relaxation, double[] previousZ) {
+		if (relaxation == 1.0) {
+			for (int i = start; i < end; i++)
+				y[i] = (float) (y[i] + stepSize * (x[i] - z[localZIndices[i]]));
+		}
+		else {
+			for (int i = start; i < end; i++) {
+				double relaxedX = relaxation * x[i] + (1 - relaxation) * previousZ[localZIndices[i]];
+				y[i] = (float) (y[i] + stepSize * (relaxedX - z[localZIndices[i]]));
+			}
+		}
+	}
+
+	@Override
+	protected double minimizeUnconstrained(int start, int end, double stepSize, double[] z) {
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			double value = z[localZIndices[i]] - y[i] / stepSize;
+			x[i] = (float) value;
+			total += coeffs[i] * value;
+		}
+		return total;
+	}
+
+	@Override
+	protected double minimizeLinear(int term, int start, int end, double stepSize, double[] z) {
+		double weight = weights[term];
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			double value = z[localZIndices[i]] - y[i] / stepSize - weight * coeffs[i] / stepSize;
+			x[i] = (float) value;
+			total += coeffs[i] * value;
+		}
+		return total;
+	}
+
+	/*
+	 * The projection and the squared minimization recompute their
+	 * intermediate point instead of storing it, so that it is not rounded.
+	 */
+
+	@Override
+	protected void project(int term, int start, int end, double stepSize, double[] z) {
+		double multiplier = -constants[term];
+		for (int i = start; i < end; i++)
+			multiplier += coeffs[i] * (z[localZIndices[i]] - y[i] / stepSize);
+		multiplier /= squaredNorms[term];
+
+		for (int i = start; i < end; i++)
+			x[i] = (float) (z[localZIndices[i]] - y[i] / stepSize - multiplier * coeffs[i]);
+	}
+
+	@Override
+	protected void minimizeSquared(int term, int start, int end, double stepSize, double[] z) {
+		double weight = weights[term];
+		double constantTerm = 2 * weight * constants[term];
+		double coeffsDotB = 0.0;
+		for (int i = start; i < end; i++)
+			coeffsDotB += coeffs[i] * (stepSize * z[localZIndices[i]] - y[i] + constantTerm * coeffs[i]);
+
+		double multiplier = 2 * weight * coeffsDotB / (stepSize * (stepSize + 2 * weight * squaredNorms[term]));
+		for (int i = start; i < end; i++) {
+			double b = stepSize * z[localZIndices[i]] - y[i] + constantTerm * coeffs[i];
+			x[i] = (float) (b / stepSize - multiplier * coeffs[i]);
+		}
+	}
+}
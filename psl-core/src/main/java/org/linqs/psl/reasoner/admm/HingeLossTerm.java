@@ -27,7 +27,7 @@ package org.linqs.psl.reasoner.admm;
  */
 class HingeLossTerm extends HyperplaneTerm implements WeightedObjectiveTerm {
 	
-	private double weight;
+	protected double weight;
 	
 	HingeLossTerm(ADMMReasoner reasoner, int[] zIndices, double[] coeffs,
 			double constant, double weight) {
@@ -44,6 +44,9 @@ class HingeLossTerm extends HyperplaneTerm implements WeightedObjectiveTerm {
 	
 	@Override
 	protected void minimize() {
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+		
 		/* Initializes scratch data */
 		double total = 0.0;
 		
@@ -52,7 +55,7 @@ class HingeLossTerm extends HyperplaneTerm implements WeightedObjectiveTerm {
 		 * argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
 		 */
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[zIndices[i]] - y[i] / stepSize;
 			total += coeffs[i] * x[i];
 		}
 		
@@ -67,8 +70,8 @@ class HingeLossTerm extends HyperplaneTerm implements WeightedObjectiveTerm {
 		 */
 		total = 0.0;
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize;
-			x[i] -= weight * coeffs[i] / reasoner.stepSize;
+			x[i] = z[zIndices[i]] - y[i] / stepSize;
+			x[i] -= weight * coeffs[i] / stepSize;
 			total += coeffs[i] * x[i];
 		}
 		
@@ -65,29 +65,31 @@ abstract class HyperplaneTerm extends ADMMObjectiveTerm {
 	 * Stores the result in x.
 	 */
 	protected void project() {
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+		
 		if (x.length == 1) {
 			x[0] = constant / coeffs[0];
 		}
 		else if (x.length == 2) {
-			x[0] = reasoner.stepSize * reasoner.z.get(zIndices[0]) - y[0];
-			x[0] -= reasoner.stepSize * coeffs[0] / coeffs[1] * (-1 * constant / coeffs[1] + reasoner.z.get(zIndices[1]) - y[1]/reasoner.stepSize);
-			x[0] /= reasoner.stepSize * (1 + coeffs[0] * coeffs[0] / coeffs[1] / coeffs[1]);
+			x[0] = stepSize * z[zIndices[0]] - y[0];
+			x[0] -= stepSize * coeffs[0] / coeffs[1] * (-1 * constant / coeffs[1] + z[zIndices[1]] - y[1] / stepSize);
+			x[0] /= stepSize * (1 + coeffs[0] * coeffs[0] / coeffs[1] / coeffs[1]);
 			
 			x[1] = (constant - coeffs[0] * x[0]) / coeffs[1];
 		}
 		else {
-			double[] point = new double[x.length];
-			for (int i = 0; i < x.length; i++)
-				point[i] = reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize;
-			
 			/* For point (constant / coeffs[0], 0,...) in hyperplane dotted with unitNormal */
 			double multiplier = -1 * constant / coeffs[0] * unitNormal[0];
 			
-			for (int i = 0; i < x.length; i++)
-				multiplier += point[i] * unitNormal[i];
+			/* Projects z - y / stepSize in place in x */
+			for (int i = 0; i < x.length; i++) {
+				x[i] = z[zIndices[i]] - y[i] / stepSize;
+				multiplier += x[i] * unitNormal[i];
+			}
 			
 			for (int i = 0; i < x.length; i++)
-				x[i] = point[i] - multiplier * unitNormal[i];
+				x[i] -= multiplier * unitNormal[i];
 		}
 	}
 }
@@ -31,7 +31,7 @@ import org.linqs.psl.reasoner.function.FunctionComparator;
  */
 public class LinearConstraintTerm extends HyperplaneTerm {
 	
-	private final FunctionComparator comparator;
+	protected final FunctionComparator comparator;
 	
 	protected LinearConstraintTerm(ADMMReasoner reasoner, int[] zIndices, double[] coeffs,
 			double constant, FunctionComparator comparator) {
@@ -44,6 +44,9 @@ public class LinearConstraintTerm extends HyperplaneTerm {
 		/* If it's not an equality constraint, first tries to minimize without the constraint */
 		if (!comparator.equals(FunctionComparator.Equality)) {
 		
+			double stepSize = reasoner.stepSize;
+			double[] z = reasoner.z;
+			
 			/* Initializes scratch data */
 			double total = 0.0;
 			
@@ -52,7 +55,7 @@ public class LinearConstraintTerm extends HyperplaneTerm {
 			 * argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
 			 */
 			for (int i = 0; i < x.length; i++) {
-				x[i] = reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize;
+				x[i] = z[zIndices[i]] - y[i] / stepSize;
 				
 				total += coeffs[i] * x[i];
 			}
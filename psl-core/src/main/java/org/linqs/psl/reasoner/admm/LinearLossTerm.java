@@ -25,8 +25,8 @@ package org.linqs.psl.reasoner.admm;
  */
 class LinearLossTerm extends ADMMObjectiveTerm implements WeightedObjectiveTerm {
 	
-	private final double[] coeffs;
-	private double weight;
+	protected final double[] coeffs;
+	protected double weight;
 	
 	LinearLossTerm(ADMMReasoner reasoner, int[] zIndices, double[] coeffs, double weight) {
 		super(reasoner, zIndices);
@@ -41,9 +41,11 @@ class LinearLossTerm extends ADMMObjectiveTerm implements WeightedObjectiveTerm
 	
 	@Override
 	protected void minimize() {
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize;
-			x[i] -= weight * coeffs[i] / reasoner.stepSize;
+			x[i] = z[zIndices[i]] - y[i] / stepSize;
+			x[i] -= weight * coeffs[i] / stepSize;
 		}
 	}
 }
@@ -0,0 +1,189 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+
+/**
+ * Orders the consensus variables and terms of an indexed {@link ADMMTermStore}
+ * so that terms sharing variables are close together, which improves memory
+ * locality and keeps them in the same thread's share of the work.
+ * <p>
+ * The ordering is reverse Cuthill-McKee over the bipartite graph of terms and
+ * variables. Each connected component is traversed breadth first from a
+ * variable of lowest degree. When a term is reached, its unvisited variables
+ * are queued in order of increasing degree. Terms are ordered as they are
+ * reached and both orders are then reversed. Each term and each copy is
+ * visited once, and each term's variables are sorted, so the ordering takes
+ * time O(n log k) for n local variables and terms of at most k variables.
+ * <p>
+ * The terms and variables of each connected component end up contiguous, so
+ * the ordering also yields the components.
+ */
+public class LocalityOrdering {
+
+	private final int[] termOrder;
+	private final int[] variableMap;
+	private final int numComponents;
+	private final int[] componentTermStarts;
+	private final int[] componentVariableStarts;
+
+	/**
+	 * Computes the ordering of a term store with no removed terms.
+	 *
+	 * @param store  the indexed term store
+	 * @param numConsensusVariables  the number of consensus variables
+	 */
+	public LocalityOrdering(ADMMTermStore store, int numConsensusVariables) {
+		int numTerms = store.size();
+
+		/* Maps each local variable back to its term */
+		int[] localTerms = new int[store.getNumLocalVariables()];
+		for (int term = 0; term < numTerms; term++)
+			for (int i = store.getTermStart(term); i < store.getTermEnd(term); i++)
+				localTerms[i] = term;
+
+		/* Sorts the variables by degree, to start each component at a lowest-degree variable */
+		int[] degrees = new int[numConsensusVariables];
+		int maxDegree = 0;
+		for (int i = 0; i < numConsensusVariables; i++) {
+			degrees[i] = store.getConsensusEnd(i) - store.getConsensusStart(i);
+			maxDegree = Math.max(maxDegree, degrees[i]);
+		}
+		int[] degreeStarts = new int[maxDegree + 2];
+		for (int i = 0; i < numConsensusVariables; i++)
+			degreeStarts[degrees[i] + 1]++;
+		for (int i = 1; i < degreeStarts.length; i++)
+			degreeStarts[i] += degreeStarts[i - 1];
+		int[] byDegree = new int[numConsensusVariables];
+		for (int i = 0; i < numConsensusVariables; i++)
+			byDegree[degreeStarts[degrees[i]]++] = i;
+		/* Position of each variable in byDegree, which sorts like its degree */
+		int[] ranks = new int[numConsensusVariables];
+		for (int i = 0; i < numConsensusVariables; i++)
+			ranks[byDegree[i]] = i;
+
+		boolean[] visitedVariables = new boolean[numConsensusVariables];
+		boolean[] visitedTerms = new boolean[numTerms];
+		int[] variableOrder = new int[numConsensusVariables];
+		int[] order = new int[numTerms];
+		int numOrderedVariables = 0;
+		int numOrderedTerms = 0;
+		int[] termStarts = new int[numConsensusVariables + 1];
+		int[] variableStarts = new int[numConsensusVariables + 1];
+		int components = 0;
+
+		for (int root : byDegree) {
+			if (visitedVariables[root])
+				continue;
+
+			termStarts[components] = numOrderedTerms;
+			variableStarts[components] = numOrderedVariables;
+			components++;
+
+			visitedVariables[root] = true;
+			variableOrder[numOrderedVariables++] = root;
+
+			/* The ordered variables after the head form the queue */
+			for (int head = numOrderedVariables - 1; head < numOrderedVariables; head++) {
+				int variable = variableOrder[head];
+				for (int j = store.getConsensusStart(variable); j < store.getConsensusEnd(variable); j++) {
+					int term = localTerms[store.getLocalVariable(j)];
+					if (visitedTerms[term])
+						continue;
+
+					visitedTerms[term] = true;
+					order[numOrderedTerms++] = term;
+
+					/* Queues the term's unvisited variables by increasing degree, sorted by rank */
+					int first = numOrderedVariables;
+					for (int i = store.getTermStart(term); i < store.getTermEnd(term); i++) {
+						int neighbor = store.getZIndex(i);
+						if (visitedVariables[neighbor])
+							continue;
+
+						visitedVariables[neighbor] = true;
+						variableOrder[numOrderedVariables++] = ranks[neighbor];
+					}
+					Arrays.sort(variableOrder, first, numOrderedVariables);
+					for (int k = first; k < numOrderedVariables; k++)
+						variableOrder[k] = byDegree[variableOrder[k]];
+				}
+			}
+		}
+
+		/* Terms with no local variables are never reached */
+		for (int term = 0; term < numTerms; term++)
+			if (!visitedTerms[term])
+				order[numOrderedTerms++] = term;
+
+		termStarts[components] = numOrderedTerms;
+		variableStarts[components] = numOrderedVariables;
+
+		/* Reverses both orders and the components */
+		numComponents = components;
+		componentTermStarts = new int[numComponents + 1];
+		componentVariableStarts = new int[numComponents + 1];
+		for (int i = 0; i <= numComponents; i++) {
+			componentTermStarts[i] = numTerms - termStarts[numComponents - i];
+			componentVariableStarts[i] = numConsensusVariables - variableStarts[numComponents - i];
+		}
+
+		termOrder = new int[numTerms];
+		for (int i = 0; i < numTerms; i++)
+			termOrder[i] = order[numTerms - 1 - i];
+
+		variableMap = new int[numConsensusVariables];
+		for (int i = 0; i < numConsensusVariables; i++)
+			variableMap[variableOrder[i]] = numConsensusVariables - 1 - i;
+	}
+
+	/**
+	 * @return the current index of the term to place at each position
+	 */
+	public int[] getTermOrder() {
+		return termOrder;
+	}
+
+	/**
+	 * @return the new index of each consensus variable
+	 */
+	public int[] getVariableMap() {
+		return variableMap;
+	}
+
+	public int getNumComponents() {
+		return numComponents;
+	}
+
+	/**
+	 * @return the first new term index of each connected component, with one
+	 *         extra entry for the end
+	 */
+	public int[] getComponentTermStarts() {
+		return componentTermStarts;
+	}
+
+	/**
+	 * @return the first new consensus variable index of each connected
+	 *         component, with one extra entry for the end
+	 */
+	public int[] getComponentVariableStarts() {
+		return componentVariableStarts;
+	}
+}
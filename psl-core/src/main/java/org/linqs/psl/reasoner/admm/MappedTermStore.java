@@ -0,0 +1,263 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * {@link AbstractFlatTermStore} that stores local variables, their Lagrange
+ * multipliers, and the coefficients of the terms outside the heap, in
+ * memory-mapped files, so that models larger than the heap can be optimized.
+ * <p>
+ * Each local variable is a record of its value, Lagrange multiplier, and
+ * coefficient, and the records are laid out in term order in fixed-size
+ * segments, each mapped from its own temporary file. Since each worker
+ * minimizes a contiguous range of terms, it streams through a contiguous
+ * range of records every iteration, which the operating system can page in
+ * sequentially and evict when memory is short.
+ * <p>
+ * The consensus variables, the per-term data of AbstractFlatTermStore, and
+ * the indices kept by {@link AbstractADMMTermStore} (8 of the 32 bytes per
+ * local variable) stay on the heap.
+ * <p>
+ * Reordering the terms copies the records into a spare set of segments,
+ * which then swaps with the current one, so at most two sets are mapped
+ * however often the terms are reordered.
+ * <p>
+ * The temporary files are deleted as soon as they are mapped where the
+ * operating system allows it, and otherwise when the JVM exits. The mapped
+ * memory is released when the segments are garbage collected.
+ */
+public class MappedTermStore extends AbstractFlatTermStore {
+
+	/** Local variables per segment, as a power of two */
+	private static final int SEGMENT_BITS = 18;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/* Fields of each record */
+	private static final int X = 0;
+	private static final int Y = 1;
+	private static final int COEFF = 2;
+	private static final int RECORD_SIZE = 3;
+
+	private final File directory;
+	private DoubleBuffer[] segments;
+	/** Segments the records are copied into when the terms are reordered */
+	private DoubleBuffer[] spareSegments;
+
+	/**
+	 * @param directory  the directory in which to create the mapped files
+	 */
+	public MappedTermStore(ADMMReasoner reasoner, File directory, int termCapacity, int localVariableCapacity) {
+		super(reasoner, termCapacity, localVariableCapacity);
+		this.directory = directory;
+
+		segments = mapSegments(new DoubleBuffer[0], localZIndices.length);
+		spareSegments = new DoubleBuffer[0];
+	}
+
+	/**
+	 * @return segments extended with new segments until they can hold
+	 *         capacity local variables
+	 */
+	private DoubleBuffer[] mapSegments(DoubleBuffer[] segments, int capacity) {
+		int numSegments = (int) (((long) capacity + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+		if (numSegments <= segments.length)
+			return segments;
+
+		DoubleBuffer[] newSegments = Arrays.copyOf(segments, numSegments);
+		for (int i = segments.length; i < numSegments; i++)
+			newSegments[i] = mapSegment();
+		return newSegments;
+	}
+
+	private DoubleBuffer mapSegment() {
+		try {
+			File file = File.createTempFile("psl-admm-", ".terms", directory);
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				/* The mapping stays valid after the file is closed */
+				return randomAccessFile.getChannel()
+						.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_SIZE * RECORD_SIZE * 8)
+						.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			}
+			finally {
+				randomAccessFile.close();
+				if (!file.delete())
+					file.deleteOnExit();
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Could not map term storage in " + directory, e);
+		}
+	}
+
+	private double get(int localVariable, int field) {
+		return segments[localVariable >>> SEGMENT_BITS].get((localVariable & SEGMENT_MASK) * RECORD_SIZE + field);
+	}
+
+	private void put(int localVariable, int field, double value) {
+		segments[localVariable >>> SEGMENT_BITS].put((localVariable & SEGMENT_MASK) * RECORD_SIZE + field, value);
+	}
+
+	@Override
+	protected void setLocalVariable(int localVariable, double x, double y, double coeff) {
+		put(localVariable, X, x);
+		put(localVariable, Y, y);
+		put(localVariable, COEFF, coeff);
+	}
+
+	@Override
+	protected void growLocalVariables(int capacity) {
+		super.growLocalVariables(capacity);
+		segments = mapSegments(segments, capacity);
+	}
+
+	@Override
+	protected void moveTerm(int term, int newTerm, int start, int newStart, int size) {
+		super.moveTerm(term, newTerm, start, newStart, size);
+		/* Terms only move toward the front, so copying forward is safe */
+		for (int i = 0; i < size; i++)
+			setLocalVariable(newStart + i, get(start + i, X), get(start + i, Y), get(start + i, COEFF));
+	}
+
+	@Override
+	protected void permuteTerms(int[] termOrder, int[] localMap, int[] variableMap) {
+		super.permuteTerms(termOrder, localMap, variableMap);
+
+		DoubleBuffer[] oldSegments = segments;
+		spareSegments = mapSegments(spareSegments, oldSegments.length * SEGMENT_SIZE);
+		segments = spareSegments;
+		spareSegments = oldSegments;
+		for (int i = 0; i < numLocalVariables; i++) {
+			int offset = (i & SEGMENT_MASK) * RECORD_SIZE;
+			DoubleBuffer segment = oldSegments[i >>> SEGMENT_BITS];
+			setLocalVariable(localMap[i], segment.get(offset + X), segment.get(offset + Y),
+					segment.get(offset + COEFF));
+		}
+	}
+
+	@Override
+	protected double getCoefficient(int localVariable) {
+		return get(localVariable, COEFF);
+	}
+
+	@Override
+	public double getX(int localVariable) {
+		return get(localVariable, X);
+	}
+
+	@Override
+	public void setX(int localVariable, double value) {
+		put(localVariable, X, value);
+	}
+
+	@Override
+	public double getY(int localVariable) {
+		return get(localVariable, Y);
+	}
+
+	@Override
+	public void setY(int localVariable, double value) {
+		put(localVariable, Y, value);
+	}
+
+	@Override
+	public void resetLocalVariables(double[] z) {
+		for (int i = 0; i < numLocalVariables; i++) {
+			put(i, X, z[localZIndices[i]]);
+			put(i, Y, 0.0);
+		}
+	}
+
+	@Override
+	protected void updateLagrange(int start, int end, double stepSize, double[] z,
+			double relaxation, double[] previousZ) {
+		if (relaxation == 1.0) {
+			for (int i = start; i < end; i++)
+				put(i, Y, get(i, Y) + stepSize * (get(i, X) - z[localZIndices[i]]));
+		}
+		else {
+			for (int i = start; i < end; i++) {
+				double relaxedX = relaxation * get(i, X) + (1 - relaxation) * previousZ[localZIndices[i]];
+				put(i, Y, get(i, Y) + stepSize * (relaxedX - z[localZIndices[i]]));
+			}
+		}
+	}
+
+	@Override
+	protected double minimizeUnconstrained(int start, int end, double stepSize, double[] z) {
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			double x = z[localZIndices[i]] - get(i, Y) / stepSize;
+			put(i, X, x);
+			total += get(i, COEFF) * x;
+		}
+		return total;
+	}
+
+	@Override
+	protected double minimizeLinear(int term, int start, int end, double stepSize, double[] z) {
+		double weight = weights[term];
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			double coeff = get(i, COEFF);
+			double x = z[localZIndices[i]] - get(i, Y) / stepSize - weight * coeff / stepSize;
+			put(i, X, x);
+			total += coeff * x;
+		}
+		return total;
+	}
+
+	@Override
+	protected void project(int term, int start, int end, double stepSize, double[] z) {
+		double multiplier = -constants[term];
+		for (int i = start; i < end; i++) {
+			double x = z[localZIndices[i]] - get(i, Y) / stepSize;
+			put(i, X, x);
+			multiplier += get(i, COEFF) * x;
+		}
+		multiplier /= squaredNorms[term];
+
+		for (int i = start; i < end; i++)
+			put(i, X, get(i, X) - multiplier * get(i, COEFF));
+	}
+
+	@Override
+	protected void minimizeSquared(int term, int start, int end, double stepSize, double[] z) {
+		double weight = weights[term];
+		double coeffsDotB = 0.0;
+		for (int i = start; i < end; i++) {
+			double coeff = get(i, COEFF);
+			double b = stepSize * z[localZIndices[i]] - get(i, Y) + 2 * weight * coeff * constants[term];
+			put(i, X, b);
+			coeffsDotB += coeff * b;
+		}
+
+		double multiplier = 2 * weight * coeffsDotB / (stepSize * (stepSize + 2 * weight * squaredNorms[term]));
+		for (int i = start; i < end; i++)
+			put(i, X, get(i, X) / stepSize - multiplier * get(i, COEFF));
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link ADMMTermStore} that keeps each term as an {@link ADMMObjectiveTerm}
+ * object, which holds its own local variables.
+ * <p>
+ * Supports any subclass of ADMMObjectiveTerm.
+ */
+public class ObjectTermStore extends AbstractADMMTermStore {
+
+	protected final List<ADMMObjectiveTerm> terms;
+
+	/** Term holding each local variable */
+	protected ADMMObjectiveTerm[] localTerms;
+	/** Position of each local variable within its term */
+	protected int[] localPositions;
+
+	public ObjectTermStore(int termCapacity, int localVariableCapacity) {
+		super(termCapacity, localVariableCapacity);
+		terms = new ArrayList<ADMMObjectiveTerm>(termCapacity);
+		localTerms = new ADMMObjectiveTerm[localZIndices.length];
+		localPositions = new int[localZIndices.length];
+	}
+
+	@Override
+	public int add(ADMMObjectiveTerm term) {
+		int start = numLocalVariables;
+		int index = addTerm(term.zIndices);
+
+		for (int i = 0; i < term.zIndices.length; i++) {
+			localTerms[start + i] = term;
+			localPositions[start + i] = i;
+		}
+
+		terms.add(term);
+		return index;
+	}
+
+	@Override
+	protected void growLocalVariables(int capacity) {
+		super.growLocalVariables(capacity);
+		localTerms = Arrays.copyOf(localTerms, capacity);
+		localPositions = Arrays.copyOf(localPositions, capacity);
+	}
+
+	@Override
+	protected void moveTerm(int term, int newTerm, int start, int newStart, int size) {
+		super.moveTerm(term, newTerm, start, newStart, size);
+		terms.set(newTerm, terms.get(term));
+		System.arraycopy(localTerms, start, localTerms, newStart, size);
+		System.arraycopy(localPositions, start, localPositions, newStart, size);
+	}
+
+	@Override
+	protected void permuteTerms(int[] termOrder, int[] localMap, int[] variableMap) {
+		super.permuteTerms(termOrder, localMap, variableMap);
+
+		List<ADMMObjectiveTerm> oldTerms = new ArrayList<ADMMObjectiveTerm>(terms);
+		for (int newTerm = 0; newTerm < numTerms; newTerm++) {
+			ADMMObjectiveTerm term = oldTerms.get(termOrder[newTerm]);
+			for (int i = 0; i < term.zIndices.length; i++)
+				term.zIndices[i] = variableMap[term.zIndices[i]];
+			terms.set(newTerm, term);
+		}
+
+		ADMMObjectiveTerm[] newLocalTerms = new ADMMObjectiveTerm[localTerms.length];
+		int[] newLocalPositions = new int[localPositions.length];
+		for (int i = 0; i < numLocalVariables; i++) {
+			newLocalTerms[localMap[i]] = localTerms[i];
+			newLocalPositions[localMap[i]] = localPositions[i];
+		}
+		localTerms = newLocalTerms;
+		localPositions = newLocalPositions;
+	}
+
+	@Override
+	public int[] compact(int numConsensusVariables) {
+		int oldNumLocalVariables = numLocalVariables;
+		int[] termMap = super.compact(numConsensusVariables);
+
+		/* Releases the removed terms */
+		terms.subList(numTerms, terms.size()).clear();
+		Arrays.fill(localTerms, numLocalVariables, oldNumLocalVariables, null);
+
+		return termMap;
+	}
+
+	public ADMMObjectiveTerm getTerm(int term) {
+		return terms.get(term);
+	}
+
+	/**
+	 * @return the term holding the local variable
+	 */
+	public ADMMObjectiveTerm getLocalVariableTerm(int localVariable) {
+		return localTerms[localVariable];
+	}
+
+	@Override
+	public double getX(int localVariable) {
+		return localTerms[localVariable].x[localPositions[localVariable]];
+	}
+
+	@Override
+	public void setX(int localVariable, double value) {
+		localTerms[localVariable].x[localPositions[localVariable]] = value;
+	}
+
+	@Override
+	public double getY(int localVariable) {
+		return localTerms[localVariable].y[localPositions[localVariable]];
+	}
+
+	@Override
+	public void setY(int localVariable, double value) {
+		localTerms[localVariable].y[localPositions[localVariable]] = value;
+	}
+
+	@Override
+	public void minimize(int term) {
+		terms.get(term).updateLagrange().minimize();
+	}
+
+	@Override
+	public void resetLocalVariables(double[] z) {
+		for (int term = 0; term < numTerms; term++) {
+			if (removed[term])
+				continue;
+
+			ADMMObjectiveTerm objectiveTerm = terms.get(term);
+			for (int i = 0; i < objectiveTerm.x.length; i++) {
+				objectiveTerm.x[i] = z[objectiveTerm.zIndices[i]];
+				objectiveTerm.y[i] = 0.0;
+			}
+		}
+	}
+
+	@Override
+	public void setWeight(int term, double weight) {
+		((WeightedObjectiveTerm) terms.get(term)).setWeight(weight);
+	}
+
+	@Override
+	public long hashDefinition(int term) {
+		return AbstractFlatTermStore.hashDefinition(terms.get(term));
+	}
+}
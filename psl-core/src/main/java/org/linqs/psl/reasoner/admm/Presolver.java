@@ -0,0 +1,461 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simplifies the terms of an {@link ADMMReasoner} before they are added to
+ * its term store.
+ * <p>
+ * Until no more reductions apply, the presolver
+ * <ul>
+ * <li>substitutes fixed variables into the constants of the terms,</li>
+ * <li>turns constraints on a single variable into bounds on it, fixing it if
+ * they coincide,</li>
+ * <li>drops terms that are zero, and constraints that are satisfied,
+ * everywhere within the variable bounds,</li>
+ * <li>turns hinge-loss terms that are active everywhere within the variable
+ * bounds into linear-loss terms, and</li>
+ * <li>fixes variables on which every term is nondecreasing (nonincreasing)
+ * to their lower (upper) bounds, which is optimal since weights are
+ * non-negative.</li>
+ * </ul>
+ * Fixed variables keep no local copies in the rewritten terms, so the
+ * consensus value the presolver sets for them is the value the reasoner
+ * writes back to their atoms.
+ * <p>
+ * Only the term types that {@link AbstractFlatTermStore} supports are
+ * rewritten. Other terms keep all their variables, and fixed variables among
+ * them are held at their values by their bounds.
+ */
+class Presolver {
+
+	private static final Logger log = LoggerFactory.getLogger(Presolver.class);
+
+	/** Type of terms that the presolver cannot rewrite */
+	private static final byte OTHER = -1;
+
+	/** Direction of a term that is not monotone in a variable */
+	private static final int NOT_MONOTONE = 2;
+
+	/** Tolerance for bounds that contradict each other */
+	private static final double TOLERANCE = 1e-9;
+
+	private final ADMMReasoner reasoner;
+	private final double[] z, lb, ub;
+	private final int numVariables;
+
+	private byte[] types;
+	private int[][] zIndices;
+	private double[][] coeffs;
+	private double[] constants, weights;
+	private boolean[] dropped, rewritten, infeasible;
+
+	private boolean[] fixed;
+	/** Terms of each variable, in CSR form */
+	private int[] variableStarts, variableTerms;
+
+	private Queue<Integer> termQueue, variableQueue;
+	private boolean[] termQueued, variableQueued;
+
+	private int numFixed, numBounded, numDropped, numInfeasible;
+
+	Presolver(ADMMReasoner reasoner) {
+		this.reasoner = reasoner;
+		z = reasoner.z;
+		lb = reasoner.lb;
+		ub = reasoner.ub;
+		numVariables = reasoner.numConsensusVariables;
+	}
+
+	/**
+	 * Simplifies terms in place, replacing rewritten terms and setting
+	 * dropped terms to null. Updates the consensus variables and bounds of
+	 * the reasoner.
+	 */
+	void presolve(ADMMObjectiveTerm[] terms) {
+		init(terms);
+
+		while (!termQueue.isEmpty() || !variableQueue.isEmpty()) {
+			if (!termQueue.isEmpty()) {
+				int term = termQueue.poll();
+				termQueued[term] = false;
+				reduce(term);
+			}
+			else {
+				int variable = variableQueue.poll();
+				variableQueued[variable] = false;
+				fixDominated(variable);
+			}
+		}
+
+		int numRewritten = 0;
+		for (int term = 0; term < terms.length; term++) {
+			if (dropped[term])
+				terms[term] = null;
+			else if (rewritten[term]) {
+				terms[term] = rebuild(term);
+				numRewritten++;
+			}
+		}
+
+		log.debug("Presolve fixed {} variables, bounded {} more, dropped {} terms, and rewrote {} terms",
+				numFixed, numBounded, numDropped, numRewritten);
+		if (numInfeasible > 0)
+			log.warn("Presolve found {} constraints that cannot be satisfied within the variable bounds",
+					numInfeasible);
+	}
+
+	private void init(ADMMObjectiveTerm[] terms) {
+		int numTerms = terms.length;
+		types = new byte[numTerms];
+		zIndices = new int[numTerms][];
+		coeffs = new double[numTerms][];
+		constants = new double[numTerms];
+		weights = new double[numTerms];
+		dropped = new boolean[numTerms];
+		rewritten = new boolean[numTerms];
+		infeasible = new boolean[numTerms];
+
+		for (int term = 0; term < numTerms; term++)
+			read(term, terms[term]);
+
+		/* Indexes the terms of each variable */
+		fixed = new boolean[numVariables];
+		variableStarts = new int[numVariables + 1];
+		for (int term = 0; term < numTerms; term++)
+			for (int zIndex : zIndices[term])
+				variableStarts[zIndex + 1]++;
+		for (int i = 0; i < numVariables; i++)
+			variableStarts[i + 1] += variableStarts[i];
+		variableTerms = new int[variableStarts[numVariables]];
+		int[] next = new int[numVariables];
+		for (int term = 0; term < numTerms; term++)
+			for (int zIndex : zIndices[term])
+				variableTerms[variableStarts[zIndex] + next[zIndex]++] = term;
+
+		termQueue = new ArrayDeque<Integer>(numTerms);
+		termQueued = new boolean[numTerms];
+		for (int term = 0; term < numTerms; term++)
+			queueTerm(term);
+		variableQueue = new ArrayDeque<Integer>(numVariables);
+		variableQueued = new boolean[numVariables];
+		for (int i = 0; i < numVariables; i++)
+			queueVariable(i);
+
+		numFixed = 0;
+		numBounded = 0;
+		numDropped = 0;
+		numInfeasible = 0;
+	}
+
+	private void read(int term, ADMMObjectiveTerm objectiveTerm) {
+		zIndices[term] = objectiveTerm.zIndices;
+		Class<?> type = objectiveTerm.getClass();
+		if (type == LinearConstraintTerm.class) {
+			LinearConstraintTerm constraint = (LinearConstraintTerm) objectiveTerm;
+			if (constraint.comparator.equals(FunctionComparator.Equality))
+				types[term] = AbstractFlatTermStore.EQUALITY_CONSTRAINT;
+			else if (constraint.comparator.equals(FunctionComparator.SmallerThan))
+				types[term] = AbstractFlatTermStore.SMALLER_THAN_CONSTRAINT;
+			else
+				types[term] = AbstractFlatTermStore.LARGER_THAN_CONSTRAINT;
+			coeffs[term] = constraint.coeffs;
+			constants[term] = constraint.constant;
+		}
+		else if (type == LinearLossTerm.class) {
+			types[term] = AbstractFlatTermStore.LINEAR_LOSS;
+			coeffs[term] = ((LinearLossTerm) objectiveTerm).coeffs;
+			weights[term] = ((LinearLossTerm) objectiveTerm).weight;
+		}
+		else if (type == HingeLossTerm.class) {
+			types[term] = AbstractFlatTermStore.HINGE_LOSS;
+			coeffs[term] = ((HingeLossTerm) objectiveTerm).coeffs;
+			constants[term] = ((HingeLossTerm) objectiveTerm).constant;
+			weights[term] = ((HingeLossTerm) objectiveTerm).weight;
+		}
+		else if (type == SquaredLinearLossTerm.class || type == SquaredHingeLossTerm.class) {
+			types[term] = (type == SquaredLinearLossTerm.class)
+					? AbstractFlatTermStore.SQUARED_LINEAR_LOSS : AbstractFlatTermStore.SQUARED_HINGE_LOSS;
+			coeffs[term] = ((SquaredHyperplaneTerm) objectiveTerm).coeffs;
+			constants[term] = ((SquaredHyperplaneTerm) objectiveTerm).constant;
+			weights[term] = ((SquaredHyperplaneTerm) objectiveTerm).weight;
+		}
+		else
+			types[term] = OTHER;
+	}
+
+	private ADMMObjectiveTerm rebuild(int term) {
+		return AbstractFlatTermStore.createTerm(reasoner, types[term], zIndices[term], coeffs[term],
+				constants[term], weights[term]);
+	}
+
+	/**
+	 * Applies the reductions of a single term.
+	 */
+	private void reduce(int term) {
+		if (dropped[term] || types[term] == OTHER)
+			return;
+
+		substitute(term);
+		byte type = types[term];
+		int size = zIndices[term].length;
+		double constant = constants[term];
+
+		if (type >= AbstractFlatTermStore.EQUALITY_CONSTRAINT) {
+			if (size == 0) {
+				if (!isSatisfied(type, 0.0, constant))
+					markInfeasible(term);
+				drop(term);
+			}
+			else if (size == 1) {
+				if (bound(term))
+					drop(term);
+				else
+					markInfeasible(term);
+			}
+			else if ((type == AbstractFlatTermStore.SMALLER_THAN_CONSTRAINT && max(term) <= constant)
+					|| (type == AbstractFlatTermStore.LARGER_THAN_CONSTRAINT && min(term) >= constant))
+				drop(term);
+		}
+		else if (size == 0)
+			drop(term);
+		else if (type == AbstractFlatTermStore.HINGE_LOSS || type == AbstractFlatTermStore.SQUARED_HINGE_LOSS) {
+			if (max(term) <= constant)
+				drop(term);
+			else if (min(term) >= constant) {
+				/* The constant of a linear loss only offsets the objective */
+				types[term] = (type == AbstractFlatTermStore.HINGE_LOSS)
+						? AbstractFlatTermStore.LINEAR_LOSS : AbstractFlatTermStore.SQUARED_LINEAR_LOSS;
+				rewritten[term] = true;
+				queueVariables(term);
+			}
+		}
+	}
+
+	/**
+	 * Removes the fixed variables, and those with zero coefficients, from a
+	 * term, moving their contributions into its constant.
+	 */
+	private void substitute(int term) {
+		int[] termZIndices = zIndices[term];
+		double[] termCoeffs = coeffs[term];
+
+		int size = 0;
+		for (int i = 0; i < termZIndices.length; i++)
+			if (!fixed[termZIndices[i]] && termCoeffs[i] != 0.0)
+				size++;
+		if (size == termZIndices.length)
+			return;
+
+		int[] newZIndices = new int[size];
+		double[] newCoeffs = new double[size];
+		double constant = constants[term];
+		int j = 0;
+		for (int i = 0; i < termZIndices.length; i++) {
+			if (!fixed[termZIndices[i]] && termCoeffs[i] != 0.0) {
+				newZIndices[j] = termZIndices[i];
+				newCoeffs[j] = termCoeffs[i];
+				j++;
+			}
+			else
+				constant -= termCoeffs[i] * z[termZIndices[i]];
+		}
+
+		zIndices[term] = newZIndices;
+		coeffs[term] = newCoeffs;
+		constants[term] = constant;
+		rewritten[term] = true;
+	}
+
+	/**
+	 * Turns a constraint on a single variable into bounds on it.
+	 *
+	 * @return false if the bounds contradict those the variable already has
+	 */
+	private boolean bound(int term) {
+		byte type = types[term];
+		int variable = zIndices[term][0];
+		double coeff = coeffs[term][0];
+		double value = constants[term] / coeff;
+
+		double newLb = lb[variable];
+		double newUb = ub[variable];
+		if (type == AbstractFlatTermStore.EQUALITY_CONSTRAINT
+				|| (type == AbstractFlatTermStore.SMALLER_THAN_CONSTRAINT) == (coeff < 0))
+			newLb = Math.max(newLb, value);
+		if (type == AbstractFlatTermStore.EQUALITY_CONSTRAINT
+				|| (type == AbstractFlatTermStore.SMALLER_THAN_CONSTRAINT) == (coeff > 0))
+			newUb = Math.min(newUb, value);
+
+		if (newLb > newUb + TOLERANCE)
+			return false;
+		if (newLb >= newUb) {
+			fix(variable, (newLb + newUb) / 2);
+			return true;
+		}
+
+		if (newLb != lb[variable] || newUb != ub[variable]) {
+			lb[variable] = newLb;
+			ub[variable] = newUb;
+			z[variable] = Math.min(Math.max(z[variable], newLb), newUb);
+			numBounded++;
+			queueTerms(variable);
+		}
+		return true;
+	}
+
+	/**
+	 * Fixes a variable that every term pushes toward the same bound.
+	 */
+	private void fixDominated(int variable) {
+		if (fixed[variable])
+			return;
+
+		int direction = 0;
+		for (int i = variableStarts[variable]; i < variableStarts[variable + 1]; i++) {
+			int term = variableTerms[i];
+			if (dropped[term])
+				continue;
+
+			int termDirection = getDirection(term, variable);
+			if (termDirection == 0)
+				continue;
+			if (termDirection == NOT_MONOTONE || (direction != 0 && termDirection != direction))
+				return;
+			direction = termDirection;
+		}
+
+		if (direction > 0)
+			fix(variable, lb[variable]);
+		else if (direction < 0)
+			fix(variable, ub[variable]);
+	}
+
+	/**
+	 * @return 1 if decreasing the variable never increases the term or
+	 *         violates the constraint, -1 if increasing it never does,
+	 *         0 if the term no longer depends on it, and NOT_MONOTONE otherwise
+	 */
+	private int getDirection(int term, int variable) {
+		byte type = types[term];
+		if (type == OTHER)
+			return NOT_MONOTONE;
+
+		double coeff = 0.0;
+		for (int i = 0; i < zIndices[term].length; i++)
+			if (zIndices[term][i] == variable)
+				coeff = coeffs[term][i];
+		if (coeff == 0.0)
+			return 0;
+		if (type == AbstractFlatTermStore.SQUARED_LINEAR_LOSS || type == AbstractFlatTermStore.EQUALITY_CONSTRAINT)
+			return NOT_MONOTONE;
+
+		int direction = (coeff > 0) ? 1 : -1;
+		return (type == AbstractFlatTermStore.LARGER_THAN_CONSTRAINT) ? -direction : direction;
+	}
+
+	private void fix(int variable, double value) {
+		fixed[variable] = true;
+		lb[variable] = value;
+		ub[variable] = value;
+		z[variable] = value;
+		numFixed++;
+		queueTerms(variable);
+	}
+
+	/** Counts each constraint that cannot be satisfied once, however often it is reduced */
+	private void markInfeasible(int term) {
+		if (!infeasible[term]) {
+			infeasible[term] = true;
+			numInfeasible++;
+		}
+	}
+
+	private void drop(int term) {
+		dropped[term] = true;
+		numDropped++;
+		queueVariables(term);
+	}
+
+	/**
+	 * @return the minimum of coeffs^T * x within the variable bounds
+	 */
+	private double min(int term) {
+		double total = 0.0;
+		for (int i = 0; i < zIndices[term].length; i++) {
+			double coeff = coeffs[term][i];
+			total += coeff * ((coeff > 0) ? lb[zIndices[term][i]] : ub[zIndices[term][i]]);
+		}
+		return total;
+	}
+
+	/**
+	 * @return the maximum of coeffs^T * x within the variable bounds
+	 */
+	private double max(int term) {
+		double total = 0.0;
+		for (int i = 0; i < zIndices[term].length; i++) {
+			double coeff = coeffs[term][i];
+			total += coeff * ((coeff > 0) ? ub[zIndices[term][i]] : lb[zIndices[term][i]]);
+		}
+		return total;
+	}
+
+	private static boolean isSatisfied(byte type, double total, double constant) {
+		switch (type) {
+		case AbstractFlatTermStore.EQUALITY_CONSTRAINT:
+			return Math.abs(total - constant) <= TOLERANCE;
+		case AbstractFlatTermStore.SMALLER_THAN_CONSTRAINT:
+			return total <= constant + TOLERANCE;
+		default:
+			return total >= constant - TOLERANCE;
+		}
+	}
+
+	private void queueTerm(int term) {
+		if (!termQueued[term]) {
+			termQueued[term] = true;
+			termQueue.add(term);
+		}
+	}
+
+	private void queueTerms(int variable) {
+		for (int i = variableStarts[variable]; i < variableStarts[variable + 1]; i++)
+			queueTerm(variableTerms[i]);
+	}
+
+	private void queueVariable(int variable) {
+		if (!fixed[variable] && !variableQueued[variable]) {
+			variableQueued[variable] = true;
+			variableQueue.add(variable);
+		}
+	}
+
+	/** Queues the remaining variables of a term, whose directions may have changed */
+	private void queueVariables(int term) {
+		for (int zIndex : zIndices[term])
+			queueVariable(zIndex);
+	}
+}
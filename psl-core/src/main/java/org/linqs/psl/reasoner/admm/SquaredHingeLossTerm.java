@@ -32,6 +32,9 @@ class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
 
 	@Override
 	protected void minimize() {
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+		
 		/* Initializes scratch data */
 		double total = 0.0;
 		
@@ -40,7 +43,7 @@ class SquaredHingeLossTerm extends SquaredHyperplaneTerm {
 		 * argmin stepSize/2 * \|x - z + y / stepSize \|_2^2
 		 */
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize;
+			x[i] = z[zIndices[i]] - y[i] / stepSize;
 			total += coeffs[i] * x[i];
 		}
 		
@@ -17,14 +17,7 @@
  */
 package org.linqs.psl.reasoner.admm;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.apache.commons.lang3.builder.HashCodeBuilder;
-
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleCholeskyDecomposition;
-import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 
 /**
  * Objective term for an {@link ADMMReasoner} that is based on a squared
@@ -40,9 +33,11 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 	protected final double[] coeffs;
 	protected final double constant;
 	protected double weight;
+	/* coeffs^T * coeffs */
+	private final double squaredNorm;
 	private DoubleMatrix2D L;
-	
-	static Map<DenseDoubleMatrix2DWithHashcode, DoubleMatrix2D> lCache = new HashMap<DenseDoubleMatrix2DWithHashcode, DoubleMatrix2D>();
+	/* Step size L was computed for */
+	private double lStepSize;
 	
 	SquaredHyperplaneTerm(ADMMReasoner reasoner, int[] zIndices, double[] coeffs,
 			double constant, double weight) {
@@ -50,45 +45,24 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 		
 		this.coeffs = coeffs;
 		this.constant = constant;
+		double squaredNorm = 0.0;
+		for (int i = 0; i < coeffs.length; i++)
+			squaredNorm += coeffs[i] * coeffs[i];
+		this.squaredNorm = squaredNorm;
 		if (weight < 0.0)
 			throw new IllegalArgumentException("Only non-negative weights are supported.");
 		setWeight(weight);
-		
-		if (x.length >= 3) {
-			computeL();
-		}
-		else
-			L = null;
 	}
 	
 	private void computeL() {
-		double coeff;
-		DenseDoubleMatrix2DWithHashcode matrix = new DenseDoubleMatrix2DWithHashcode(x.length, x.length);
-		for (int i = 0; i < x.length; i++) {
-			for (int j = 0; j < x.length; j++) {
-				if (i == j) {
-					coeff = 2 * weight * coeffs[i] * coeffs[i] + reasoner.stepSize;
-					matrix.setQuick(i, i, coeff);
-				}
-				else {
-					coeff = 2 * weight * coeffs[i] * coeffs[j];
-					matrix.setQuick(i, j, coeff);
-					matrix.setQuick(j, i, coeff);
-				}
-			}
-		}
-		
-		L = lCache.get(matrix);
-		if (L == null) {
-			L = new DenseDoubleCholeskyDecomposition(matrix).getL();
-			lCache.put(matrix, L);
-		}
+		L = reasoner.choleskyCache.get(coeffs, weight, reasoner.stepSize);
+		lStepSize = reasoner.stepSize;
 	}
 	
 	@Override
 	public void setWeight(double weight) {
 		this.weight = weight;
-		if (x.length >= 3)
+		if (x.length >= 3 && reasoner.cholesky)
 			computeL();
 	}
 	
@@ -99,19 +73,22 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 	 * Stores the result in x.
 	 */
 	protected void minWeightedSquaredHyperplane() {
+		double stepSize = reasoner.stepSize;
+		double[] z = reasoner.z;
+		
 		/* Constructs constant term in the gradient (moved to right-hand side) */
 		for (int i = 0; i < x.length; i++) {
-			x[i] = reasoner.stepSize * (reasoner.z.get(zIndices[i]) - y[i] / reasoner.stepSize);
+			x[i] = stepSize * z[zIndices[i]] - y[i];
 			x[i] += 2 * weight * coeffs[i] * constant;
 		}
 		
 		/* Solves for x */
 		if (x.length == 1) {
-			x[0] /= 2 * weight * coeffs[0] * coeffs[0] + reasoner.stepSize;
+			x[0] /= 2 * weight * coeffs[0] * coeffs[0] + stepSize;
 		}
 		else if (x.length == 2) {
-			double a0 = 2 * weight * coeffs[0] * coeffs[0] + reasoner.stepSize;
-			double b1 = 2 * weight * coeffs[1] * coeffs[1] + reasoner.stepSize;
+			double a0 = 2 * weight * coeffs[0] * coeffs[0] + stepSize;
+			double b1 = 2 * weight * coeffs[1] * coeffs[1] + stepSize;
 			double a1b0 = 2 * weight * coeffs[0] * coeffs[1];
 			
 			x[1] -= a1b0 * x[0] / a0;
@@ -120,7 +97,23 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 			x[0] -= a1b0 * x[1];
 			x[0] /= a0;
 		}
+		else if (!reasoner.cholesky) {
+			/*
+			 * The system is (stepSize * I + 2 * weight * coeffs * coeffs^T) x = b,
+			 * so by the Sherman-Morrison formula
+			 * x = b / stepSize - 2 * weight * (coeffs^T * b) / (stepSize * (stepSize + 2 * weight * coeffs^T * coeffs)) * coeffs
+			 */
+			double coeffsDotB = 0.0;
+			for (int i = 0; i < x.length; i++)
+				coeffsDotB += coeffs[i] * x[i];
+			double multiplier = 2 * weight * coeffsDotB / (stepSize * (stepSize + 2 * weight * squaredNorm));
+			for (int i = 0; i < x.length; i++)
+				x[i] = x[i] / stepSize - multiplier * coeffs[i];
+		}
 		else {
+			if (lStepSize != stepSize)
+				computeL();
+
 			/* Fast system solve */
 			for (int i = 0; i < x.length; i++) {
 				for (int j = 0; j < i; j++) {
@@ -136,36 +129,4 @@ abstract class SquaredHyperplaneTerm extends ADMMObjectiveTerm implements Weight
 			}
 		}
 	}
-	
-	private class DenseDoubleMatrix2DWithHashcode extends DenseDoubleMatrix2D {
-		
-		private static final long serialVersionUID = -8102931034927566306L;
-		private boolean needsNewHashcode;
-		private int hashcode = 0;
-
-		public DenseDoubleMatrix2DWithHashcode(int rows, int columns) {
-			super(rows, columns);
-			needsNewHashcode = true;
-		}
-		
-		@Override
-		public void setQuick(int row, int column, double value) {
-			needsNewHashcode = true;
-			super.setQuick(row, column, value);
-		}
-		
-		@Override
-		public int hashCode() {
-			if (needsNewHashcode) {
-				HashCodeBuilder builder = new HashCodeBuilder();
-				for (int i = 0; i < rows(); i++)
-					for (int j = 0; j < columns(); j++)
-						builder.append(getQuick(i, j));
-				
-				hashcode = builder.toHashCode();
-				needsNewHashcode = false;
-			}
-			return hashcode;
-		}
-	}
 }
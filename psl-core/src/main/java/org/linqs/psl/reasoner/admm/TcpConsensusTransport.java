@@ -0,0 +1,133 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ConsensusTransport} over a TCP connection to each worker.
+ */
+public class TcpConsensusTransport implements ConsensusTransport {
+
+	private final List<InetSocketAddress> addresses;
+	private Socket[] sockets;
+	private DataInputStream[] inputs;
+	private DataOutputStream[] outputs;
+
+	public TcpConsensusTransport(List<InetSocketAddress> addresses) {
+		if (addresses.isEmpty())
+			throw new IllegalArgumentException("At least one worker is required.");
+		this.addresses = new ArrayList<InetSocketAddress>(addresses);
+		sockets = null;
+	}
+
+	/**
+	 * Parses a comma-separated list of workers.
+	 *
+	 * @param workers  the host:port of each worker
+	 */
+	public static List<InetSocketAddress> parseAddresses(String workers) {
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (String worker : workers.split(",")) {
+			worker = worker.trim();
+			int colon = worker.lastIndexOf(':');
+			if (colon <= 0)
+				throw new IllegalArgumentException("Worker must be host:port: " + worker);
+			int port;
+			try {
+				port = Integer.parseInt(worker.substring(colon + 1));
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Worker must be host:port: " + worker);
+			}
+			addresses.add(InetSocketAddress.createUnresolved(worker.substring(0, colon), port));
+		}
+		return addresses;
+	}
+
+	@Override
+	public void open() throws IOException {
+		if (sockets != null)
+			return;
+
+		Socket[] newSockets = new Socket[addresses.size()];
+		inputs = new DataInputStream[addresses.size()];
+		outputs = new DataOutputStream[addresses.size()];
+		try {
+			for (int i = 0; i < newSockets.length; i++) {
+				InetSocketAddress address = addresses.get(i);
+				newSockets[i] = new Socket(address.getHostString(), address.getPort());
+				/* Each iteration exchanges one small message with each worker */
+				newSockets[i].setTcpNoDelay(true);
+				inputs[i] = new DataInputStream(new BufferedInputStream(newSockets[i].getInputStream()));
+				outputs[i] = new DataOutputStream(new BufferedOutputStream(newSockets[i].getOutputStream()));
+			}
+		}
+		catch (IOException e) {
+			for (Socket socket : newSockets)
+				if (socket != null)
+					socket.close();
+			throw e;
+		}
+		sockets = newSockets;
+	}
+
+	@Override
+	public int getNumWorkers() {
+		return addresses.size();
+	}
+
+	@Override
+	public DataInputStream getInput(int worker) {
+		return inputs[worker];
+	}
+
+	@Override
+	public DataOutputStream getOutput(int worker) {
+		return outputs[worker];
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (sockets == null)
+			return;
+
+		IOException exception = null;
+		for (Socket socket : sockets) {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				exception = e;
+			}
+		}
+		sockets = null;
+		inputs = null;
+		outputs = null;
+		if (exception != null)
+			throw exception;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import java.util.Arrays;
+
+import org.linqs.psl.reasoner.function.FunctionComparator;
+
+/**
+ * Canonical form of an {@link ADMMObjectiveTerm}, under which terms that
+ * define the same function of the same consensus variables, up to their
+ * weights, are equal.
+ * <p>
+ * The variables of the term are sorted, and inequality constraints are
+ * written as smaller-than constraints and equality constraints with a
+ * positive first coefficient.
+ */
+class TermKey {
+
+	private final byte type;
+	private final int[] zIndices;
+	private final double[] coeffs;
+	private final double constant;
+	private final int hashcode;
+
+	private TermKey(byte type, int[] zIndices, double[] coeffs, double constant) {
+		this.type = type;
+		this.zIndices = zIndices;
+		this.coeffs = coeffs;
+		this.constant = constant;
+
+		int hash = type;
+		hash = 31 * hash + Arrays.hashCode(zIndices);
+		hash = 31 * hash + Arrays.hashCode(coeffs);
+		long bits = Double.doubleToLongBits(constant);
+		hashcode = 31 * hash + (int) (bits ^ (bits >>> 32));
+	}
+
+	/**
+	 * @return the canonical form of the term, or null if it is not one of the
+	 *         term types that {@link AbstractFlatTermStore} supports
+	 */
+	static TermKey of(ADMMObjectiveTerm term) {
+		byte type;
+		double[] coeffs;
+		double constant = 0.0;
+		boolean negate = false;
+
+		if (term.getClass() == LinearConstraintTerm.class) {
+			LinearConstraintTerm constraint = (LinearConstraintTerm) term;
+			coeffs = constraint.coeffs;
+			constant = constraint.constant;
+			if (constraint.comparator.equals(FunctionComparator.Equality))
+				type = AbstractFlatTermStore.EQUALITY_CONSTRAINT;
+			else {
+				type = AbstractFlatTermStore.SMALLER_THAN_CONSTRAINT;
+				negate = constraint.comparator.equals(FunctionComparator.LargerThan);
+			}
+		}
+		else if (term.getClass() == LinearLossTerm.class) {
+			type = AbstractFlatTermStore.LINEAR_LOSS;
+			coeffs = ((LinearLossTerm) term).coeffs;
+		}
+		else if (term.getClass() == HingeLossTerm.class) {
+			type = AbstractFlatTermStore.HINGE_LOSS;
+			coeffs = ((HingeLossTerm) term).coeffs;
+			constant = ((HingeLossTerm) term).constant;
+		}
+		else if (term.getClass() == SquaredLinearLossTerm.class || term.getClass() == SquaredHingeLossTerm.class) {
+			type = (term.getClass() == SquaredLinearLossTerm.class)
+					? AbstractFlatTermStore.SQUARED_LINEAR_LOSS : AbstractFlatTermStore.SQUARED_HINGE_LOSS;
+			coeffs = ((SquaredHyperplaneTerm) term).coeffs;
+			constant = ((SquaredHyperplaneTerm) term).constant;
+		}
+		else
+			return null;
+
+		return canonical(type, term.zIndices.clone(), coeffs.clone(), constant, negate);
+	}
+
+	/**
+	 * @param variableMap  the new index of each consensus variable
+	 * @return the key of the same term after its consensus variables are
+	 *         renumbered
+	 */
+	TermKey remap(int[] variableMap) {
+		int[] newZIndices = new int[zIndices.length];
+		for (int i = 0; i < zIndices.length; i++)
+			newZIndices[i] = variableMap[zIndices[i]];
+		return canonical(type, newZIndices, coeffs.clone(), constant, false);
+	}
+
+	/**
+	 * Sorts the variables and coefficients in place and normalizes the sign.
+	 */
+	private static TermKey canonical(byte type, int[] sortedZIndices, double[] sortedCoeffs, double constant,
+			boolean negate) {
+		/* Sorts the variables, which are few, by insertion */
+		for (int i = 1; i < sortedZIndices.length; i++) {
+			int zIndex = sortedZIndices[i];
+			double coeff = sortedCoeffs[i];
+			int j = i - 1;
+			for (; j >= 0 && sortedZIndices[j] > zIndex; j--) {
+				sortedZIndices[j + 1] = sortedZIndices[j];
+				sortedCoeffs[j + 1] = sortedCoeffs[j];
+			}
+			sortedZIndices[j + 1] = zIndex;
+			sortedCoeffs[j + 1] = coeff;
+		}
+
+		if (type == AbstractFlatTermStore.EQUALITY_CONSTRAINT && sortedCoeffs.length > 0 && sortedCoeffs[0] < 0)
+			negate = true;
+		if (negate) {
+			/* Adding 0.0 turns -0.0 into 0.0, which Arrays.equals distinguishes */
+			for (int i = 0; i < sortedCoeffs.length; i++)
+				sortedCoeffs[i] = -sortedCoeffs[i] + 0.0;
+			constant = -constant + 0.0;
+		}
+
+		return new TermKey(type, sortedZIndices, sortedCoeffs, constant);
+	}
+
+	/**
+	 * @return whether terms with this key are constraints, which have no weight
+	 */
+	boolean isConstraint() {
+		return type >= AbstractFlatTermStore.EQUALITY_CONSTRAINT;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashcode;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this)
+			return true;
+		if (!(other instanceof TermKey))
+			return false;
+		TermKey key = (TermKey) other;
+		return hashcode == key.hashcode
+				&& type == key.type
+				&& Double.doubleToLongBits(constant) == Double.doubleToLongBits(key.constant)
+				&& Arrays.equals(zIndices, key.zIndices)
+				&& Arrays.equals(coeffs, key.coeffs);
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.linqs.psl.application.groundrulestore.GroundRuleStore;
+import org.linqs.psl.application.groundrulestore.MemoryGroundKernelStore;
+import org.linqs.psl.model.Model;
+import org.linqs.psl.model.atom.AtomEvent;
+import org.linqs.psl.model.atom.AtomEventFramework;
+import org.linqs.psl.model.atom.AtomManager;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.ThreadPool;
+
+public class GroundingTest {
+
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	/**
+	 * Tests that rules grounded in parallel add their ground rules in the
+	 * order of the serial grounding, with at most the given number of rules
+	 * grounded at once, on the given pool.
+	 */
+	@Test
+	public void testGroundAllParallel() throws InterruptedException {
+		Model model = new Model();
+		for (int i = 0; i < 8; i++)
+			model.addRule(new CountingRule(i));
+
+		final List<GroundRule> added = new ArrayList<GroundRule>();
+		MemoryGroundKernelStore store = new MemoryGroundKernelStore() {
+			@Override
+			public void addGroundRule(GroundRule gk) {
+				super.addGroundRule(gk);
+				added.add(gk);
+			}
+		};
+		ThreadPool pool = new ThreadPool(4);
+		Grounding.groundAllParallel(model, null, store, new com.google.common.base.Predicate<Rule>() {
+			@Override
+			public boolean apply(Rule rule) {
+				return ((CountingRule) rule).id != 5;
+			}
+		}, 3, pool);
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(3, pool.getCompletedTaskCount());
+
+		assertEquals(7 * CountingRule.NUM_GROUNDINGS, added.size());
+		for (int i = 1; i < added.size(); i++)
+			assertTrue(((CountingGroundRule) added.get(i - 1)).id < ((CountingGroundRule) added.get(i)).id);
+		assertTrue(maxRunning.get() <= 3);
+	}
+
+	/**
+	 * Tests that the ground rules of a rule are added as soon as it and the
+	 * earlier rules are grounded, while later rules are still grounding.
+	 */
+	@Test
+	public void testGroundAllParallelFlushesInOrder() throws InterruptedException {
+		final CountDownLatch first = new CountDownLatch(CountingRule.NUM_GROUNDINGS);
+		final AtomicBoolean flushedEarly = new AtomicBoolean();
+		Model model = new Model();
+		model.addRule(new CountingRule(0));
+		model.addRule(new CountingRule(1) {
+			@Override
+			public void groundAll(AtomManager atomManager, GroundRuleStore grs) {
+				try {
+					flushedEarly.set(first.await(10, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				super.groundAll(atomManager, grs);
+			}
+		});
+
+		MemoryGroundKernelStore store = new MemoryGroundKernelStore() {
+			@Override
+			public void addGroundRule(GroundRule gk) {
+				super.addGroundRule(gk);
+				first.countDown();
+			}
+		};
+		ThreadPool pool = new ThreadPool(2);
+		Grounding.groundAllParallel(model, null, store, new com.google.common.base.Predicate<Rule>() {
+			@Override
+			public boolean apply(Rule rule) {
+				return true;
+			}
+		}, 2, pool);
+		pool.shutdown();
+
+		assertTrue(flushedEarly.get());
+		assertEquals(2 * CountingRule.NUM_GROUNDINGS, store.size());
+	}
+
+	/**
+	 * A rule with a fixed number of groundings, identified by the rule's id.
+	 */
+	private class CountingRule implements Rule {
+
+		static final int NUM_GROUNDINGS = 100;
+
+		private final int id;
+
+		CountingRule(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void groundAll(AtomManager atomManager, GroundRuleStore grs) {
+			int now = running.incrementAndGet();
+			while (true) {
+				int max = maxRunning.get();
+				if (now <= max || maxRunning.compareAndSet(max, now))
+					break;
+			}
+
+			for (int i = 0; i < NUM_GROUNDINGS; i++) {
+				GroundRule groundRule = new CountingGroundRule(this, id * NUM_GROUNDINGS + i);
+				if (!grs.containsGroundKernel(groundRule))
+					grs.addGroundRule(groundRule);
+			}
+			running.decrementAndGet();
+		}
+
+		@Override
+		public void notifyAtomEvent(AtomEvent event) {
+		}
+
+		@Override
+		public void registerForAtomEvents(AtomEventFramework eventFramework, GroundRuleStore grs) {
+		}
+
+		@Override
+		public void unregisterForAtomEvents(AtomEventFramework eventFramework, GroundRuleStore grs) {
+		}
+
+		@Override
+		public Rule clone() {
+			return new CountingRule(id);
+		}
+	}
+
+	private static class CountingGroundRule implements GroundRule {
+
+		private final Rule rule;
+		private final int id;
+
+		CountingGroundRule(Rule rule, int id) {
+			this.rule = rule;
+			this.id = id;
+		}
+
+		@Override
+		public Rule getRule() {
+			return rule;
+		}
+
+		@Override
+		public Set<GroundAtom> getAtoms() {
+			return Collections.emptySet();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.linqs.psl.database.rdbms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -10,7 +11,11 @@ import org.junit.Test;
 import org.linqs.psl.TestModelFactory;
 import org.linqs.psl.application.inference.MPEInference;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.database.DatabaseQuery;
 import org.linqs.psl.database.ReadOnlyDatabase;
+import org.linqs.psl.database.ResultCursor;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.QueryAtom;
 import org.linqs.psl.model.formula.Conjunction;
 import org.linqs.psl.model.formula.Formula;
@@ -24,6 +29,7 @@ import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
 import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.UniqueID;
 import org.linqs.psl.model.term.Variable;
 
 import java.util.HashSet;
@@ -127,6 +133,79 @@ public class Formula2SQLTest {
 		assertEquals(40, function.getCallCount());
 	}
 
+	@Test
+	/**
+	 * Ensure that streaming a query caches the ObservedAtoms of its formula,
+	 * but leaves its RandomVariableAtoms to be looked up.
+	 */
+	public void testStreamQueryFetchesAtoms() {
+		TestModelFactory.ModelInformation info = TestModelFactory.getModel();
+		StandardPredicate nice = info.predicates.get("Nice");
+		StandardPredicate friends = info.predicates.get("Friends");
+
+		Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+		RDBMSDatabase inferDB = (RDBMSDatabase) info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+
+		// Nice(A) & Friends(A, B)
+		Formula formula = new Conjunction(
+			new QueryAtom(nice, new Variable("A")),
+			new QueryAtom(friends, new Variable("A"), new Variable("B"))
+		);
+
+		int count = 0;
+		ResultCursor cursor = inferDB.streamQuery(new DatabaseQuery(formula));
+		try {
+			while (cursor.next())
+				count++;
+		} finally {
+			cursor.close();
+		}
+		assertTrue(count > 0);
+
+		UniqueID alice = inferDB.getUniqueID("Alice");
+		UniqueID bob = inferDB.getUniqueID("Bob");
+		GroundAtom atom = inferDB.cache.getCachedAtom(new QueryAtom(nice, alice));
+		assertTrue(atom instanceof ObservedAtom);
+		assertEquals(0.8, atom.getValue(), 0.0);
+		assertNull(inferDB.cache.getCachedAtom(new QueryAtom(friends, alice, bob)));
+
+		inferDB.close();
+	}
+
+	@Test
+	/**
+	 * Ensure that streaming a query fails, like getting the atom does, on an
+	 * atom that is in more than one of the database's partitions.
+	 */
+	public void testStreamQueryAtomInTwoPartitions() {
+		TestModelFactory.ModelInformation info = TestModelFactory.getModel();
+		StandardPredicate nice = info.predicates.get("Nice");
+		StandardPredicate friends = info.predicates.get("Friends");
+
+		// The truth partition holds the observations again.
+		Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+		Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose,
+				info.observationPartition, info.truthPartition);
+
+		// Nice(A) & Friends(A, B)
+		Formula formula = new Conjunction(
+			new QueryAtom(nice, new Variable("A")),
+			new QueryAtom(friends, new Variable("A"), new Variable("B"))
+		);
+
+		ResultCursor cursor = inferDB.streamQuery(new DatabaseQuery(formula));
+		try {
+			while (cursor.next());
+			fail("An atom in two partitions was streamed without an exception.");
+		} catch (IllegalStateException ex) {
+			assertEquals("Atom cannot exist in more than one partition.", ex.getMessage());
+		} finally {
+			cursor.close();
+		}
+
+		inferDB.close();
+	}
+
 	/**
 	 * A spy ExternalFunction.
 	 * Only returns 1, but keeps track of how many times it was called.
@@ -26,19 +26,28 @@ import org.junit.Before;
 import org.junit.Test;
 
 import org.linqs.psl.PSLTest;
+import org.linqs.psl.application.groundrulestore.MemoryGroundKernelStore;
 import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
 import org.linqs.psl.config.EmptyBundle;
 import org.linqs.psl.database.DataStore;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.Partition;
+import org.linqs.psl.database.ResultList;
+import org.linqs.psl.database.loading.Inserter;
 import org.linqs.psl.database.rdbms.RDBMSDataStore;
 import org.linqs.psl.database.rdbms.driver.H2DatabaseDriver;
 import org.linqs.psl.database.rdbms.driver.H2DatabaseDriver.Type;
+import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.QueryAtom;
 import org.linqs.psl.model.atom.SimpleAtomManager;
+import org.linqs.psl.model.formula.Conjunction;
 import org.linqs.psl.model.formula.Disjunction;
 import org.linqs.psl.model.formula.Formula;
 import org.linqs.psl.model.predicate.PredicateFactory;
 import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.arithmetic.AbstractArithmeticRule;
 import org.linqs.psl.model.rule.arithmetic.UnweightedArithmeticRule;
 import org.linqs.psl.model.rule.arithmetic.expression.ArithmeticRuleExpression;
@@ -51,6 +60,7 @@ import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Coefficient;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.ConstantNumber;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Max;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Min;
+import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.ConstantType;
 import org.linqs.psl.model.term.Variable;
 import org.linqs.psl.reasoner.admm.ADMMReasoner;
@@ -432,6 +442,76 @@ public class AbstractArithmeticRuleTest {
 		}
 	}
 
+	@Test
+	public void testGroundSummationsThroughCursor() throws Exception {
+		// DoubleClosed(A, +B) <= 1 . {B: SingleClosed(B)}
+		// Read a few rows at a time, so the cursor fetches several times.
+		ConfigBundle fetchConfig = ConfigManager.getManager().getBundle("dummy");
+		fetchConfig.setProperty(RDBMSDataStore.FETCH_SIZE_KEY, 2);
+		DataStore fetchStore = new RDBMSDataStore(new H2DatabaseDriver(Type.Memory,
+				this.getClass().getName() + "Cursor", true), fetchConfig);
+		fetchStore.registerPredicate(singleClosed);
+		fetchStore.registerPredicate(doubleClosed);
+
+		Partition partition = fetchStore.getNewPartition();
+		String[] names = {"a", "b", "c", "d", "e"};
+		Inserter singles = fetchStore.getInserter(singleClosed, partition);
+		for (int i = 0; i < names.length - 1; i++)
+			singles.insertValue(1.0, fetchStore.getUniqueID(names[i]));
+		Inserter doubles = fetchStore.getInserter(doubleClosed, partition);
+		for (int i = 0; i < names.length; i++)
+			for (int j = 0; j < names.length; j++)
+				if ((i + j) % 3 != 0)
+					doubles.insertValue(1.0, fetchStore.getUniqueID(names[i]), fetchStore.getUniqueID(names[j]));
+
+		Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+		toClose.add(singleClosed);
+		toClose.add(doubleClosed);
+		Database fetchDatabase = fetchStore.getDatabase(partition, toClose);
+
+		List<Coefficient> coefficients = Arrays.asList(
+			(Coefficient)(new ConstantNumber(1))
+		);
+
+		List<SummationAtomOrAtom> atoms = Arrays.asList(
+			(SummationAtomOrAtom)(new SummationAtom(doubleClosed, new SummationVariableOrTerm[]{
+				new Variable("A"),
+				new SummationVariable("B")
+			}))
+		);
+
+		Map<SummationVariable, Formula> filters = new HashMap<SummationVariable, Formula>();
+		filters.put(new SummationVariable("B"), new QueryAtom(singleClosed, new Variable("B")));
+
+		ArithmeticRuleExpression expression = new ArithmeticRuleExpression(
+				coefficients, atoms, FunctionComparator.SmallerThan, new ConstantNumber(1));
+		AbstractArithmeticRule rule = new UnweightedArithmeticRule(expression, filters);
+
+		MemoryGroundKernelStore store = new MemoryGroundKernelStore();
+		rule.groundAll(new SimpleAtomManager(fetchDatabase), store);
+		Set<Set<GroundAtom>> grounded = new HashSet<Set<GroundAtom>>();
+		for (GroundRule groundRule : store.getGroundKernels())
+			grounded.add(groundRule.getAtoms());
+
+		// The same sums from the whole result list of the body and filter.
+		Variable a = new Variable("A");
+		Variable b = new Variable("B");
+		ResultList results = fetchDatabase.executeQuery(new DatabaseQuery(new Conjunction(
+				new QueryAtom(doubleClosed, a, b), new QueryAtom(singleClosed, b))));
+		Map<Constant, Set<GroundAtom>> sums = new HashMap<Constant, Set<GroundAtom>>();
+		for (int i = 0; i < results.size(); i++) {
+			if (!sums.containsKey(results.get(i, a)))
+				sums.put(results.get(i, a), new HashSet<GroundAtom>());
+			sums.get(results.get(i, a)).add(fetchDatabase.getAtom(doubleClosed, results.get(i, a), results.get(i, b)));
+		}
+
+		assertEquals(names.length, sums.size());
+		assertEquals(new HashSet<Set<GroundAtom>>(sums.values()), grounded);
+
+		fetchDatabase.close();
+		fetchStore.close();
+	}
+
 	@Test
 	public void testSimpleCardinality() {
 		// |A| SingleClosed(+A) = 1
@@ -17,19 +17,27 @@
  */
 package org.linqs.psl.model.rule.logical;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.linqs.psl.PSLTest;
+import org.linqs.psl.application.groundrulestore.GroundRuleStore;
+import org.linqs.psl.application.groundrulestore.MemoryGroundKernelStore;
 import org.linqs.psl.config.ConfigBundle;
 import org.linqs.psl.config.EmptyBundle;
 import org.linqs.psl.database.DataStore;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.database.DatabaseQuery;
+import org.linqs.psl.database.Partition;
+import org.linqs.psl.database.loading.Inserter;
 import org.linqs.psl.database.rdbms.RDBMSDataStore;
 import org.linqs.psl.database.rdbms.driver.H2DatabaseDriver;
 import org.linqs.psl.database.rdbms.driver.H2DatabaseDriver.Type;
 import org.linqs.psl.model.atom.QueryAtom;
+import org.linqs.psl.model.atom.SimpleAtomManager;
 import org.linqs.psl.model.formula.Conjunction;
+import org.linqs.psl.model.formula.Disjunction;
 import org.linqs.psl.model.formula.Implication;
 import org.linqs.psl.model.formula.Negation;
 import org.linqs.psl.model.predicate.PredicateFactory;
@@ -137,6 +145,67 @@ public class AbstractLogicalRuleTest {
 		}
 	}
 
+	@Test
+	/**
+	 * Ensure that groundings that can never be violated are not grounded,
+	 * whether they are pruned by the query or after grounding them.
+	 */
+	public void testGroundAllPruning() {
+		Partition observations = dataStore.getNewPartition();
+
+		Inserter inserter = dataStore.getInserter(singleClosed, observations);
+		inserter.insertValue(1.0, "a");
+		inserter.insertValue(0.0, "b");
+		inserter.insertValue(1.0, "c");
+		inserter.insertValue(0.5, "d");
+
+		inserter = dataStore.getInserter(doubleClosed, observations);
+		inserter.insertValue(1.0, "a", "b");
+		inserter.insertValue(1.0, "a", "c");
+		inserter.insertValue(1.0, "b", "c");
+		inserter.insertValue(0.0, "d", "c");
+		inserter.insertValue(1.0, "a", "d");
+
+		Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+		toClose.add(singleClosed);
+		toClose.add(doubleClosed);
+		Database groundingDB = dataStore.getDatabase(dataStore.getNewPartition(), toClose, observations);
+
+		// SingleClosed(A) & DoubleClosed(A, B) -> SingleOpened(B) | SingleClosed(B)
+		AbstractLogicalRule rule = new WeightedLogicalRule(
+			new Implication(
+				new Conjunction(
+					new QueryAtom(singleClosed, new Variable("A")),
+					new QueryAtom(doubleClosed, new Variable("A"), new Variable("B"))
+				),
+				new Disjunction(
+					new QueryAtom(singleOpened, new Variable("B")),
+					new QueryAtom(singleClosed, new Variable("B"))
+				)
+			),
+			1.0,
+			true
+		);
+
+		// The body matches (a, b), (a, c), (a, d), (b, c) and (d, c).
+		DatabaseQuery query = new DatabaseQuery(rule.clause.getQueryFormula());
+		assertEquals(5, groundingDB.executeQuery(query).size());
+
+		// (b, c) and (d, c) have a false body.
+		query.getNonZeroAtoms().addAll(rule.clause.getPosLiterals());
+		assertEquals(3, groundingDB.executeQuery(query).size());
+
+		// (a, c) has a true head.
+		query.getNonOneAtoms().addAll(rule.clause.getNegLiterals());
+		assertEquals(2, groundingDB.executeQuery(query).size());
+
+		GroundRuleStore store = new MemoryGroundKernelStore();
+		rule.groundAll(new SimpleAtomManager(groundingDB), store);
+		assertEquals(2, store.size());
+
+		groundingDB.close();
+	}
+
 	@After
 	public void cleanup() {
 		database.close();
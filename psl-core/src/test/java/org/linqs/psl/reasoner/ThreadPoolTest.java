@@ -0,0 +1,162 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+import org.linqs.psl.reasoner.admm.ADMMReasoner;
+
+public class ThreadPoolTest {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	/**
+	 * Tests that tasks waiting at a barrier for each other run although the
+	 * only thread of the pool is busy.
+	 */
+	@Test
+	public void testGang() throws Exception {
+		ThreadPool pool = new ThreadPool(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<?> blocker = pool.submit(await(release));
+
+		CyclicBarrier barrier = new CyclicBarrier(3);
+		Future<?>[] futures = pool.submitGang(new Runnable[] {await(barrier), await(barrier), await(barrier)});
+		for (Future<?> future : futures)
+			future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		release.countDown();
+		blocker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		pool.shutdown();
+	}
+
+	/**
+	 * Tests that an elastic pool runs each task on its own thread.
+	 */
+	@Test
+	public void testElastic() throws Exception {
+		ConfigBundle config = ConfigManager.getManager().getBundle("dummy");
+		config.setProperty(ThreadPool.SIZING_KEY, ThreadPool.SIZING_ELASTIC);
+		ThreadPool pool = new ThreadPool(config);
+
+		CyclicBarrier barrier = new CyclicBarrier(4);
+		Future<?>[] futures = new Future<?>[barrier.getParties()];
+		for (int i = 0; i < futures.length; i++)
+			futures[i] = pool.submit(await(barrier));
+		for (Future<?> future : futures)
+			future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		pool.shutdown();
+	}
+
+	/**
+	 * Tests that configurations that set the sizing share a pool of that
+	 * size, which reasoners use, and that others use the default pool.
+	 */
+	@Test
+	public void testConfiguredPool() throws Exception {
+		ConfigBundle config = ConfigManager.getManager().getBundle("dummy");
+		assertSame(ThreadPool.getPool(), ThreadPool.getPool(config));
+
+		config.setProperty(ThreadPool.SIZING_KEY, ThreadPool.SIZING_FIXED);
+		config.setProperty(ThreadPool.NUM_THREADS_KEY, 3);
+		ThreadPool pool = ThreadPool.getPool(config);
+		assertNotSame(ThreadPool.getPool(), pool);
+		ConfigBundle other = ConfigManager.getManager().getBundle("dummy");
+		other.setProperty(ThreadPool.SIZING_KEY, ThreadPool.SIZING_FIXED);
+		other.setProperty(ThreadPool.NUM_THREADS_KEY, 3);
+		assertSame(pool, ThreadPool.getPool(other));
+		assertSame(pool, new ADMMReasoner(config).getThreadPool());
+
+		CyclicBarrier barrier = new CyclicBarrier(3);
+		Future<?>[] futures = new Future<?>[barrier.getParties()];
+		for (int i = 0; i < futures.length; i++)
+			futures[i] = pool.submit(await(barrier));
+		for (Future<?> future : futures)
+			future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		assertEquals(3, pool.getPoolSize());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		ThreadPool pool = new ThreadPool(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<?> first = pool.submit(new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				await(release).run();
+			}
+		});
+		Future<?> second = pool.submit(await(release));
+		assertEquals(1, pool.getQueueDepth());
+
+		/* The first task is busy for at least as long as the test sleeps */
+		started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		Thread.sleep(20);
+		release.countDown();
+		first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		pool.shutdown();
+		pool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		assertEquals(0, pool.getQueueDepth());
+		assertEquals(2, pool.getCompletedTaskCount());
+		assertTrue(pool.getBusyTime() >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	private static Runnable await(final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				}
+				catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	private static Runnable await(final CyclicBarrier barrier) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					barrier.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,750 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+import org.linqs.psl.model.atom.AtomCache;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.predicate.PredicateFactory;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.model.rule.WeightedRule;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.IntegerAttribute;
+import org.linqs.psl.model.weight.PositiveWeight;
+import org.linqs.psl.model.weight.Weight;
+import org.linqs.psl.reasoner.function.ConstantNumber;
+import org.linqs.psl.reasoner.function.FunctionSum;
+import org.linqs.psl.reasoner.function.FunctionSummand;
+import org.linqs.psl.reasoner.function.FunctionTerm;
+import org.linqs.psl.reasoner.function.MaxFunction;
+import org.linqs.psl.reasoner.function.PowerOfTwo;
+
+public class ADMMReasonerTest {
+
+	private ConfigBundle config;
+	private StandardPredicate predicate;
+	private AtomCache cache;
+	/* Ground rules of the last chain solved by solveChain(int) */
+	private List<GroundRule> lastRules;
+
+	@Before
+	public final void setUp() throws Exception {
+		config = ConfigManager.getManager().getBundle("dummy");
+		config.setProperty(ADMMReasoner.EPSILON_ABS_KEY, 1e-8);
+		config.setProperty(ADMMReasoner.EPSILON_REL_KEY, 1e-8);
+		config.setProperty(ADMMReasoner.NUM_THREADS_KEY, 2);
+		predicate = PredicateFactory.getFactory().createStandardPredicate("ADMMReasonerTest_Value", ConstantType.Integer);
+		cache = new AtomCache(null);
+	}
+
+	/**
+	 * Tests that ground rules added after optimization give the same term
+	 * store, index, and solution as rebuilding with all of them.
+	 */
+	@Test
+	public void testAddGroundRules() {
+		for (String termStore : new String[] {ADMMReasoner.TERM_STORE_OBJECT, ADMMReasoner.TERM_STORE_FLAT}) {
+			config.setProperty(ADMMReasoner.TERM_STORE_KEY, termStore);
+			ADMMReasoner reasoner = new ADMMReasoner(config);
+			List<GroundRule> rules = new ArrayList<GroundRule>();
+			addChain(reasoner, rules, 0, 15);
+			reasoner.optimize();
+
+			/* Also adds new atoms */
+			addChain(reasoner, rules, 14, 20);
+			reasoner.optimize();
+			assertSameModel(rules, reasoner);
+
+			addChain(reasoner, rules, 19, 25);
+			reasoner.optimize();
+			assertSameModel(rules, reasoner);
+		}
+	}
+
+	/**
+	 * Tests that ground rules removed after optimization, before and after
+	 * the term store is compacted, give the same term store, index, and
+	 * solution as rebuilding without them.
+	 */
+	@Test
+	public void testRemoveGroundRules() {
+		for (String termStore : new String[] {ADMMReasoner.TERM_STORE_OBJECT, ADMMReasoner.TERM_STORE_FLAT}) {
+			config.setProperty(ADMMReasoner.TERM_STORE_KEY, termStore);
+			ADMMReasoner reasoner = new ADMMReasoner(config);
+			List<GroundRule> rules = new ArrayList<GroundRule>();
+			addChain(reasoner, rules, 0, 20);
+			reasoner.optimize();
+
+			/* Too few to compact */
+			remove(reasoner, rules, 10);
+			reasoner.optimize();
+			assertTrue(countRemovedTerms(reasoner) > 0);
+			assertSameModel(rules, reasoner);
+
+			/* Adds a copy of a removed ground rule and removes others */
+			GroundRule removed = chainRule(0, 1);
+			reasoner.addGroundRule(removed);
+			rules.add(removed);
+			remove(reasoner, rules, 5);
+			reasoner.optimize();
+			assertSameModel(rules, reasoner);
+
+			/* Enough to compact */
+			remove(reasoner, rules, 1);
+			reasoner.optimize();
+			assertEquals(0, countRemovedTerms(reasoner));
+			assertSameModel(rules, reasoner);
+
+			/* Removes and adds in the same update */
+			addChain(reasoner, rules, 20, 24);
+			remove(reasoner, rules, 2);
+			reasoner.optimize();
+			assertSameModel(rules, reasoner);
+		}
+	}
+
+	/**
+	 * Tests that ground rules added after deduplicated terms were reordered
+	 * share the terms they duplicate, and that removing them again gives the
+	 * same term store, index, and solution as rebuilding.
+	 */
+	@Test
+	public void testDeduplicateReorder() {
+		config.setProperty(ADMMReasoner.DEDUPLICATE_KEY, true);
+		config.setProperty(ADMMReasoner.REORDER_KEY, true);
+		config.setProperty(ADMMReasoner.TERM_STORE_KEY, ADMMReasoner.TERM_STORE_FLAT);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		List<GroundRule> rules = new ArrayList<GroundRule>();
+		addChain(reasoner, rules, 0, 20);
+		reasoner.optimize();
+		int numTerms = reasoner.termStore.size();
+
+		/* Duplicates terms of the reordered model */
+		List<GroundRule> duplicates = new ArrayList<GroundRule>();
+		for (int i = 1; i < 20; i += 3) {
+			duplicates.add(chainRule(i - 1, i));
+			duplicates.add(squaredHinge(0.5, (i * 7 % 10) / 10.0, new double[] {-1.0}, getAtom(i)));
+		}
+		for (GroundRule rule : duplicates)
+			reasoner.addGroundRule(rule);
+		rules.addAll(duplicates);
+		reasoner.optimize();
+		assertEquals(numTerms, reasoner.termStore.size());
+		assertSameModel(rules, reasoner);
+
+		/* Adds new terms, which reorders the model again once compacted */
+		addChain(reasoner, rules, 19, 30);
+		remove(reasoner, rules, 1);
+		reasoner.optimize();
+		assertSameModel(rules, reasoner);
+
+		for (GroundRule rule : duplicates) {
+			reasoner.removeGroundKernel(rule);
+			rules.remove(rule);
+		}
+		addChain(reasoner, rules, 0, 5);
+		reasoner.optimize();
+		assertSameModel(rules, reasoner);
+	}
+
+	/**
+	 * Tests that, when warm starting, a weight change and new ground rules
+	 * keep the local variables, Lagrange multipliers, and consensus variables
+	 * of the previous solution, and that optimization from there reaches the
+	 * solution of a new reasoner.
+	 */
+	@Test
+	public void testWarmStart() {
+		config.setProperty(ADMMReasoner.TERM_STORE_KEY, ADMMReasoner.TERM_STORE_FLAT);
+		config.setProperty(ADMMReasoner.WARM_START_KEY, true);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		List<GroundRule> rules = new ArrayList<GroundRule>();
+		addChain(reasoner, rules, 0, 20);
+		reasoner.optimize();
+
+		double[] z = Arrays.copyOf(reasoner.z, reasoner.getNumConsensusVariables());
+		int numLocalVariables = reasoner.termStore.getTermEnd(reasoner.termStore.size() - 1);
+		double[] x = new double[numLocalVariables];
+		double[] y = new double[numLocalVariables];
+		for (int i = 0; i < numLocalVariables; i++) {
+			x[i] = reasoner.termStore.getX(i);
+			y[i] = reasoner.termStore.getY(i);
+		}
+
+		WeightedGroundRule changed = (WeightedGroundRule) rules.get(0);
+		changed.setWeight(new PositiveWeight(5.0));
+		reasoner.changedGroundKernelWeight(changed);
+		addChain(reasoner, rules, 20, 25);
+		reasoner.updateGroundModel();
+		assertArrayEquals(z, Arrays.copyOf(reasoner.z, z.length), 0.0);
+		for (int i = 0; i < numLocalVariables; i++) {
+			assertEquals(x[i], reasoner.termStore.getX(i), 0.0);
+			assertEquals(y[i], reasoner.termStore.getY(i), 0.0);
+		}
+
+		reasoner.optimize();
+		double[] warm = new double[25];
+		for (int i = 0; i < warm.length; i++)
+			warm[i] = getAtom(i).getValue();
+
+		config.setProperty(ADMMReasoner.WARM_START_KEY, false);
+		ADMMReasoner cold = new ADMMReasoner(config);
+		for (GroundRule rule : rules)
+			cold.addGroundRule(rule);
+		cold.optimize();
+		for (int i = 0; i < warm.length; i++)
+			assertEquals(getAtom(i).getValue(), warm[i], 1e-4);
+	}
+
+	/**
+	 * Tests that over-relaxation reaches the same solution with each term store.
+	 */
+	@Test
+	public void testRelaxation() {
+		for (String termStore : new String[] {ADMMReasoner.TERM_STORE_OBJECT, ADMMReasoner.TERM_STORE_FLAT,
+				ADMMReasoner.TERM_STORE_FLOAT}) {
+			config.setProperty(ADMMReasoner.TERM_STORE_KEY, termStore);
+			config.setProperty(ADMMReasoner.RELAXATION_KEY, 1.0);
+			double[] expected = solveChain(20);
+
+			config.setProperty(ADMMReasoner.RELAXATION_KEY, 1.7);
+			assertArrayEquals(expected, solveChain(20), 1e-4);
+
+			config.setProperty(ADMMReasoner.RELAXATION_KEY, 0.7);
+			assertArrayEquals(expected, solveChain(20), 1e-4);
+		}
+	}
+
+	/**
+	 * Tests that the step size is adapted at most the configured number of
+	 * times.
+	 */
+	@Test
+	public void testStepSizeAdaptations() {
+		config.setProperty(ADMMReasoner.STEP_SIZE_KEY, 1000.0);
+		config.setProperty(ADMMReasoner.ADAPTIVE_STEP_SIZE_KEY, true);
+		config.setProperty(ADMMReasoner.STEP_SIZE_ADAPTATIONS_KEY, 0);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		List<GroundRule> rules = new ArrayList<GroundRule>();
+		addChain(reasoner, rules, 0, 20);
+		reasoner.optimize();
+		assertEquals(1000.0, reasoner.getStepSize(), 0.0);
+
+		config.setProperty(ADMMReasoner.STEP_SIZE_ADAPTATIONS_KEY, 2);
+		reasoner = new ADMMReasoner(config);
+		rules = new ArrayList<GroundRule>();
+		addChain(reasoner, rules, 0, 20);
+		reasoner.optimize();
+		assertTrue(reasoner.getStepSize() < 1000.0);
+		assertTrue(reasoner.getStepSize() >= 1000.0 / 4);
+	}
+
+	/**
+	 * Tests that decomposing into components, large and small, reaches the
+	 * same solution with an adaptive step size, and that the small
+	 * components leave the step size where each component started.
+	 */
+	@Test
+	public void testDecompose() {
+		config.setProperty(ADMMReasoner.STEP_SIZE_KEY, 10.0);
+		config.setProperty(ADMMReasoner.ADAPTIVE_STEP_SIZE_KEY, true);
+		double[] expected = solveComponents();
+
+		config.setProperty(ADMMReasoner.DECOMPOSE_KEY, true);
+		assertArrayEquals(expected, solveComponents(), 1e-4);
+	}
+
+	/**
+	 * @return the values of the atoms of a long chain and several short ones
+	 */
+	private double[] solveComponents() {
+		cache = new AtomCache(null);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		List<GroundRule> rules = new ArrayList<GroundRule>();
+		addChain(reasoner, rules, 0, 30);
+		for (int start = 30; start < 60; start += 5)
+			addChain(reasoner, rules, start, start + 5);
+		reasoner.optimize();
+		if (config.getBoolean(ADMMReasoner.DECOMPOSE_KEY, false))
+			assertEquals(10.0, reasoner.getStepSize(), 0.0);
+
+		double[] values = new double[60];
+		for (int i = 0; i < values.length; i++)
+			values[i] = getAtom(i).getValue();
+		return values;
+	}
+
+	/**
+	 * Tests that asynchronous optimization reaches the objective of
+	 * synchronous optimization, with and without stale iterations.
+	 */
+	@Test
+	public void testAsynchronous() {
+		config.setProperty(ADMMReasoner.NUM_THREADS_KEY, 4);
+		double[] expected = solveChain(40);
+		double objective = getObjective();
+
+		config.setProperty(ADMMReasoner.ASYNCHRONOUS_KEY, true);
+		for (int staleness : new int[] {0, 1}) {
+			config.setProperty(ADMMReasoner.STALENESS_KEY, staleness);
+			assertArrayEquals(expected, solveChain(40), 1e-3);
+			assertEquals(objective, getObjective(), 1e-4);
+		}
+	}
+
+	/**
+	 * Tests that creating terms in parallel chunks builds the same model as
+	 * creating them one at a time.
+	 */
+	@Test
+	public void testParallelTerms() {
+		config.setProperty(ADMMReasoner.TERM_STORE_KEY, ADMMReasoner.TERM_STORE_FLAT);
+		config.setProperty(ADMMReasoner.NUM_THREADS_KEY, 1);
+		ADMMReasoner serial = new ADMMReasoner(config);
+		List<GroundRule> rules = new ArrayList<GroundRule>();
+		/* Enough ground rules for several chunks */
+		addChain(serial, rules, 0, 1500);
+		serial.buildGroundModel();
+
+		config.setProperty(ADMMReasoner.NUM_THREADS_KEY, 4);
+		ADMMReasoner parallel = new ADMMReasoner(config);
+		for (GroundRule rule : rules)
+			parallel.addGroundRule(rule);
+		parallel.buildGroundModel();
+
+		assertEquals(serial.getNumConsensusVariables(), parallel.getNumConsensusVariables());
+		for (int i = 0; i < serial.getNumConsensusVariables(); i++)
+			assertTrue(serial.variables.get(i) == parallel.variables.get(i));
+
+		assertEquals(serial.orderedGroundKernels, parallel.orderedGroundKernels);
+		AbstractFlatTermStore expected = (AbstractFlatTermStore) serial.termStore;
+		AbstractFlatTermStore actual = (AbstractFlatTermStore) parallel.termStore;
+		assertEquals(expected.size(), actual.size());
+		for (int term = 0; term < expected.size(); term++) {
+			assertEquals(expected.getTermStart(term), actual.getTermStart(term));
+			assertEquals(expected.getTermEnd(term), actual.getTermEnd(term));
+			for (int i = expected.getTermStart(term); i < expected.getTermEnd(term); i++) {
+				assertEquals(expected.getZIndex(i), actual.getZIndex(i));
+				assertEquals(expected.getCoefficient(i), actual.getCoefficient(i), 0.0);
+			}
+			assertEquals(expected.hashDefinition(term), actual.hashDefinition(term));
+		}
+	}
+
+	/**
+	 * Tests that terms of skewed arity, and variables of skewed fan-out, are
+	 * split into contiguous chunks each costing at most an even share plus
+	 * the cost of one element.
+	 */
+	@Test
+	public void testPartition() {
+		/* One wide term, then pairs, all of which share variable 0 */
+		int numVariables = 50;
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[numVariables];
+		reasoner.numConsensusVariables = numVariables;
+		reasoner.termStore = new FlatTermStore(reasoner, 1, 1);
+		int[] wide = new int[40];
+		for (int i = 0; i < wide.length; i++)
+			wide[i] = i + 1;
+		reasoner.termStore.add(new LinearLossTerm(reasoner, wide, new double[wide.length], 1.0));
+		for (int i = 1; i < numVariables; i++)
+			reasoner.termStore.add(new LinearLossTerm(reasoner, new int[] {0, i}, new double[2], 1.0));
+		reasoner.termStore.indexLocalVariables(numVariables);
+
+		ADMMReasoner.CostModel termCost = reasoner.new TermCost();
+		ADMMReasoner.CostModel consensusCost = reasoner.new ConsensusCost();
+		for (int numChunks : new int[] {1, 3, 8, 64}) {
+			assertPartition(termCost, 0, reasoner.termStore.size(), numChunks);
+			assertPartition(termCost, 1, reasoner.termStore.size(), numChunks);
+			assertPartition(consensusCost, 0, numVariables, numChunks);
+			assertPartition(consensusCost, 20, 30, numChunks);
+		}
+
+		/* The wide term is worth more than a chunk, so it is one on its own */
+		int[] bounds = ADMMReasoner.partition(termCost, 0, reasoner.termStore.size(), 8);
+		assertEquals(1, bounds[1]);
+	}
+
+	private static void assertPartition(ADMMReasoner.CostModel costs, int start, int end, int numChunks) {
+		long totalCost = 0, maxCost = 0;
+		for (int i = start; i < end; i++) {
+			totalCost += costs.cost(i);
+			maxCost = Math.max(maxCost, costs.cost(i));
+		}
+
+		int[] bounds = ADMMReasoner.partition(costs, start, end, numChunks);
+		assertEquals(numChunks + 1, bounds.length);
+		assertEquals(start, bounds[0]);
+		assertEquals(end, bounds[numChunks]);
+		for (int chunk = 0; chunk < numChunks; chunk++) {
+			assertTrue(bounds[chunk] <= bounds[chunk + 1]);
+			long cost = 0;
+			for (int i = bounds[chunk]; i < bounds[chunk + 1]; i++)
+				cost += costs.cost(i);
+			assertTrue(cost * numChunks <= totalCost + maxCost * numChunks);
+		}
+	}
+
+	/**
+	 * Tests that each chunk of a work queue is taken exactly once, both when
+	 * every thread takes chunks at once and when some threads only start once
+	 * the others have taken their chunks, and again after resetting it.
+	 */
+	@Test
+	public void testWorkQueue() throws InterruptedException {
+		final int numThreads = 4, chunksPerThread = 8;
+		int[] bounds = new int[numThreads * chunksPerThread + 1];
+		for (int i = 0; i < bounds.length; i++)
+			bounds[i] = i * 3;
+		final ADMMReasoner.WorkQueue queue = new ADMMReasoner.WorkQueue(bounds, numThreads, chunksPerThread);
+
+		for (int round = 0; round < 20; round++) {
+			/* On even rounds, threads 0 and 1 wait for threads 2 and 3 to finish */
+			final boolean late = round % 2 == 0;
+			final CountDownLatch early = new CountDownLatch(2);
+			final AtomicIntegerArray taken = new AtomicIntegerArray(numThreads * chunksPerThread);
+			final AtomicIntegerArray owned = new AtomicIntegerArray(numThreads);
+			Thread[] threads = new Thread[numThreads];
+			for (int t = 0; t < numThreads; t++) {
+				final int thread = t;
+				threads[t] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (late && thread < 2)
+								early.await();
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+
+						int chunk;
+						while ((chunk = queue.next(thread)) != -1) {
+							taken.incrementAndGet(chunk);
+							if (queue.isOwner(thread, chunk))
+								owned.incrementAndGet(thread);
+						}
+						if (thread >= 2)
+							early.countDown();
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads)
+				thread.join();
+
+			for (int chunk = 0; chunk < taken.length(); chunk++) {
+				assertEquals(1, taken.get(chunk));
+				assertEquals(chunk * 3, queue.getStart(chunk));
+				assertEquals(chunk * 3 + 3, queue.getEnd(chunk));
+			}
+			if (late) {
+				assertEquals(0, owned.get(0));
+				assertEquals(0, owned.get(1));
+			}
+
+			for (int t = 0; t < numThreads; t++)
+				queue.reset(t);
+		}
+	}
+
+	/**
+	 * Tests that listeners are notified of each convergence check and of
+	 * the completion of optimization, and that unregistered listeners are not.
+	 */
+	@Test
+	public void testListeners() {
+		config.setProperty(ADMMReasoner.STOP_CHECK_KEY, 5);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		addChain(reasoner, new ArrayList<GroundRule>(), 0, 20);
+		final List<ADMMEvent> events = new ArrayList<ADMMEvent>();
+		final List<ADMMEvent> unregisteredEvents = new ArrayList<ADMMEvent>();
+		ADMMEvent.Listener unregistered = new ADMMEvent.Listener() {
+			@Override
+			public void notifyADMMEvent(ADMMEvent event) {
+				unregisteredEvents.add(event);
+			}
+		};
+		reasoner.registerListener(new ADMMEvent.Listener() {
+			@Override
+			public void notifyADMMEvent(ADMMEvent event) {
+				events.add(event);
+			}
+		});
+		reasoner.registerListener(unregistered);
+		reasoner.unregisterListener(unregistered);
+		reasoner.optimize();
+
+		assertTrue(unregisteredEvents.isEmpty());
+		assertTrue(events.size() > 2);
+		/* The residuals are checked after iterations 1, 6, 11, ... */
+		for (int i = 0; i < events.size() - 1; i++) {
+			ADMMEvent event = events.get(i);
+			assertEquals(ADMMEvent.Type.Check, event.getType());
+			assertTrue(event.getReasoner() == reasoner);
+			assertEquals(1 + 5 * i, event.getIteration());
+			assertTrue(event.getPrimalResidual() >= 0.0);
+			assertTrue(event.getDualResidual() >= 0.0);
+			assertTrue(event.getEpsilonPrimal() > 0.0);
+			assertTrue(event.getEpsilonDual() > 0.0);
+			assertTrue(event.getStepSize() > 0.0);
+			assertEquals(2, event.getLocalTimes().length);
+			assertEquals(i == events.size() - 2, event.isConverged());
+			if (i > 0)
+				assertTrue(event.getElapsedTime() >= events.get(i - 1).getElapsedTime());
+		}
+
+		ADMMEvent last = events.get(events.size() - 2);
+		ADMMEvent completed = events.get(events.size() - 1);
+		assertEquals(ADMMEvent.Type.Completed, completed.getType());
+		assertEquals(last.getIteration(), completed.getIteration());
+		assertEquals(last.getPrimalResidual(), completed.getPrimalResidual(), 0.0);
+		assertEquals(last.getDualResidual(), completed.getDualResidual(), 0.0);
+		assertTrue(completed.isConverged());
+		assertTrue(completed.getIterationRate() > 0.0);
+	}
+
+	/**
+	 * @return the objective of the last chain solved at its atoms' values
+	 */
+	private double getObjective() {
+		double objective = 0.0;
+		for (GroundRule rule : lastRules)
+			objective += ((WeightedGroundRule) rule).getWeight().getWeight()
+					* ((WeightedGroundRule) rule).getIncompatibility();
+		return objective;
+	}
+
+	/**
+	 * @return the values of the atoms of a chain of the given length, solved
+	 *         with a new reasoner
+	 */
+	private double[] solveChain(int length) {
+		cache = new AtomCache(null);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		lastRules = new ArrayList<GroundRule>();
+		addChain(reasoner, lastRules, 0, length);
+		reasoner.optimize();
+
+		double[] values = new double[length];
+		for (int i = 0; i < length; i++)
+			values[i] = getAtom(i).getValue();
+		return values;
+	}
+
+	/**
+	 * Adds the ground rules of a chain of atoms start (inclusive) to end
+	 * (exclusive), each pulled toward its own target and no larger than the
+	 * next one.
+	 */
+	private void addChain(ADMMReasoner reasoner, List<GroundRule> rules, int start, int end) {
+		List<GroundRule> chain = new ArrayList<GroundRule>();
+		for (int i = start; i < end; i++) {
+			if (i > start)
+				chain.add(chainRule(i - 1, i));
+			double target = (i * 7 % 10) / 10.0;
+			chain.add(squaredHinge(1.0, target, new double[] {-1.0}, getAtom(i)));
+			chain.add(squaredHinge(1.0, -target, new double[] {1.0}, getAtom(i)));
+		}
+		for (GroundRule rule : chain)
+			reasoner.addGroundRule(rule);
+		rules.addAll(chain);
+	}
+
+	/**
+	 * Removes every stride-th remaining chain rule.
+	 */
+	private void remove(ADMMReasoner reasoner, List<GroundRule> rules, int stride) {
+		int count = 0;
+		for (GroundRule rule : new ArrayList<GroundRule>(rules)) {
+			if (((TestGroundRule) rule).chain && count++ % stride == 0) {
+				reasoner.removeGroundKernel(rule);
+				rules.remove(rule);
+			}
+		}
+	}
+
+	private GroundRule chainRule(int first, int second) {
+		TestGroundRule rule = squaredHinge(2.0, 0.0, new double[] {1.0, -1.0}, getAtom(first), getAtom(second));
+		rule.chain = true;
+		return rule;
+	}
+
+	private RandomVariableAtom getAtom(int i) {
+		return cache.instantiateRandomVariableAtom(predicate, new Constant[] {new IntegerAttribute(i)}, 0.5, 1.0);
+	}
+
+	/**
+	 * @return a ground rule with incompatibility
+	 *         weight * max(0, coeffs * atoms + constant)^2
+	 */
+	private static TestGroundRule squaredHinge(double weight, double constant, double[] coeffs,
+			RandomVariableAtom... atoms) {
+		FunctionSum sum = new FunctionSum();
+		for (int i = 0; i < atoms.length; i++)
+			sum.add(new FunctionSummand(coeffs[i], atoms[i].getVariable()));
+		sum.add(new FunctionSummand(1.0, new ConstantNumber(constant)));
+		return new TestGroundRule(weight, new PowerOfTwo(MaxFunction.of(sum, new ConstantNumber(0.0))), atoms);
+	}
+
+	/**
+	 * Checks that a reasoner has one live term per ground rule, that its
+	 * consensus index lists exactly the live copies of each variable, and
+	 * that it has the same terms and solution as a reasoner built with the
+	 * same ground rules.
+	 */
+	private void assertSameModel(List<GroundRule> rules, ADMMReasoner actual) {
+		assertIndexed(actual);
+
+		Map<GroundAtom, Double> values = new HashMap<GroundAtom, Double>();
+		for (int i = 0; i < actual.getNumConsensusVariables(); i++)
+			values.put(actual.variables.get(i).getAtom(), actual.getConsensusVariableValue(i));
+
+		ADMMReasoner expected = new ADMMReasoner(config);
+		for (GroundRule rule : rules)
+			expected.addGroundRule(rule);
+		expected.optimize();
+
+		assertEquals(expected.orderedGroundKernels.size(), actual.orderedGroundKernels.size());
+		assertEquals(expected.termStore.size(), actual.termStore.size() - countRemovedTerms(actual));
+		assertEquals(expected.termStore.getNumLocalVariables(), actual.termStore.getNumLocalVariables());
+		for (Map.Entry<GroundRule, Integer> entry : expected.orderedGroundKernels.entrySet()) {
+			Integer index = actual.orderedGroundKernels.get(entry.getKey());
+			assertNotNull(index);
+			assertFalse(actual.termStore.isRemoved(index));
+			assertArrayEquals(getTermAtoms(expected, entry.getValue()), getTermAtoms(actual, index));
+		}
+
+		for (int i = 0; i < expected.getNumConsensusVariables(); i++) {
+			Double value = values.get(expected.variables.get(i).getAtom());
+			assertNotNull(value);
+			assertEquals(expected.getConsensusVariableValue(i), value, 1e-4);
+		}
+	}
+
+	/**
+	 * Checks that the consensus index of each variable lists exactly the local
+	 * variables of the live terms that copy it.
+	 */
+	private static void assertIndexed(ADMMReasoner reasoner) {
+		ADMMTermStore termStore = reasoner.termStore;
+		for (int zIndex = 0; zIndex < reasoner.getNumConsensusVariables(); zIndex++) {
+			List<Integer> copies = new ArrayList<Integer>();
+			for (int term = 0; term < termStore.size(); term++)
+				if (!termStore.isRemoved(term))
+					for (int i = termStore.getTermStart(term); i < termStore.getTermEnd(term); i++)
+						if (termStore.getZIndex(i) == zIndex)
+							copies.add(i);
+
+			int[] expected = new int[copies.size()];
+			for (int i = 0; i < expected.length; i++)
+				expected[i] = copies.get(i);
+			int[] indexed = new int[termStore.getConsensusEnd(zIndex) - termStore.getConsensusStart(zIndex)];
+			for (int i = 0; i < indexed.length; i++)
+				indexed[i] = termStore.getLocalVariable(termStore.getConsensusStart(zIndex) + i);
+			Arrays.sort(indexed);
+			assertArrayEquals(expected, indexed);
+		}
+	}
+
+	private static GroundAtom[] getTermAtoms(ADMMReasoner reasoner, int term) {
+		int start = reasoner.termStore.getTermStart(term);
+		GroundAtom[] atoms = new GroundAtom[reasoner.termStore.getTermEnd(term) - start];
+		for (int i = 0; i < atoms.length; i++)
+			atoms[i] = reasoner.variables.get(reasoner.termStore.getZIndex(start + i)).getAtom();
+		return atoms;
+	}
+
+	private static int countRemovedTerms(ADMMReasoner reasoner) {
+		int count = 0;
+		for (int term = 0; term < reasoner.termStore.size(); term++)
+			if (reasoner.termStore.isRemoved(term))
+				count++;
+		return count;
+	}
+
+	/**
+	 * A weighted ground rule with a fixed function and no parent rule.
+	 */
+	private static class TestGroundRule implements WeightedGroundRule {
+		private final FunctionTerm function;
+		private final Set<GroundAtom> atoms;
+		private Weight weight;
+		private boolean chain;
+
+		public TestGroundRule(double weight, FunctionTerm function, GroundAtom... atoms) {
+			this.weight = new PositiveWeight(weight);
+			this.function = function;
+			this.atoms = new HashSet<GroundAtom>(Arrays.asList(atoms));
+			chain = false;
+		}
+
+		@Override
+		public WeightedRule getRule() {
+			return null;
+		}
+
+		@Override
+		public Set<GroundAtom> getAtoms() {
+			return atoms;
+		}
+
+		@Override
+		public Weight getWeight() {
+			return weight;
+		}
+
+		@Override
+		public void setWeight(Weight w) {
+			weight = w;
+		}
+
+		@Override
+		public FunctionTerm getFunctionDefinition() {
+			return function;
+		}
+
+		@Override
+		public double getIncompatibility() {
+			return function.getValue();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+
+public class ADMMWorkerTest {
+
+	private ADMMReasoner reasoner;
+	private List<ServerSocket> servers;
+
+	@Before
+	public final void setUp() throws ConfigurationException, IOException {
+		ConfigBundle config = ConfigManager.getManager().getBundle("dummy");
+		reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[] {0.5, 0.5};
+		reasoner.lb = new double[] {0.0, 0.0};
+		reasoner.ub = new double[] {1.0, 1.0};
+		reasoner.numConsensusVariables = 2;
+
+		servers = new ArrayList<ServerSocket>();
+		for (int i = 0; i < 2; i++) {
+			final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			servers.add(server);
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ADMMWorker.serve(server);
+					}
+					catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}).start();
+		}
+	}
+
+	@After
+	public final void tearDown() throws IOException {
+		for (ServerSocket server : servers)
+			server.close();
+	}
+
+	/**
+	 * Tests that two workers that share variable 1 optimize
+	 * (z0 - 0.2)^2 + (z0 - z1)^2 + (z1 - 0.8)^2.
+	 */
+	@Test
+	public void testOptimize() throws IOException {
+		ADMMObjectiveTerm[] terms = {
+				new SquaredLinearLossTerm(reasoner, new int[] {0}, new double[] {1.0}, 0.2, 1.0),
+				new SquaredLinearLossTerm(reasoner, new int[] {0, 1}, new double[] {1.0, -1.0}, 0.0, 1.0),
+				new SquaredLinearLossTerm(reasoner, new int[] {1}, new double[] {1.0}, 0.8, 1.0)
+		};
+		reasoner.termStore = new FlatTermStore(reasoner, 3, 4);
+		for (ADMMObjectiveTerm term : terms)
+			reasoner.termStore.add(term);
+		reasoner.termStore.indexLocalVariables(2);
+
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (ServerSocket server : servers)
+			addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+		ConsensusTransport transport = new TcpConsensusTransport(addresses);
+		transport.open();
+
+		ConsensusCoordinator coordinator = new ConsensusCoordinator(reasoner, transport, new int[] {0, 2, 3});
+		coordinator.distribute();
+		for (int iter = 0; iter < 500; iter++)
+			coordinator.iterate(false);
+		coordinator.iterate(true);
+		coordinator.finish();
+		transport.close();
+
+		assertEquals(0.4, reasoner.z[0], 1e-6);
+		assertEquals(0.6, reasoner.z[1], 1e-6);
+		assertEquals(0.0, coordinator.primalSum, 1e-12);
+		/* The local copies are returned with the interior variable */
+		ADMMTermStore termStore = reasoner.termStore;
+		assertEquals(0.4, termStore.getX(termStore.getTermStart(0)), 1e-6);
+		assertEquals(0.6, termStore.getX(termStore.getTermStart(2)), 1e-6);
+	}
+
+	/**
+	 * Tests that a worker rejects shards with negative or out-of-range sizes
+	 * before allocating for them.
+	 */
+	@Test
+	public void testInvalidShard() throws IOException {
+		/* Negative number of variables */
+		assertInvalid(-1);
+		/* More boundary variables than variables */
+		assertInvalid(1, 0.5, 0.0, 1.0, 2);
+		/* Boundary variable out of range */
+		assertInvalid(1, 0.5, 0.0, 1.0, 1, 1);
+		/* Term with an out-of-range variable */
+		assertInvalid(1, 0.5, 0.0, 1.0, 0, 1, 1, (byte) 0, 0.0, 1.0, 1, 3);
+		/* Term with a huge number of variables */
+		assertInvalid(1, 0.5, 0.0, 1.0, 0, 1, 1, (byte) 0, 0.0, 1.0, Integer.MAX_VALUE);
+	}
+
+	private void assertInvalid(Object... shard) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream message = new DataOutputStream(bytes);
+		message.write(ADMMWorker.SHARD);
+		for (Object value : shard) {
+			if (value instanceof Integer)
+				message.writeInt((Integer) value);
+			else if (value instanceof Double)
+				message.writeDouble((Double) value);
+			else
+				message.writeByte((Byte) value);
+		}
+		message.flush();
+
+		try {
+			new ADMMWorker().serve(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+					new DataOutputStream(new ByteArrayOutputStream()));
+			fail("Accepted an invalid shard");
+		}
+		catch (IOException e) {
+			if (!e.getMessage().startsWith("Invalid"))
+				throw e;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+
+public class CheckpointerTest {
+
+	private ConfigBundle config;
+	private File file;
+
+	@Before
+	public final void setUp() throws ConfigurationException, IOException {
+		config = ConfigManager.getManager().getBundle("dummy");
+		file = File.createTempFile("psl-admm-", ".checkpoint");
+		file.delete();
+	}
+
+	@After
+	public final void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Tests that a checkpoint is restored into the same ground model with its
+	 * variables and terms in another order.
+	 */
+	@Test
+	public void testResume() {
+		ADMMReasoner reasoner = createReasoner(new int[] {0, 1, 2}, false);
+		reasoner.z[1] = 0.7;
+		reasoner.stepSize = 2.0;
+		reasoner.termStore.setX(0, 0.3);
+		reasoner.termStore.setY(1, -0.2);
+		reasoner.termStore.setY(2, 0.4);
+
+		Checkpointer checkpointer = new Checkpointer(reasoner, file);
+		checkpointer.index(new long[] {10, 11, 12});
+		checkpointer.checkpoint(25);
+		checkpointer.awaitWriter();
+
+		/* Variable i of the first model is variable order[i] of the second */
+		int[] order = {2, 0, 1};
+		ADMMReasoner resumed = createReasoner(order, true);
+		Checkpointer resumedCheckpointer = new Checkpointer(resumed, file);
+		resumedCheckpointer.index(new long[] {11, 12, 10});
+
+		assertEquals(25, resumedCheckpointer.resume());
+		assertEquals(2.0, resumed.stepSize, 0.0);
+		assertEquals(0.7, resumed.z[order[1]], 0.0);
+		assertEquals(0.5, resumed.z[order[0]], 0.0);
+
+		/* The terms were added in reverse order */
+		ADMMTermStore store = resumed.termStore;
+		assertEquals(0.3, store.getX(store.getTermStart(1)), 0.0);
+		assertEquals(-0.2, store.getY(store.getTermStart(1) + 1), 0.0);
+		assertEquals(0.4, store.getY(store.getTermStart(0)), 0.0);
+	}
+
+	/**
+	 * Tests that a checkpoint of another ground model is not restored.
+	 */
+	@Test
+	public void testOtherModel() {
+		ADMMReasoner reasoner = createReasoner(new int[] {0, 1, 2}, false);
+		Checkpointer checkpointer = new Checkpointer(reasoner, file);
+		checkpointer.index(new long[] {10, 11, 12});
+		checkpointer.checkpoint(25);
+		checkpointer.awaitWriter();
+
+		Checkpointer otherCheckpointer = new Checkpointer(reasoner, file);
+		otherCheckpointer.index(new long[] {10, 11, 13});
+		assertEquals(-1, otherCheckpointer.resume());
+	}
+
+	/**
+	 * Tests that a checkpoint of a ground model with the same variables but
+	 * another term constant or weight is not restored.
+	 */
+	@Test
+	public void testOtherTerms() {
+		ADMMReasoner reasoner = createReasoner(new int[] {0, 1, 2}, false);
+		Checkpointer checkpointer = new Checkpointer(reasoner, file);
+		checkpointer.index(new long[] {10, 11, 12});
+		checkpointer.checkpoint(25);
+		checkpointer.awaitWriter();
+
+		ADMMReasoner other = createReasoner(new int[] {0, 1, 2}, false, 0.5, 1.0);
+		Checkpointer otherCheckpointer = new Checkpointer(other, file);
+		otherCheckpointer.index(new long[] {10, 11, 12});
+		assertEquals(-1, otherCheckpointer.resume());
+
+		other = createReasoner(new int[] {0, 1, 2}, false, 0.0, 2.0);
+		otherCheckpointer = new Checkpointer(other, file);
+		otherCheckpointer.index(new long[] {10, 11, 12});
+		assertEquals(-1, otherCheckpointer.resume());
+
+		/* Same weight again, set on the term store */
+		other.termStore.setWeight(0, 1.0);
+		otherCheckpointer.index(new long[] {10, 11, 12});
+		assertEquals(25, otherCheckpointer.resume());
+	}
+
+	/**
+	 * Tests that a term removed while a checkpoint is written is still in it.
+	 */
+	@Test
+	public void testRemovedTerm() {
+		ADMMReasoner reasoner = createReasoner(new int[] {0, 1, 2}, false);
+		reasoner.termStore.setX(0, 0.3);
+		reasoner.termStore.setY(2, 0.4);
+		Checkpointer checkpointer = new Checkpointer(reasoner, file);
+		checkpointer.index(new long[] {10, 11, 12});
+		checkpointer.checkpoint(25);
+		reasoner.termStore.remove(1);
+		reasoner.termStore.setX(0, 0.9);
+		checkpointer.awaitWriter();
+
+		ADMMReasoner resumed = createReasoner(new int[] {0, 1, 2}, false);
+		Checkpointer resumedCheckpointer = new Checkpointer(resumed, file);
+		resumedCheckpointer.index(new long[] {10, 11, 12});
+		assertEquals(25, resumedCheckpointer.resume());
+		assertEquals(0.3, resumed.termStore.getX(0), 0.0);
+		assertEquals(0.4, resumed.termStore.getY(2), 0.0);
+	}
+
+	/**
+	 * Tests that nothing is restored from a checkpoint that cannot be read
+	 * completely.
+	 */
+	@Test
+	public void testTruncated() throws IOException {
+		ADMMReasoner reasoner = createReasoner(new int[] {0, 1, 2}, false);
+		reasoner.z[1] = 0.7;
+		reasoner.stepSize = 2.0;
+		reasoner.termStore.setX(0, 0.3);
+		Checkpointer checkpointer = new Checkpointer(reasoner, file);
+		checkpointer.index(new long[] {10, 11, 12});
+		checkpointer.checkpoint(25);
+		checkpointer.awaitWriter();
+
+		/* Cuts the last term's y */
+		RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		try {
+			truncated.setLength(truncated.length() - 4);
+		}
+		finally {
+			truncated.close();
+		}
+
+		ADMMReasoner resumed = createReasoner(new int[] {0, 1, 2}, false);
+		Checkpointer resumedCheckpointer = new Checkpointer(resumed, file);
+		resumedCheckpointer.index(new long[] {10, 11, 12});
+		double stepSize = resumed.stepSize;
+		double x = resumed.termStore.getX(0);
+		assertEquals(-1, resumedCheckpointer.resume());
+		assertEquals(stepSize, resumed.stepSize, 0.0);
+		assertEquals(0.5, resumed.z[1], 0.0);
+		assertEquals(x, resumed.termStore.getX(0), 0.0);
+	}
+
+	private ADMMReasoner createReasoner(int[] order, boolean reverse) {
+		return createReasoner(order, reverse, 0.0, 1.0);
+	}
+
+	/**
+	 * Creates a reasoner with a hinge loss on variables 0 and 1, with the
+	 * given constant and weight, and a linear loss on variable 2, mapped by
+	 * order.
+	 */
+	private ADMMReasoner createReasoner(int[] order, boolean reverse, double constant, double weight) {
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[] {0.5, 0.5, 0.5};
+		reasoner.numConsensusVariables = 3;
+
+		ADMMObjectiveTerm[] terms = {
+				new HingeLossTerm(reasoner, new int[] {order[0], order[1]}, new double[] {1.0, -1.0}, constant, weight),
+				new LinearLossTerm(reasoner, new int[] {order[2]}, new double[] {1.0}, 1.0)
+		};
+		reasoner.termStore = new FlatTermStore(reasoner, 2, 3);
+		for (int i = 0; i < terms.length; i++)
+			reasoner.termStore.add(terms[reverse ? terms.length - 1 - i : i]);
+		reasoner.termStore.indexLocalVariables(3);
+		return reasoner;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+public class CholeskyCacheTest {
+	
+	/**
+	 * Tests that the cached factor is of stepSize * I + 2 * weight * coeffs * coeffs^T
+	 * and that equal keys hit the cache.
+	 */
+	@Test
+	public void testGet() {
+		CholeskyCache cache = new CholeskyCache(1024);
+		double[] coeffs = {1.0, -1.0, 0.5};
+		double weight = 2.0;
+		double stepSize = 0.5;
+		
+		DoubleMatrix2D L = cache.get(coeffs, weight, stepSize);
+		for (int i = 0; i < coeffs.length; i++) {
+			for (int j = 0; j < coeffs.length; j++) {
+				double product = 0.0;
+				for (int k = 0; k < coeffs.length; k++)
+					product += L.getQuick(i, k) * L.getQuick(j, k);
+				double expected = 2 * weight * coeffs[i] * coeffs[j] + ((i == j) ? stepSize : 0.0);
+				assertEquals(expected, product, 1e-10);
+			}
+		}
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		
+		assertSame(L, cache.get(new double[] {1.0, -1.0, 0.5}, weight, stepSize));
+		assertEquals(1, cache.getHits());
+		
+		cache.get(coeffs, weight, 1.0);
+		cache.get(coeffs, 1.0, stepSize);
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(3, cache.size());
+	}
+	
+	/**
+	 * Tests that the cache never holds more factors than its capacity.
+	 */
+	@Test
+	public void testEviction() {
+		CholeskyCache cache = new CholeskyCache(20);
+		double[] coeffs = {1.0, 2.0, 3.0};
+		for (int i = 0; i < 1000; i++)
+			cache.get(coeffs, 1.0 + i, 1.0);
+		assertTrue(cache.size() <= 20);
+		assertEquals(1000, cache.getMisses());
+	}
+}
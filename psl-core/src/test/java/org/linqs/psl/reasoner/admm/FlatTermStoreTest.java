@@ -0,0 +1,183 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+
+public class FlatTermStoreTest {
+	
+	private ConfigBundle config;
+	
+	@Before
+	public final void setUp() throws ConfigurationException {
+		ConfigManager manager = ConfigManager.getManager();
+		config = manager.getBundle("dummy");
+	}
+	
+	@Test
+	public void testMinimize() {
+		double[] z = {0.3, 0.5, 0.1};
+		double[] y = {0.1, 0.0, -0.05};
+		final double[] coeffs = {1.0, -0.5, 0.4};
+		
+		/* Each term type, on both sides of its hinge or constraint where it has one */
+		for (final double constant : new double[] {-0.15, 0.0, 0.5}) {
+			testProblem(z, y, coeffs, 0.5, new TermBuilder() {
+				public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+					return new HingeLossTerm(reasoner, zIndices, coeffs, constant, 2.0);
+				}
+			});
+			testProblem(z, y, coeffs, 0.5, new TermBuilder() {
+				public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+					return new SquaredHingeLossTerm(reasoner, zIndices, coeffs, constant, 2.0);
+				}
+			});
+			testProblem(z, y, coeffs, 0.5, new TermBuilder() {
+				public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+					return new SquaredLinearLossTerm(reasoner, zIndices, coeffs, constant, 2.0);
+				}
+			});
+			for (final FunctionComparator comparator : FunctionComparator.values()) {
+				testProblem(z, y, coeffs, 0.5, new TermBuilder() {
+					public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+						return new LinearConstraintTerm(reasoner, zIndices, coeffs, constant, comparator);
+					}
+				});
+			}
+		}
+		testProblem(z, y, coeffs, 0.5, new TermBuilder() {
+			public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+				return new LinearLossTerm(reasoner, zIndices, coeffs, 2.0);
+			}
+		});
+		
+		/* Terms with one and two variables */
+		testProblem(new double[] {0.7, 0.5}, new double[] {0.0, 0.0}, new double[] {1.0, -1.0}, 1.0, new TermBuilder() {
+			public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+				return new SquaredHingeLossTerm(reasoner, zIndices, new double[] {1.0, -1.0}, 0.0, 1.0);
+			}
+		});
+		testProblem(new double[] {0.2}, new double[] {0.1}, new double[] {2.0}, 1.0, new TermBuilder() {
+			public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices) {
+				return new LinearConstraintTerm(reasoner, zIndices, new double[] {2.0}, 1.0, FunctionComparator.Equality);
+			}
+		});
+	}
+	
+	/**
+	 * Tests that the local variables of a {@link MappedTermStore} follow
+	 * their terms when the terms are reordered repeatedly, which copies them
+	 * back and forth between the two sets of segments.
+	 */
+	@Test
+	public void testMappedPermute() {
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[3];
+		MappedTermStore store = new MappedTermStore(reasoner,
+				new File(System.getProperty("java.io.tmpdir")), 3, 6);
+		int[][] terms = {{0}, {1, 2}, {0, 1, 2}};
+		for (int[] zIndices : terms)
+			store.add(new LinearLossTerm(reasoner, zIndices, new double[zIndices.length], 1.0));
+		store.indexLocalVariables(3);
+		for (int i = 0; i < 6; i++) {
+			store.setX(i, i);
+			store.setY(i, -i);
+		}
+
+		/* Local variable j of each term, by its position when added */
+		int[] firstLocals = {0, 1, 3};
+		int[] original = {0, 1, 2};
+		int[] identity = {0, 1, 2};
+		for (int[] termOrder : new int[][] {{2, 0, 1}, {1, 2, 0}, {2, 1, 0}}) {
+			store.permute(termOrder, identity);
+			int[] permuted = new int[3];
+			for (int i = 0; i < 3; i++)
+				permuted[i] = original[termOrder[i]];
+			original = permuted;
+
+			for (int term = 0; term < 3; term++) {
+				assertEquals(terms[original[term]].length, store.getTermEnd(term) - store.getTermStart(term));
+				for (int j = 0; j < terms[original[term]].length; j++) {
+					assertEquals(firstLocals[original[term]] + j, store.getX(store.getTermStart(term) + j), 0.0);
+					assertEquals(-firstLocals[original[term]] - j, store.getY(store.getTermStart(term) + j), 0.0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Minimizes the term as an object, in a {@link FlatTermStore}, in a
+	 * {@link FloatTermStore}, and in a {@link MappedTermStore} and checks
+	 * that the results agree.
+	 */
+	private void testProblem(double[] z, double[] y, double[] coeffs, final double stepSize,
+			TermBuilder builder) {
+		config.setProperty("admmreasoner.stepsize", stepSize);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[z.length];
+		for (int i = 0; i < z.length; i++)
+			reasoner.z[i] = z[i];
+		
+		int[] zIndices = new int[z.length];
+		for (int i = 0; i < z.length; i++)
+			zIndices[i] = i;
+		
+		/* The flat store updates y before minimizing, so x starts at z to leave it unchanged */
+		ADMMObjectiveTerm term = builder.build(reasoner, zIndices);
+		for (int i = 0; i < z.length; i++)
+			term.y[i] = y[i];
+		FlatTermStore store = new FlatTermStore(reasoner, 1, z.length);
+		int index = store.add(term);
+		store.indexLocalVariables(z.length);
+		FloatTermStore floatStore = new FloatTermStore(reasoner, 1, z.length);
+		int floatIndex = floatStore.add(term);
+		floatStore.indexLocalVariables(z.length);
+		MappedTermStore mappedStore = new MappedTermStore(reasoner,
+				new File(System.getProperty("java.io.tmpdir")), 1, z.length);
+		int mappedIndex = mappedStore.add(term);
+		mappedStore.indexLocalVariables(z.length);
+		
+		term.updateLagrange().minimize();
+		store.minimize(index);
+		floatStore.minimize(floatIndex);
+		mappedStore.minimize(mappedIndex);
+		
+		for (int i = 0; i < z.length; i++) {
+			assertEquals(term.y[i], store.getY(store.getTermStart(index) + i), 1e-9);
+			assertEquals(term.x[i], store.getX(store.getTermStart(index) + i), 1e-9);
+			assertEquals(term.y[i], floatStore.getY(floatStore.getTermStart(floatIndex) + i), 1e-6);
+			assertEquals(term.x[i], floatStore.getX(floatStore.getTermStart(floatIndex) + i), 1e-6);
+			assertEquals(term.y[i], mappedStore.getY(mappedStore.getTermStart(mappedIndex) + i), 1e-9);
+			assertEquals(term.x[i], mappedStore.getX(mappedStore.getTermStart(mappedIndex) + i), 1e-9);
+		}
+	}
+	
+	private interface TermBuilder {
+		public ADMMObjectiveTerm build(ADMMReasoner reasoner, int[] zIndices);
+	}
+
+}
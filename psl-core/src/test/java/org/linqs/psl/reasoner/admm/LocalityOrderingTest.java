@@ -0,0 +1,135 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+
+public class LocalityOrderingTest {
+
+	private ConfigBundle config;
+
+	@Before
+	public final void setUp() throws ConfigurationException {
+		ConfigManager manager = ConfigManager.getManager();
+		config = manager.getBundle("dummy");
+	}
+
+	/**
+	 * Tests that a chain of terms over scattered variables is ordered along
+	 * the chain and that permuting the store applies the ordering.
+	 */
+	@Test
+	public void testChain() {
+		int[] chain = {5, 2, 7, 0, 3, 6, 1, 4};
+		int[] termsAdded = {3, 0, 6, 1, 4, 2, 5};
+
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[chain.length];
+		ObjectTermStore store = new ObjectTermStore(1, 1);
+		for (int k : termsAdded) {
+			int[] zIndices = {chain[k], chain[k + 1]};
+			store.add(new LinearLossTerm(reasoner, zIndices, new double[] {1.0, -1.0}, 1.0));
+		}
+		store.indexLocalVariables(chain.length);
+
+		LocalityOrdering ordering = new LocalityOrdering(store, chain.length);
+		int[] termOrder = ordering.getTermOrder();
+		int[] variableMap = ordering.getVariableMap();
+		assertPermutation(termOrder);
+		assertPermutation(variableMap);
+
+		/* Each term's variables, and consecutive terms, are adjacent */
+		for (int i = 0; i < termOrder.length; i++) {
+			int k = termsAdded[termOrder[i]];
+			assertEquals(1, Math.abs(variableMap[chain[k]] - variableMap[chain[k + 1]]));
+			if (i > 0)
+				assertEquals(1, Math.abs(k - termsAdded[termOrder[i - 1]]));
+		}
+
+		store.permute(termOrder, variableMap);
+		for (int i = 0; i < store.size(); i++) {
+			int k = termsAdded[termOrder[i]];
+			assertEquals(variableMap[chain[k]], store.getZIndex(store.getTermStart(i)));
+			assertEquals(variableMap[chain[k + 1]], store.getZIndex(store.getTermStart(i) + 1));
+			assertEquals(variableMap[chain[k]], store.getTerm(i).zIndices[0]);
+		}
+		for (int zIndex = 0; zIndex < chain.length; zIndex++)
+			for (int j = store.getConsensusStart(zIndex); j < store.getConsensusEnd(zIndex); j++)
+				assertEquals(zIndex, store.getZIndex(store.getLocalVariable(j)));
+	}
+
+	/**
+	 * Tests that interleaved connected components are made contiguous.
+	 */
+	@Test
+	public void testComponents() {
+		/* Variables 0, 2, 4 form one component, 1 and 3 another, and 5 is alone */
+		int[][] terms = {{0, 2}, {1, 3}, {2, 4}, {3}, {5}, {4, 0}};
+
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[6];
+		ObjectTermStore store = new ObjectTermStore(1, 1);
+		for (int[] zIndices : terms)
+			store.add(new LinearLossTerm(reasoner, zIndices, new double[zIndices.length], 1.0));
+		store.indexLocalVariables(6);
+
+		LocalityOrdering ordering = new LocalityOrdering(store, 6);
+		store.permute(ordering.getTermOrder(), ordering.getVariableMap());
+		assertEquals(3, ordering.getNumComponents());
+
+		int[] termStarts = ordering.getComponentTermStarts();
+		int[] variableStarts = ordering.getComponentVariableStarts();
+		assertEquals(0, termStarts[0]);
+		assertEquals(terms.length, termStarts[3]);
+		assertEquals(0, variableStarts[0]);
+		assertEquals(6, variableStarts[3]);
+
+		/* Every copy of a component's terms is of one of its variables */
+		int[] componentSizes = new int[3];
+		for (int c = 0; c < 3; c++) {
+			componentSizes[c] = variableStarts[c + 1] - variableStarts[c];
+			for (int term = termStarts[c]; term < termStarts[c + 1]; term++) {
+				for (int i = store.getTermStart(term); i < store.getTermEnd(term); i++) {
+					assertTrue(store.getZIndex(i) >= variableStarts[c]);
+					assertTrue(store.getZIndex(i) < variableStarts[c + 1]);
+				}
+			}
+		}
+		Arrays.sort(componentSizes);
+		assertEquals(1, componentSizes[0]);
+		assertEquals(2, componentSizes[1]);
+		assertEquals(3, componentSizes[2]);
+	}
+
+	private void assertPermutation(int[] order) {
+		boolean[] seen = new boolean[order.length];
+		for (int i : order) {
+			assertTrue(!seen[i]);
+			seen[i] = true;
+		}
+	}
+}
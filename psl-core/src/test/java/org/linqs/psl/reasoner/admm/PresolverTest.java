@@ -0,0 +1,94 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+
+public class PresolverTest {
+
+	private ADMMReasoner reasoner;
+
+	@Before
+	public final void setUp() throws ConfigurationException {
+		ConfigBundle config = ConfigManager.getManager().getBundle("dummy");
+		reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[] {0.5, 0.5, 0.5};
+		reasoner.lb = new double[] {0.0, 0.0, 0.0};
+		reasoner.ub = new double[] {1.0, 1.0, 1.0};
+		reasoner.numConsensusVariables = 3;
+	}
+
+	/**
+	 * Tests that a fixed variable is substituted into the terms, making a
+	 * hinge loss inactive, and that a variable every term pushes up is fixed
+	 * to its upper bound.
+	 */
+	@Test
+	public void testFixedVariables() {
+		ADMMObjectiveTerm[] terms = {
+				new LinearConstraintTerm(reasoner, new int[] {0}, new double[] {1.0}, 1.0, FunctionComparator.Equality),
+				new HingeLossTerm(reasoner, new int[] {1, 0}, new double[] {1.0, -1.0}, 0.0, 1.0),
+				new LinearLossTerm(reasoner, new int[] {2}, new double[] {-1.0}, 1.0),
+				new SquaredLinearLossTerm(reasoner, new int[] {1}, new double[] {1.0}, 0.5, 1.0)
+		};
+		ADMMObjectiveTerm squared = terms[3];
+
+		new Presolver(reasoner).presolve(terms);
+
+		assertNull(terms[0]);
+		assertNull(terms[1]);
+		assertNull(terms[2]);
+		assertSame(squared, terms[3]);
+		assertEquals(1.0, reasoner.z[0], 0.0);
+		assertEquals(1.0, reasoner.z[2], 0.0);
+		assertEquals(0.0, reasoner.lb[1], 0.0);
+		assertEquals(1.0, reasoner.ub[1], 0.0);
+	}
+
+	/**
+	 * Tests that a constraint on one variable becomes a bound, which makes a
+	 * hinge loss active everywhere within the bounds.
+	 */
+	@Test
+	public void testBounds() {
+		ADMMObjectiveTerm[] terms = {
+				new LinearConstraintTerm(reasoner, new int[] {0}, new double[] {-2.0}, -0.8, FunctionComparator.SmallerThan),
+				new HingeLossTerm(reasoner, new int[] {0, 1}, new double[] {1.0, 0.5}, 0.3, 2.0),
+				new SquaredLinearLossTerm(reasoner, new int[] {0, 1}, new double[] {1.0, 1.0}, 1.0, 1.0)
+		};
+
+		new Presolver(reasoner).presolve(terms);
+
+		assertNull(terms[0]);
+		assertEquals(0.4, reasoner.lb[0], 1e-12);
+		assertEquals(1.0, reasoner.ub[0], 0.0);
+		assertTrue(terms[1] instanceof LinearLossTerm);
+		assertEquals(2.0, ((LinearLossTerm) terms[1]).weight, 0.0);
+		assertEquals(2, terms[2].zIndices.length);
+	}
+}
@@ -19,8 +19,6 @@ package org.linqs.psl.reasoner.admm;
 
 import static org.junit.Assert.assertEquals;
 
-import java.util.Vector;
-
 import org.apache.commons.configuration.ConfigurationException;
 import org.junit.Before;
 import org.junit.Test;
@@ -131,13 +129,68 @@ public class SquaredHingeLossTermTest {
 		testProblem(z, y, coeffs, constant, weight, stepSize, expected);
 	}
 	
+	/**
+	 * Tests that the factorization is recomputed when the step size changes
+	 * after the term is created, and after it has been minimized, as it does
+	 * when the step size is adaptive, with and without Cholesky solves.
+	 */
+	@Test
+	public void testStepSizeChange() {
+		for (boolean cholesky : new boolean[] {false, true}) {
+			config.setProperty("admmreasoner.cholesky", cholesky);
+			config.setProperty("admmreasoner.stepsize", 1.0);
+			ADMMReasoner reasoner = new ADMMReasoner(config);
+			reasoner.z = new double[] {3.7, -.5, .5};
+			
+			int[] zIndices = {0, 1, 2};
+			double[] coeffs = {1.0, -1.0, 0.5};
+			SquaredHingeLossTerm term = new SquaredHingeLossTerm(reasoner, zIndices, coeffs, -0.5, 2.0);
+			
+			reasoner.stepSize = 2.0;
+			term.minimize();
+			
+			double[] expected = {1.9, 1.3, -0.4};
+			for (int i = 0; i < expected.length; i++)
+				assertEquals(expected[i], term.x[i], 5e-5);
+			
+			/* Factors for another step size, then back */
+			reasoner.stepSize = 0.5;
+			term.minimize();
+			reasoner.stepSize = 2.0;
+			term.minimize();
+			for (int i = 0; i < expected.length; i++)
+				assertEquals(expected[i], term.x[i], 5e-5);
+		}
+	}
+	
+	/**
+	 * Tests that the Cholesky solve agrees with the default Sherman-Morrison
+	 * solve for terms with three or more variables.
+	 */
+	@Test
+	public void testCholesky() {
+		config.setProperty("admmreasoner.cholesky", true);
+		
+		double[] z = {0.3, 0.5, 0.1};
+		double[] y = {0.1, 0.0, -0.05};
+		double[] coeffs = {1.0, -0.5, 0.4};
+		double[] expected = {0.051798, 0.524096, 0.180720};
+		testProblem(z, y, coeffs, -0.15, 1.0, 0.5, expected);
+		
+		z = new double[] {3.7, -.5, .5};
+		y = new double[] {0.0, 0.0, 0.0};
+		coeffs = new double[] {1.0, -1.0, 0.5};
+		expected = new double[] {1.9, 1.3, -0.4};
+		testProblem(z, y, coeffs, -0.5, 2.0, 2.0, expected);
+	}
+	
 	private void testProblem(double[] z, double[] y,double[] coeffs, double constant,
 			double weight, final double stepSize , double[] expected) {
 		config.setProperty("admmreasoner.stepsize", stepSize);
 		ADMMReasoner reasoner = new ADMMReasoner(config);
-		reasoner.z = new Vector<Double>(z.length);
+		reasoner.z = new double[z.length];
 		for (int i = 0; i < z.length; i++)
-			reasoner.z.add(z[i]);
+			reasoner.z[i] = z[i];
 		
 		int[] zIndices = new int[z.length];
 		for (int i = 0; i < z.length; i++)
@@ -19,8 +19,6 @@ package org.linqs.psl.reasoner.admm;
 
 import static org.junit.Assert.assertEquals;
 
-import java.util.Vector;
-
 import org.apache.commons.configuration.ConfigurationException;
 import org.junit.Before;
 import org.junit.Test;
@@ -58,9 +56,9 @@ public class SquaredLinearLossTermTest {
 			double weight, final double stepSize, double[] expected) {
 		config.setProperty("admmreasoner.stepsize", stepSize);
 		ADMMReasoner reasoner = new ADMMReasoner(config);
-		reasoner.z = new Vector<Double>(z.length);
+		reasoner.z = new double[z.length];
 		for (int i = 0; i < z.length; i++)
-			reasoner.z.add(z[i]);
+			reasoner.z[i] = z[i];
 		
 		int[] zIndices = new int[z.length];
 		for (int i = 0; i < z.length; i++)
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+
+/**
+ * Checks that the local step of an ADMM iteration does not allocate.
+ * <p>
+ * Relies on the HotSpot per-thread allocation counter and is skipped on
+ * JVMs without one.
+ */
+public class TermAllocationTest {
+	
+	private static final int ITERATIONS = 20000;
+	/* Allowance for the allocation counter itself */
+	private static final long SLACK = 1024;
+	
+	private ConfigBundle config;
+	
+	@Before
+	public final void setUp() throws ConfigurationException {
+		ConfigManager manager = ConfigManager.getManager();
+		config = manager.getBundle("dummy");
+	}
+	
+	@Test
+	public void testObjectTermStore() {
+		ADMMReasoner reasoner = newReasoner();
+		ObjectTermStore store = new ObjectTermStore(16, 64);
+		addTerms(reasoner, store);
+		assertNoAllocation(store);
+	}
+	
+	@Test
+	public void testFlatTermStore() {
+		ADMMReasoner reasoner = newReasoner();
+		FlatTermStore store = new FlatTermStore(reasoner, 16, 64);
+		addTerms(reasoner, store);
+		assertNoAllocation(store);
+	}
+	
+	@Test
+	public void testFloatTermStore() {
+		ADMMReasoner reasoner = newReasoner();
+		FloatTermStore store = new FloatTermStore(reasoner, 16, 64);
+		addTerms(reasoner, store);
+		assertNoAllocation(store);
+	}
+	
+	private ADMMReasoner newReasoner() {
+		config.setProperty("admmreasoner.stepsize", 0.5);
+		ADMMReasoner reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[] {0.3, 0.5, 0.1, 0.8};
+		return reasoner;
+	}
+	
+	/**
+	 * Adds each term type with four variables, on both sides of its hinge or
+	 * constraint where it has one.
+	 */
+	private void addTerms(ADMMReasoner reasoner, ADMMTermStore store) {
+		int[] zIndices = {0, 1, 2, 3};
+		double[] coeffs = {1.0, -0.5, 0.4, 0.2};
+		for (double constant : new double[] {-0.15, 0.5}) {
+			store.add(new HingeLossTerm(reasoner, zIndices, coeffs, constant, 2.0));
+			store.add(new SquaredHingeLossTerm(reasoner, zIndices, coeffs, constant, 2.0));
+			store.add(new SquaredLinearLossTerm(reasoner, zIndices, coeffs, constant, 2.0));
+			for (FunctionComparator comparator : FunctionComparator.values())
+				store.add(new LinearConstraintTerm(reasoner, zIndices, coeffs, constant, comparator));
+		}
+		store.add(new LinearLossTerm(reasoner, zIndices, coeffs, 2.0));
+		store.indexLocalVariables(reasoner.z.length);
+	}
+	
+	private void assertNoAllocation(ADMMTermStore store) {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+		long thread = Thread.currentThread().getId();
+		
+		/* Warms up so that the measured iterations run compiled code */
+		iterate(store);
+		
+		long before = bean.getThreadAllocatedBytes(thread);
+		iterate(store);
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+		
+		assertTrue("Local step allocated " + allocated + " bytes", allocated <= SLACK);
+	}
+	
+	private void iterate(ADMMTermStore store) {
+		for (int iter = 0; iter < ITERATIONS; iter++)
+			for (int i = 0; i < store.size(); i++)
+				store.minimize(i);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2017 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.reasoner.admm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.linqs.psl.config.ConfigBundle;
+import org.linqs.psl.config.ConfigManager;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+
+public class TermKeyTest {
+	
+	private ADMMReasoner reasoner;
+	
+	@Before
+	public final void setUp() throws ConfigurationException {
+		ConfigManager manager = ConfigManager.getManager();
+		ConfigBundle config = manager.getBundle("dummy");
+		reasoner = new ADMMReasoner(config);
+		reasoner.z = new double[3];
+	}
+	
+	@Test
+	public void testVariableOrder() {
+		TermKey key = TermKey.of(new HingeLossTerm(reasoner, new int[] {0, 1, 2}, new double[] {1.0, -1.0, 0.5}, 0.5, 1.0));
+		TermKey permuted = TermKey.of(new HingeLossTerm(reasoner, new int[] {2, 0, 1}, new double[] {0.5, 1.0, -1.0}, 0.5, 3.0));
+		assertEquals(key, permuted);
+		assertEquals(key.hashCode(), permuted.hashCode());
+		
+		assertFalse(key.equals(TermKey.of(new HingeLossTerm(reasoner, new int[] {0, 1, 2}, new double[] {1.0, -1.0, 0.5}, 0.4, 1.0))));
+		assertFalse(key.equals(TermKey.of(new HingeLossTerm(reasoner, new int[] {0, 1, 2}, new double[] {-1.0, 1.0, 0.5}, 0.5, 1.0))));
+		assertFalse(key.equals(TermKey.of(new SquaredHingeLossTerm(reasoner, new int[] {0, 1, 2}, new double[] {1.0, -1.0, 0.5}, 0.5, 1.0))));
+	}
+	
+	@Test
+	public void testConstraints() {
+		TermKey smaller = TermKey.of(new LinearConstraintTerm(reasoner, new int[] {0, 1}, new double[] {1.0, -1.0}, 0.0, FunctionComparator.SmallerThan));
+		TermKey larger = TermKey.of(new LinearConstraintTerm(reasoner, new int[] {1, 0}, new double[] {1.0, -1.0}, 0.0, FunctionComparator.LargerThan));
+		assertEquals(smaller, larger);
+		assertTrue(smaller.isConstraint());
+		
+		TermKey equality = TermKey.of(new LinearConstraintTerm(reasoner, new int[] {0, 1}, new double[] {1.0, -1.0}, 1.0, FunctionComparator.Equality));
+		TermKey negated = TermKey.of(new LinearConstraintTerm(reasoner, new int[] {0, 1}, new double[] {-1.0, 1.0}, -1.0, FunctionComparator.Equality));
+		assertEquals(equality, negated);
+		assertFalse(equality.equals(smaller));
+		
+		assertFalse(TermKey.of(new LinearLossTerm(reasoner, new int[] {0, 1}, new double[] {1.0, -1.0}, 1.0)).isConstraint());
+	}
+	
+	@Test
+	public void testRemap() {
+		int[] variableMap = {2, 0, 1};
+		TermKey key = TermKey.of(new HingeLossTerm(reasoner, new int[] {0, 1, 2}, new double[] {1.0, -1.0, 0.5}, 0.5, 1.0));
+		TermKey remapped = TermKey.of(new HingeLossTerm(reasoner, new int[] {2, 0, 1}, new double[] {1.0, -1.0, 0.5}, 0.5, 1.0));
+		assertEquals(remapped, key.remap(variableMap));
+		assertEquals(remapped.hashCode(), key.remap(variableMap).hashCode());
+		
+		/* The first coefficient of the remapped equality constraint is negative */
+		TermKey equality = TermKey.of(new LinearConstraintTerm(reasoner, new int[] {0, 1}, new double[] {1.0, -1.0}, 1.0, FunctionComparator.Equality));
+		TermKey remappedEquality = TermKey.of(new LinearConstraintTerm(reasoner, new int[] {2, 0}, new double[] {1.0, -1.0}, 1.0, FunctionComparator.Equality));
+		assertEquals(remappedEquality, equality.remap(variableMap));
+	}
+}